@@ -1,17 +1,21 @@
 package com.mmm.animation;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.TreeMap;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.LightingColorFilter;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.util.Log;
 
+import com.mmm.gameengine.GameRenderer;
+import com.mmm.gameengine.GameResourceScope;
+
 /**
  * 
  * The MMMAnimation class specifies an object which encapsulates all loading
@@ -20,7 +24,7 @@ import android.util.Log;
  * 
  * Last Edited by: Michael Morris (7.6.2012)
  * @author Michael Morris
- * @version 1.3.4
+ * @version 1.15.5
  *
  */
 public class MMMAnimation {
@@ -28,9 +32,37 @@ public class MMMAnimation {
 	/** A map of Strings over MMMAnimationPhase objects which represent all the different phases of animation for this MMMAnimation. **/
 	private Map<String, MMMAnimationPhase> phases;
 
+	/** The same phases in the order created, so reset() can walk them without an iterator. **/
+	private final ArrayList<MMMAnimationPhase> phase_list = new ArrayList<MMMAnimationPhase>();
+	
+	/** The first phase created, made current again by reset(). **/
+	private MMMAnimationPhase initial_phase = null;
+	
+	/** Shared by phases with no listeners registered. **/
+	private static final int[] NO_EVENTS = new int[0];
+	private static final MMMPhaseListener[] NO_LISTENERS = new MMMPhaseListener[0];
+	
 	/** The current phase being viewed by this MMMAnimation. **/
 	private MMMAnimationPhase current_phase = null;
 	
+	/** The version of the data written by writeSnapshot(). **/
+	private static final byte SNAPSHOT_VERSION = 1;
+	
+	/** Play a phase from start to end, over and over. The default. **/
+	public static final int LOOP = 0;
+	
+	/** Play a phase from start to end once, then stop and rewind to the start frame. **/
+	public static final int ONE_SHOT = 1;
+	
+	/** Play a phase from start to end and back again, over and over. **/
+	public static final int PING_PONG = 2;
+	
+	/** Play a phase from start to end once, then stop on the end frame. **/
+	public static final int HOLD_LAST = 3;
+	
+	/** The number of bytes written by writeSnapshot(). **/
+	public static final int SNAPSHOT_SIZE = 1 + 4 * 4 + 4 + 4 + 1 + 4 + 4 + 4 + 1;
+	
 	/** The x location of the MMMAnimation. **/
 	protected float x;
 	
@@ -43,9 +75,23 @@ public class MMMAnimation {
 	/** The floating point scale used when rendering the animation. **/
 	protected float scale;
 	
-	/** The sprite sheet. **/
+	/** The sprite sheet, divided into frames. **/
+	protected MMMSpriteSheet sheet = null;
+	
+	/** The lazily loaded resource the sprite sheet comes from, or null if set directly. **/
+	protected MMMSheetResource sheet_resource = null;
+	
+	/** The sprite sheet Bitmap, kept alongside <code>sheet</code> for subclasses. **/
 	protected Bitmap bmp = null;
 	
+	/** The source and destination rectangles reused by every draw, so drawing does not allocate. **/
+	protected final Rect src_rect = new Rect();
+	protected final Rect dst_rect = new Rect();
+	
+	/** The Paint used to draw tinted, and the tint color it was last set up for. **/
+	private Paint tint_paint = null;
+	private int tint_paint_color;
+	
 	/** The color to tint the drawn animation. **/
 	protected int tint_color;
 	
@@ -55,12 +101,6 @@ public class MMMAnimation {
 	/** The degrees of rotation to use while drawing. **/
 	protected int rotation_angle_degrees;
 	
-	/** The number of sprites in the x direction on the sprite sheet. **/
-	private int num_sprites_x;
-	
-	/** The number of sprites in the y direction on the sprite sheet. **/
-	private int num_sprites_y;
-	
 	/**
 	 * Create a new MMMAnimation at the default location of (0, 0, 0).
 	 */
@@ -109,23 +149,74 @@ public class MMMAnimation {
 	 * @throws IllegalArgumentException if the identifier given is already registered, or start frame, end frame, or speed are out of their bounds.
 	 */
 	public MMMAnimationPhase createPhase(final String the_id, final int start_frame, final int end_frame, final long speed) {
+		return createPhase(the_id, start_frame, end_frame, speed, LOOP);
+	}
+	
+	/**
+	 * Create, return, and register a new MMMAnimationPhase for this MMMAnimation,
+	 * played back in the given mode.
+	 * @param the_id The String identifier of the MMMAnimationPhase.
+	 * @param start_frame The starting frame number of the phase.
+	 * @param end_frame The ending frame number of the phase.
+	 * @param speed The number of milliseconds between each frame of the new phase.
+	 * @param playback LOOP, ONE_SHOT, PING_PONG, or HOLD_LAST.
+	 * @return A reference to the newly created phase.
+	 * @throws IllegalArgumentException if the identifier given is already registered, or any value is out of its bounds.
+	 */
+	public MMMAnimationPhase createPhase(final String the_id, final int start_frame, final int end_frame, final long speed, final int playback) {
 		
 		// First check to make sure the id is not already taken.
 		if (phases.containsKey(the_id))
 			throw new IllegalArgumentException("id \"" + the_id + "\" already taken");
 		
 		MMMAnimationPhase p = new MMMAnimationPhase(the_id, start_frame, end_frame, speed);
+		p.setPlayback(playback);
+		p.initial_playback = playback;
 		
 		phases.put(the_id, p);
+		phase_list.add(p);
 		
 		// If this is the first phase created (or the only one available), make it current.
 		if (current_phase == null)
 			current_phase = p;
+		if (initial_phase == null)
+			initial_phase = p;
 		
 		return p;
 		
 	}
 	
+	/**
+	 * Put this animation back as it was when created, at a new location, so
+	 * it can be reused (for instance from a GameObjectPool). Scale, tint, and
+	 * rotation return to their defaults, every phase is rewound and stopped,
+	 * and plays back in the mode it was created with, and the first phase
+	 * created is made current again. Every phase listener is removed, so a
+	 * pooled animation does not gather listeners each time it is reused. The
+	 * sprite sheet and phases are kept, so nothing is allocated or decoded.
+	 * @param the_x The new x location.
+	 * @param the_y The new y location.
+	 * @param the_layer The new layer.
+	 */
+	public void reset(final float the_x, final float the_y, final float the_layer) {
+		
+		setLocation(the_x, the_y, the_layer);
+		scale = 1.0f;
+		rotation_angle_degrees = 0;
+		tint_color = 0;
+		use_tint = false;
+		
+		for (int i = 0; i < phase_list.size(); i++) {
+			final MMMAnimationPhase p = phase_list.get(i);
+			p.stop();
+			p.setPlayback(p.initial_playback);
+			p.clearListeners();
+			p.reset();
+		}
+		current_phase = initial_phase;
+		
+	}
+	
 	/**
 	 * Set the mask color (tint) for this animation.
 	 * @param color The Color to tint.
@@ -187,17 +278,32 @@ public class MMMAnimation {
 	 * @param the_id The String identifier of the required phase.
 	 */
 	public void setCurrentPhase(final String the_id) {
-		Log.i("StickmanPaintball", "MMMAnimation.setCurrentPhase() -- called!");
 		current_phase = phases.get(the_id);
 		
+		// Phases switch often, so only the unexpected case is logged.
 		if (current_phase == null)
-			Log.i("StickmanPaintball", "MMMAnimation.setCurrentPhase() -- PHASE IS NOW NULL!");
+			Log.w("StickmanPaintball", "MMMAnimation.setCurrentPhase() -- no phase \"" + the_id + "\", phase is now null");
 		else {
 			current_phase.reset();
-			Log.i("StickmanPaintball", "MMMAnimation.setCurrentPhase() -- PHASE IS NOW \"" + current_phase.getID() + "\"");
+			final MMMSpriteSheet loaded = loadedSheet();
+			if (loaded != null)
+				loaded.prefetch(current_phase.start_frame, current_phase.end_frame);
 		}
 	}
 	
+	/**
+	 * Hint that the phase with the given String identifier is likely to be
+	 * made current soon, so that a streaming sprite sheet can decode its
+	 * frames ahead of time.
+	 * @param the_id The String identifier of the phase.
+	 */
+	public void prefetchPhase(final String the_id) {
+		final MMMAnimationPhase p = phases.get(the_id);
+		final MMMSpriteSheet loaded = loadedSheet();
+		if (p != null && loaded != null)
+			loaded.prefetch(p.start_frame, p.end_frame);
+	}
+	
 	/**
 	 * Retrieve the MMMAnimationPhase with the given String identifier, or null
 	 * if not registered with this animation.
@@ -215,7 +321,10 @@ public class MMMAnimation {
 	 */
 	public void removePhase(final String the_id) {
 		
-		phases.remove(the_id);
+		final MMMAnimationPhase removed = phases.remove(the_id);
+		phase_list.remove(removed);
+		if (removed == initial_phase)
+			initial_phase = phase_list.isEmpty() ? null : phase_list.get(0);
 		
 		// If the current phase has this id, then set current phase null.
 		if (current_phase.getID().equals(the_id))
@@ -244,14 +353,73 @@ public class MMMAnimation {
 			p.start();
 	}
 	
+	/**
+	 * Set how the phase, with the given String identifier, plays back.
+	 * @param the_id The String identifier.
+	 * @param playback LOOP, ONE_SHOT, PING_PONG, or HOLD_LAST.
+	 * @throws IllegalArgumentException if there is no such phase, or the mode is unknown.
+	 */
+	public void setPlayback(final String the_id, final int playback) {
+		requirePhase(the_id).setPlayback(playback);
+	}
+	
+	/**
+	 * Register a listener to be told, from tick(), whenever the phase with
+	 * the given String identifier advances onto a frame. Frames skipped over
+	 * by a large time delta are still reported, in order. Registering may
+	 * grow the phases listener arrays, ticking never allocates.
+	 * @param the_id The String identifier of the phase.
+	 * @param frame The frame number, within the phase.
+	 * @param listener The listener.
+	 * @param data Integer data passed back to the listener.
+	 * @throws IllegalArgumentException if there is no such phase, or the frame is outside it.
+	 */
+	public void addFrameListener(final String the_id, final int frame, final MMMPhaseListener listener, final int data) {
+		final MMMAnimationPhase p = requirePhase(the_id);
+		if (frame < p.start_frame || frame > p.end_frame)
+			throw new IllegalArgumentException("frame " + frame + " is outside of phase \"" + the_id + "\"");
+		p.addListener(frame, listener, data);
+	}
+	
+	/**
+	 * Register a listener to be told, from tick(), whenever the phase with
+	 * the given String identifier completes (see MMMPhaseListener).
+	 * @param the_id The String identifier of the phase.
+	 * @param listener The listener.
+	 * @param data Integer data passed back to the listener.
+	 * @throws IllegalArgumentException if there is no such phase.
+	 */
+	public void addCompletionListener(final String the_id, final MMMPhaseListener listener, final int data) {
+		requirePhase(the_id).addListener(MMMAnimationPhase.COMPLETE, listener, data);
+	}
+	
+	/**
+	 * Remove every frame and completion registration of a listener from the
+	 * phase with the given String identifier.
+	 * @param the_id The String identifier of the phase.
+	 * @param listener The listener.
+	 */
+	public void removePhaseListener(final String the_id, final MMMPhaseListener listener) {
+		final MMMAnimationPhase p = phases.get(the_id);
+		if (p != null)
+			p.removeListener(listener);
+	}
+	
+	private MMMAnimationPhase requirePhase(final String the_id) {
+		final MMMAnimationPhase p = phases.get(the_id);
+		if (p == null)
+			throw new IllegalArgumentException("no phase \"" + the_id + "\"");
+		return p;
+	}
+	
 	/** Retrieve the pixel width of one sprite. **/
 	public int getSpriteWidth() {
-		return bmp.getWidth() / num_sprites_x;
+		return resolveSheet().getSpriteWidth();
 	}
 	
 	/** Retrieve the pixel height of one sprite. **/
 	public int getSpriteHeight() {
-		return bmp.getHeight() / num_sprites_y;
+		return resolveSheet().getSpriteHeight();
 	}
 	
 	/**
@@ -373,6 +541,18 @@ public class MMMAnimation {
 		
 	}
 	
+	/**
+	 * Check whether the animation, as drawn unrotated at its location and
+	 * scale, overlaps the given area. Animations whose sprite sheet is not
+	 * loaded yet are assumed to overlap, since their size is unknown.
+	 */
+	boolean overlaps(final float left, final float top, final float right, final float bottom) {
+		final MMMSpriteSheet s = loadedSheet();
+		if (s == null)
+			return true;
+		return x < right && y < bottom && x + s.getSpriteWidth() * scale > left && y + s.getSpriteHeight() * scale > top;
+	}
+	
 	/**
 	 * Set the sprite sheet which corresponds to this animation. 
 	 * @param c The Context in which the resource is located.
@@ -386,28 +566,88 @@ public class MMMAnimation {
 		if (sprites_x < 1 || sprites_y < 1)
 			throw new IllegalArgumentException("number of sprites on a sheet cannot be less than 1 in any direction");
 		
-		boolean ok = true;
+		setSpriteSheet(MMMSpriteSheet.decode(c, resource_id, sprites_x, sprites_y));
 		
-		bmp = BitmapFactory.decodeResource(c.getResources(), resource_id);
+		return sheet != null;
 		
-		if (bmp == null) {
-			ok = false;
-			num_sprites_x = 0;
-			num_sprites_y = 0;
-		} else {
-			num_sprites_x = sprites_x;
-			num_sprites_y = sprites_y;
+	}
+	
+	/**
+	 * Set an already loaded sprite sheet, which may be shared with other
+	 * animations, as the sprite sheet of this animation.
+	 * @param the_sheet The sprite sheet, or null for none.
+	 */
+	public void setSpriteSheet(final MMMSpriteSheet the_sheet) {
+		sheet_resource = null;
+		sheet = the_sheet;
+		bmp = the_sheet == null ? null : the_sheet.getBitmap();
+	}
+	
+	/**
+	 * Set a lazily loaded sprite sheet resource as the sprite sheet of this
+	 * animation. The sheet is decoded when first drawn, and picked up again
+	 * whenever the resource is released and reloaded.
+	 * @param resource The sprite sheet resource, or null for none.
+	 */
+	public void setSpriteSheet(final MMMSheetResource resource) {
+		sheet_resource = resource;
+		sheet = null;
+		bmp = null;
+	}
+	
+	/**
+	 * Set the sprite sheet which corresponds to this animation, registered
+	 * with (and shared through) the given resource scope, so it is decoded
+	 * when first drawn and released when the scopes state is left.
+	 * @param scope The resource scope of the state owning this animation.
+	 * @param c The Context in which the resource is located.
+	 * @param resource_id The integer (ex - R.drawable.icon) id of the resource.
+	 * @param sprites_x The number of sprites in the x direction.
+	 * @param sprites_y The number of sprites in the y direction.
+	 */
+	public void setSpriteSheet(final GameResourceScope scope, final Context c, final int resource_id, final int sprites_x, final int sprites_y) {
+		setSpriteSheet(MMMSheetResource.obtain(scope, c, resource_id, sprites_x, sprites_y));
+	}
+	
+	/** Bring <code>sheet</code> up to date with the sheet resource, loading it if needed. **/
+	private MMMSpriteSheet resolveSheet() {
+		if (sheet_resource != null) {
+			final MMMSpriteSheet s = sheet_resource.getSheet();
+			if (s != sheet) {
+				sheet = s;
+				bmp = s == null ? null : s.getBitmap();
+			}
 		}
-		
-		return ok;
-		
+		return sheet;
+	}
+	
+	/** Retrieve the sprite sheet if it is already loaded, without loading it. **/
+	MMMSpriteSheet loadedSheet() {
+		if (sheet_resource != null && !sheet_resource.isLoaded())
+			return null;
+		return resolveSheet();
+	}
+	
+	/** Retrieve the frame the current phase is showing, or -1 if there is no current phase. **/
+	int currentFrame() {
+		return current_phase == null ? -1 : current_phase.getFrameNumber();
+	}
+	
+	/**
+	 * Retrieve the sprite sheet of this animation, loading it first if it
+	 * comes from a sheet resource.
+	 * @return The sprite sheet, or null if none has been set.
+	 */
+	public MMMSpriteSheet getSpriteSheet() {
+		return resolveSheet();
 	}
 	
 	public void draw(final Canvas c, final float the_x, final float the_y, final float the_z, final float the_scale) {
 		
 		// If the sprite sheet has not been loaded or no phases have been defined do not draw anything.
-				if (bmp == null || phases.size() == 0 || current_phase == null) {
-					Log.i("StickmanPaintball", "MMMAnimation.draw -- bmp:" + (bmp != null) + ", phases:" + phases.size() + ", current_phase:" + (current_phase != null));
+				resolveSheet();
+				if (sheet == null || phases.size() == 0 || current_phase == null) {
+					Log.i("StickmanPaintball", "MMMAnimation.draw -- sheet:" + (sheet != null) + ", phases:" + phases.size() + ", current_phase:" + (current_phase != null));
 					return;
 				}
 					
@@ -415,47 +655,35 @@ public class MMMAnimation {
 				// First get the correct, current, sprite frame number.
 				int frame_num = current_phase.getFrameNumber();
 				
-				
-				/*
-				 * Frames are laid out in a sprite sheet from left to right, then top to bottom.
-				 * Example:
-				 *  ___ ___ ___ ___
-				 * |_0_|_1_|_2_|_3_|
-				 * |_4_|_5_|_6_|_7_|
-				 * |_8_|_9_|10_|11_|
-				 * 
-				 */
-				
 				// Calculate width and height of sprites.
-				final int sprite_width = bmp.getWidth() / num_sprites_x;
-				final int sprite_height = bmp.getHeight() / num_sprites_y;
-				
-				// Calculate the actual location (sprite location) of required frame.
-				final int sprite_row = frame_num / num_sprites_x;
-				final int sprite_col = frame_num % num_sprites_x;
+				final int sprite_width = sheet.getSpriteWidth();
+				final int sprite_height = sheet.getSpriteHeight();
 				
 				// Setup a source rectangle to achieve a cutout of the required frame.
-				Rect src = new Rect();
+				// A palette sheet tints the frame itself, so no color filter is needed.
+				final boolean sheet_tint = use_tint && sheet.isTintApplied();
+				final Rect src = src_rect;
+				final Bitmap frame_bmp = sheet_tint ? sheet.getFrameBitmap(frame_num, src, scale * the_scale, tint_color)
+						: sheet.getFrameBitmap(frame_num, src, scale * the_scale);
 				
-				src.top = sprite_height * sprite_row;
-				src.left = sprite_width * sprite_col;
-				src.bottom = src.top + sprite_height;
-				src.right = src.left + sprite_width;
+				// A streaming sheet may still be decoding this frame.
+				if (frame_bmp == null)
+					return;
 				
 				// Setup a destination rectangle to transfer the frame to the correct location on screen.		
-				Rect dst = new Rect();
+				final Rect dst = dst_rect;
 				
 				dst.top = (int)the_y;
 				dst.left = (int)the_x;//- (int)(0.5f * (sprite_width * scale));
 				dst.right = (int)the_x + Math.round(sprite_width * (the_scale * scale));
 				dst.bottom = (int)the_y + Math.round(sprite_height * (scale * the_scale));
 				
-				Paint p = getUsablePaint();
+				Paint p = sheet_tint ? null : getUsablePaint();
 				
 				// Rotation should happen to canvas matrix before any calls to darw.
 				c.rotate(rotation_angle_degrees, dst.left + (sprite_width * (scale * the_scale) * .5f), dst.top + (sprite_height * (scale * the_scale) * .5f));// + (float)((bmp.getWidth() * scale) / 2.0), y + (float)((bmp.getHeight() * scale) / 2.0));
 				
-				c.drawBitmap(bmp, src, dst, p);
+				c.drawBitmap(frame_bmp, src, dst, p);
 				
 				
 				//if (rotation_angle_degrees != 0)
@@ -473,25 +701,159 @@ public class MMMAnimation {
 		
 	}
 	
+	/**
+	 * Draw the current frame of animation through a GameRenderer, at the
+	 * given location and scale, exactly as draw(Canvas, ...) would.
+	 * @param renderer The renderer to draw through.
+	 * @param the_x The x location.
+	 * @param the_y The y location.
+	 * @param the_z The z (layer) location.
+	 * @param the_scale The scale, multiplied with the scale of this animation.
+	 */
+	public void draw(final GameRenderer renderer, final float the_x, final float the_y, final float the_z, final float the_scale) {
+		
+		resolveSheet();
+		if (sheet == null || phases.size() == 0 || current_phase == null)
+			return;
+		
+		sheet.prepareDraw(renderer);
+		final boolean sheet_tint = use_tint && sheet.isTintApplied();
+		final Rect src = src_rect;
+		final Bitmap frame_bmp = sheet_tint ? sheet.getFrameBitmap(current_phase.getFrameNumber(), src, scale * the_scale, tint_color)
+				: sheet.getFrameBitmap(current_phase.getFrameNumber(), src, scale * the_scale);
+		if (frame_bmp == null)
+			return;
+		
+		final int width = Math.round(sheet.getSpriteWidth() * (the_scale * scale));
+		final int height = Math.round(sheet.getSpriteHeight() * (the_scale * scale));
+		renderer.drawBitmap(frame_bmp, src, (int)the_x, (int)the_y, width, height, rotation_angle_degrees, use_tint && !sheet_tint, tint_color);
+		
+	}
+	
+	/**
+	 * Draw the current frame of animation through a GameRenderer.
+	 * @param renderer The renderer to draw through.
+	 */
+	public void draw(final GameRenderer renderer) {
+		
+		draw(renderer, x, y, zLayer, 1.0f);
+		
+	}
+	
 	/**
 	 * Build a Paint object for use when drawing the animation to the 
-	 * screen.
+	 * screen. The Paint is kept, and only set up again when the tint color
+	 * changes, so drawing does not allocate.
 	 * @return A usable Paint object (for use with <code>drawBitmap(..) method).
 	 */
 	protected Paint getUsablePaint() {
 		
-		Paint p = null;
+		if (!use_tint)
+			return null;
 		
-		if (use_tint) {
-			
-			p = new Paint();
-			p.setColor(tint_color);
-			p.setAntiAlias(true);
-			p.setColorFilter(new LightingColorFilter(tint_color, 1));
-			
+		if (tint_paint == null) {
+			tint_paint = new Paint();
+			tint_paint.setAntiAlias(true);
+			tint_paint_color = ~tint_color;
 		}
 		
-		return p;
+		if (tint_paint_color != tint_color) {
+			tint_paint.setColor(tint_color);
+			tint_paint.setColorFilter(new LightingColorFilter(tint_color, 1));
+			tint_paint_color = tint_color;
+		}
+		
+		return tint_paint;
+		
+	}
+	
+	/**
+	 * Write the location, layer, scale, rotation, tint, and current phase
+	 * (along with its frame and millisecond count) of this animation into
+	 * the buffer, at its current position. Exactly SNAPSHOT_SIZE bytes are
+	 * written. Phases are identified by their position in identifier order,
+	 * so the animation restored must have the same phases created.
+	 * @param out The buffer to write to.
+	 * @throws java.nio.BufferOverflowException if fewer than SNAPSHOT_SIZE bytes remain.
+	 */
+	public void writeSnapshot(final ByteBuffer out) {
+		
+		int phase_index = -1;
+		if (current_phase != null) {
+			int i = 0;
+			for (MMMAnimationPhase p : phases.values()) {
+				if (p == current_phase) {
+					phase_index = i;
+					break;
+				}
+				i++;
+			}
+		}
+		
+		out.put(SNAPSHOT_VERSION);
+		out.putFloat(x);
+		out.putFloat(y);
+		out.putFloat(zLayer);
+		out.putFloat(scale);
+		out.putInt(rotation_angle_degrees);
+		out.putInt(tint_color);
+		out.put(use_tint ? (byte)1 : (byte)0);
+		out.putInt(phase_index);
+		out.putInt(current_phase == null ? 0 : current_phase.getFrameNumber());
+		out.putInt(current_phase == null ? 0 : current_phase.getMilliCount());
+		byte flags = 0;
+		if (current_phase != null) {
+			if (current_phase.isRunning())
+				flags |= 1;
+			if (current_phase.reversed)
+				flags |= 2;
+		}
+		out.put(flags);
+		
+	}
+	
+	/**
+	 * Restore the state written by writeSnapshot() from the buffer, at its
+	 * current position.
+	 * @param in The buffer to read from.
+	 * @throws IllegalArgumentException if the data was written by an unknown version, or names a phase which does not exist.
+	 */
+	public void readSnapshot(final ByteBuffer in) {
+		
+		final byte version = in.get();
+		if (version != SNAPSHOT_VERSION)
+			throw new IllegalArgumentException("unknown MMMAnimation snapshot version " + version);
+		
+		x = in.getFloat();
+		y = in.getFloat();
+		zLayer = in.getFloat();
+		scale = in.getFloat();
+		rotation_angle_degrees = in.getInt();
+		tint_color = in.getInt();
+		use_tint = in.get() != 0;
+		
+		final int phase_index = in.getInt();
+		final int frame = in.getInt();
+		final int millis = in.getInt();
+		final byte flags = in.get();
+		
+		if (phase_index < 0) {
+			current_phase = null;
+			return;
+		}
+		
+		if (phase_index >= phases.size())
+			throw new IllegalArgumentException("snapshot names phase " + phase_index + " of " + phases.size());
+		
+		int i = 0;
+		for (MMMAnimationPhase p : phases.values()) {
+			if (i++ == phase_index) {
+				current_phase = p;
+				break;
+			}
+		}
+		current_phase.restore(frame, millis, (flags & 1) != 0);
+		current_phase.reversed = (flags & 2) != 0;
 		
 	}
 	
@@ -519,7 +881,7 @@ public class MMMAnimation {
 	 * the current MMMAnimation resource, which starts at <code>start_frame</code>
 	 * and ends at <code>end_frame</code>. The speed at which this animation is
 	 * played is determined by the number of milliseconds, <code>frame_speed</code>,
-	 * specified.
+	 * specified, and how it carries on past the end by its playback mode.
 	 * 
 	 * @author Micahel Morris
 	 * @version 7.3.2012
@@ -548,6 +910,25 @@ public class MMMAnimation {
 		/** Boolean flag to signal that this phase accepts frame ticks. **/
 		private boolean running;
 		
+		/** The playback mode, LOOP, ONE_SHOT, PING_PONG, or HOLD_LAST, and the mode the phase was created with. **/
+		private int playback = LOOP;
+		private int initial_playback = LOOP;
+		
+		/** Whether a PING_PONG phase is playing from end back to start. **/
+		private boolean reversed;
+		
+		/** The frame number listened for by completion listeners. **/
+		static final int COMPLETE = -1;
+		
+		/** The frame number, listener, and data of every registration, in order. **/
+		private int[] event_frames = NO_EVENTS;
+		private MMMPhaseListener[] event_listeners = NO_LISTENERS;
+		private int[] event_data = NO_EVENTS;
+		private int event_count;
+		
+		/** Counted up whenever the frame is moved outside of tick(), so a listener doing so ends the tick. **/
+		private int position_stamp;
+		
 		public MMMAnimationPhase(final String the_id,
 								 final int the_start_frame,
 								 final int the_end_frame,
@@ -568,6 +949,7 @@ public class MMMAnimation {
 			frame_speed = the_frame_speed;
 			
 			current_milli_count = 0;
+			current_frame_num = start_frame;
 			running = false;
 			
 		}
@@ -578,6 +960,93 @@ public class MMMAnimation {
 		public void reset() {
 			current_milli_count = 0;
 			current_frame_num = start_frame;
+			reversed = false;
+			position_stamp++;
+		}
+		
+		/**
+		 * Set how this phase plays back.
+		 * @param mode LOOP, ONE_SHOT, PING_PONG, or HOLD_LAST.
+		 */
+		public void setPlayback(final int mode) {
+			if (mode < LOOP || mode > HOLD_LAST)
+				throw new IllegalArgumentException("unknown playback mode " + mode);
+			playback = mode;
+			if (mode != PING_PONG)
+				reversed = false;
+		}
+		
+		/** Retrieve the playback mode. **/
+		public int getPlayback() {
+			return playback;
+		}
+		
+		/** Register a listener for a frame, or COMPLETE, growing the arrays if needed. **/
+		void addListener(final int frame, final MMMPhaseListener listener, final int data) {
+			if (listener == null)
+				throw new IllegalArgumentException("listener cannot be null");
+			
+			if (event_count == event_frames.length) {
+				final int size = Math.max(4, event_count * 2);
+				final int[] frames = new int[size];
+				final MMMPhaseListener[] listeners = new MMMPhaseListener[size];
+				final int[] datas = new int[size];
+				System.arraycopy(event_frames, 0, frames, 0, event_count);
+				System.arraycopy(event_listeners, 0, listeners, 0, event_count);
+				System.arraycopy(event_data, 0, datas, 0, event_count);
+				event_frames = frames;
+				event_listeners = listeners;
+				event_data = datas;
+			}
+			
+			event_frames[event_count] = frame;
+			event_listeners[event_count] = listener;
+			event_data[event_count] = data;
+			event_count++;
+		}
+		
+		/** Remove every registration of a listener, keeping the rest in order. **/
+		void removeListener(final MMMPhaseListener listener) {
+			int kept = 0;
+			for (int i = 0; i < event_count; i++) {
+				if (event_listeners[i] == listener)
+					continue;
+				event_frames[kept] = event_frames[i];
+				event_listeners[kept] = event_listeners[i];
+				event_data[kept] = event_data[i];
+				kept++;
+			}
+			for (int i = kept; i < event_count; i++)
+				event_listeners[i] = null;
+			event_count = kept;
+		}
+		
+		/** Remove every registration, keeping the arrays for reuse. **/
+		void clearListeners() {
+			for (int i = 0; i < event_count; i++)
+				event_listeners[i] = null;
+			event_count = 0;
+		}
+		
+		/**
+		 * Tell the listeners registered for a frame, or COMPLETE.
+		 * @return False if a listener moved, stopped, started, or replaced this phase, ending the tick.
+		 */
+		private boolean fire(final int frame) {
+			final int stamp = position_stamp;
+			final boolean was_running = running;
+			for (int i = 0; i < event_count; i++) {
+				if (event_frames[i] != frame)
+					continue;
+				if (frame == COMPLETE)
+					event_listeners[i].onPhaseComplete(MMMAnimation.this, id, event_data[i]);
+				else
+					event_listeners[i].onPhaseFrame(MMMAnimation.this, id, frame, event_data[i]);
+				// A listener switching the animation to another phase ends this phases tick too.
+				if (stamp != position_stamp || running != was_running || current_phase != this)
+					return false;
+			}
+			return true;
 		}
 		
 		/**
@@ -593,24 +1062,68 @@ public class MMMAnimation {
 			// Increment the millisecond count (including left over).
 			current_milli_count += dt;
 			
-			// Increment frame number by correct amount.
+			// Step one frame at a time, so every frame passed is reported in order.
 			while (current_milli_count >= frame_speed) {
-				current_frame_num++;
-				if (current_frame_num > end_frame)
-					current_frame_num = start_frame;
 				current_milli_count -= frame_speed;
+				if (!step())
+					return;
 			}
 				
 		}
 		
+		/**
+		 * Advance one frame by the playback mode, telling the listeners.
+		 * @return False if the phase stopped, or a listener moved it.
+		 */
+		private boolean step() {
+			
+			if (reversed) {
+				// PING_PONG on its way back, completing a cycle on reaching the start.
+				current_frame_num--;
+				if (current_frame_num > start_frame)
+					return fire(current_frame_num);
+				reversed = false;
+				return fire(current_frame_num) && fire(COMPLETE);
+			}
+			
+			if (current_frame_num < end_frame) {
+				current_frame_num++;
+				return fire(current_frame_num);
+			}
+			
+			switch (playback) {
+			case PING_PONG:
+				if (end_frame > start_frame) {
+					reversed = true;
+					return step();
+				}
+				return fire(COMPLETE) && fire(current_frame_num);
+			case ONE_SHOT:
+			case HOLD_LAST:
+				if (playback == ONE_SHOT)
+					current_frame_num = start_frame;
+				current_milli_count = 0;
+				running = false;
+				fire(COMPLETE);
+				return false;
+			default:
+				if (!fire(COMPLETE))
+					return false;
+				current_frame_num = start_frame;
+				return fire(current_frame_num);
+			}
+			
+		}
+		
 		/**
 		 * Manually set the frame number to the one specified.
 		 * @param frame The frame number.
 		 */
 		public void setFrame(final int frame) {
-			if (frame >= start_frame && frame <= end_frame)
+			if (frame >= start_frame && frame <= end_frame) {
 				current_frame_num = frame;
-			else
+				position_stamp++;
+			} else
 				throw new IllegalArgumentException("cannot set frame to " + frame + " when limits are (inclusive) " + start_frame + "-" + end_frame);
 		}
 		
@@ -622,6 +1135,25 @@ public class MMMAnimation {
 		/** Stop this phase. **/
 		public void stop() {
 			running = false;
+			position_stamp++;
+		}
+		
+		/**
+		 * Restore the frame number, millisecond count, and running flag, as
+		 * saved by a snapshot.
+		 * @param frame The frame number.
+		 * @param millis The left over milliseconds from last frame.
+		 * @param run Whether the phase accepts frame ticks.
+		 */
+		public void restore(final int frame, final int millis, final boolean run) {
+			setFrame(frame);
+			current_milli_count = millis;
+			running = run;
+		}
+		
+		/** Retrieve the left over milliseconds from last frame. **/
+		public int getMilliCount() {
+			return current_milli_count;
 		}
 		
 		/** Retrieve whether this phase is running. **/
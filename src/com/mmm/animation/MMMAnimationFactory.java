@@ -0,0 +1,49 @@
+package com.mmm.animation;
+
+import com.mmm.gameengine.GameObjectFactory;
+
+/**
+ * The MMMAnimationFactory class is a GameObjectFactory for pooling
+ * MMMAnimations. Subclasses create the animation, with its sprite sheet and
+ * phases, and released animations are put back with MMMAnimation.reset(),
+ * at the location given here.
+ * <BR>
+ * To use:
+ *
+ * <code>GameObjectPool&lt;MMMAnimation&gt; pool = new GameObjectPool&lt;MMMAnimation&gt;(new MMMAnimationFactory&lt;MMMAnimation&gt;() {</code>
+ *
+ * <code>    public MMMAnimation create() { ... }</code>
+ *
+ * <code>}, 32);</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public abstract class MMMAnimationFactory<T extends MMMAnimation> implements GameObjectFactory<T> {
+	
+	/** The location released animations are reset to. **/
+	private final float reset_x, reset_y, reset_layer;
+	
+	/** Create a factory resetting released animations to (0,0,0). **/
+	public MMMAnimationFactory() {
+		this(0f, 0f, 0f);
+	}
+	
+	/**
+	 * Create a factory resetting released animations to the given location.
+	 * @param the_x The x location.
+	 * @param the_y The y location.
+	 * @param the_layer The layer.
+	 */
+	public MMMAnimationFactory(final float the_x, final float the_y, final float the_layer) {
+		reset_x = the_x;
+		reset_y = the_y;
+		reset_layer = the_layer;
+	}
+	
+	public void reset(final T anim) {
+		anim.reset(reset_x, reset_y, reset_layer);
+	}
+	
+}
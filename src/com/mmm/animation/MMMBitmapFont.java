@@ -0,0 +1,604 @@
+package com.mmm.animation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.LightingColorFilter;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+/**
+ * The MMMBitmapFont class draws text from glyphs stored as the frames of an
+ * MMMSpriteSheet, the same way MMMAnimation draws its sprites, rather than
+ * through Canvas.drawText().
+ * <BR>
+ * Text may be drawn straight from a CharSequence, a char[], or an int, none
+ * of which allocate; there is no need to build a String for a score. For text
+ * drawn every frame, lay it out into an MMMTextLayout first: the layout is
+ * only recalculated when the text changes.
+ * <BR>
+ * A font is either a grid sprite sheet of fixed width glyphs, or a packed
+ * glyph atlas generated offline from a TTF file by a tool writing the
+ * AngelCode BMFont text format (BMFont, Hiero, etc.), see loadBMFont().
+ * <BR>
+ * To use:
+ *
+ * <code>MMMBitmapFont font = MMMBitmapFont.loadBMFont(context, R.drawable.hud_font, R.raw.hud_font);</code>
+ *
+ * <code>font.layoutInt(score, score_layout);</code>
+ *
+ * <code>font.draw(canvas, score_layout, 10, 10);</code>
+ *
+ * @author Michael Morris
+ * @version 1.1.1
+ *
+ */
+public class MMMBitmapFont {
+	
+	/** The sprite sheet holding the glyphs. **/
+	private final MMMSpriteSheet sheet;
+	
+	/** The frame number of every character, or -1 if the font has no glyph for it. **/
+	private final int[] char_frames;
+	
+	/** The offset at which to draw, and the distance to advance past, every frame. **/
+	private final float[] x_offsets, y_offsets, advances;
+	
+	/** The distance between lines of text. **/
+	private final float line_height;
+	
+	/** The floating point scale used when drawing. **/
+	private float scale;
+	
+	/** The Paint used when tinting, made once and only set up again when the tint changes. **/
+	private Paint tint_paint;
+	private int tint_color;
+	private boolean use_tint = false;
+	
+	/** Reused while drawing, to avoid creating objects every frame. **/
+	private final Rect frame_rect = new Rect();
+	private final Rect src = new Rect();
+	private final Rect dst = new Rect();
+	private final char[] int_chars = new char[11];
+	
+	/**
+	 * Create a new MMMBitmapFont from a grid sprite sheet of fixed width glyphs.
+	 * @param the_sheet The sprite sheet.
+	 * @param characters The character of every frame, in frame order. Frames past the end are unused.
+	 */
+	public MMMBitmapFont(final MMMSpriteSheet the_sheet, final CharSequence characters) {
+		if (the_sheet == null)
+			throw new IllegalArgumentException("font must have a sprite sheet");
+		if (characters.length() > the_sheet.getFrameCount())
+			throw new IllegalArgumentException("the sprite sheet has fewer frames than characters");
+		
+		sheet = the_sheet;
+		
+		int max_char = 0;
+		for (int i = 0; i < characters.length(); i++)
+			max_char = Math.max(max_char, characters.charAt(i));
+		
+		char_frames = new int[max_char + 1];
+		for (int i = 0; i < char_frames.length; i++)
+			char_frames[i] = -1;
+		for (int i = 0; i < characters.length(); i++)
+			char_frames[characters.charAt(i)] = i;
+		
+		final int frame_count = sheet.getFrameCount();
+		x_offsets = new float[frame_count];
+		y_offsets = new float[frame_count];
+		advances = new float[frame_count];
+		for (int i = 0; i < frame_count; i++)
+			advances[i] = sheet.getSpriteWidth();
+		
+		line_height = sheet.getSpriteHeight();
+		scale = 1.0f;
+	}
+	
+	/**
+	 * Create a new MMMBitmapFont from a packed glyph atlas.
+	 * @param atlas The atlas sprite sheet, holding one frame per glyph.
+	 * @param characters The character of every frame, in frame order.
+	 * @param the_x_offsets The x offset at which to draw every frame.
+	 * @param the_y_offsets The y offset, from the top of the line, at which to draw every frame.
+	 * @param the_advances The distance to advance past every frame.
+	 * @param the_line_height The distance between lines of text.
+	 */
+	public MMMBitmapFont(final MMMSpriteSheet atlas, final char[] characters, final float[] the_x_offsets,
+						 final float[] the_y_offsets, final float[] the_advances, final float the_line_height) {
+		if (atlas == null)
+			throw new IllegalArgumentException("font must have a sprite sheet");
+		
+		final int frame_count = atlas.getFrameCount();
+		if (characters.length != frame_count || the_x_offsets.length != frame_count
+				|| the_y_offsets.length != frame_count || the_advances.length != frame_count)
+			throw new IllegalArgumentException("every frame of the atlas must have a character, offsets, and advance");
+		
+		sheet = atlas;
+		
+		int max_char = 0;
+		for (int i = 0; i < characters.length; i++)
+			max_char = Math.max(max_char, characters[i]);
+		
+		char_frames = new int[max_char + 1];
+		for (int i = 0; i < char_frames.length; i++)
+			char_frames[i] = -1;
+		for (int i = 0; i < characters.length; i++)
+			char_frames[characters[i]] = i;
+		
+		x_offsets = the_x_offsets.clone();
+		y_offsets = the_y_offsets.clone();
+		advances = the_advances.clone();
+		line_height = the_line_height;
+		scale = 1.0f;
+	}
+	
+	/**
+	 * Load a glyph atlas generated offline from a TTF file, described by a
+	 * BMFont text format (.fnt) file stored as a raw resource. Only single
+	 * page fonts are supported; kerning pairs are ignored.
+	 * @param c The Context in which the resources are located.
+	 * @param image_resource_id The resource id of the atlas image.
+	 * @param descriptor_resource_id The raw resource id of the .fnt file.
+	 * @return The new font, or null if either resource could not be loaded.
+	 */
+	public static MMMBitmapFont loadBMFont(final Context c, final int image_resource_id, final int descriptor_resource_id) {
+		
+		// Glyph rectangles are in image pixels, so the image must not be scaled for screen density.
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inScaled = false;
+		final Bitmap bitmap = BitmapFactory.decodeResource(c.getResources(), image_resource_id, options);
+		if (bitmap == null)
+			return null;
+		
+		int count = 0;
+		char[] characters = new char[128];
+		int[] rects = new int[128 * 4];
+		float[] x_offsets = new float[128];
+		float[] y_offsets = new float[128];
+		float[] advances = new float[128];
+		float line_height = 0;
+		
+		final InputStream in = c.getResources().openRawResource(descriptor_resource_id);
+		try {
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				
+				if (line.startsWith("common ")) {
+					line_height = parseField(line, "lineHeight");
+					
+				} else if (line.startsWith("char ")) {
+					final int id = parseField(line, "id");
+					if (id < 0 || id > Character.MAX_VALUE)
+						continue;
+					
+					if (count == characters.length) {
+						characters = growChars(characters, count * 2);
+						rects = growInts(rects, count * 8);
+						x_offsets = growFloats(x_offsets, count * 2);
+						y_offsets = growFloats(y_offsets, count * 2);
+						advances = growFloats(advances, count * 2);
+					}
+					
+					final int x = parseField(line, "x");
+					final int y = parseField(line, "y");
+					characters[count] = (char)id;
+					rects[count * 4] = x;
+					rects[count * 4 + 1] = y;
+					rects[count * 4 + 2] = x + parseField(line, "width");
+					rects[count * 4 + 3] = y + parseField(line, "height");
+					x_offsets[count] = parseField(line, "xoffset");
+					y_offsets[count] = parseField(line, "yoffset");
+					advances[count] = parseField(line, "xadvance");
+					count++;
+				}
+			}
+		} catch (IOException e) {
+			Log.e("StickmanPaintball", "MMMBitmapFont.loadBMFont() -- could not read font descriptor", e);
+			bitmap.recycle();
+			return null;
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) { }
+		}
+		
+		if (count == 0) {
+			Log.e("StickmanPaintball", "MMMBitmapFont.loadBMFont() -- font descriptor has no characters");
+			bitmap.recycle();
+			return null;
+		}
+		
+		return new MMMBitmapFont(new MMMSpriteSheet(bitmap, growInts(rects, count * 4)), growChars(characters, count),
+				growFloats(x_offsets, count), growFloats(y_offsets, count), growFloats(advances, count), line_height);
+		
+	}
+	
+	/** Retrieve the sprite sheet holding the glyphs. **/
+	public MMMSpriteSheet getSpriteSheet() {
+		return sheet;
+	}
+	
+	/** Retrieve the distance between lines of text, at the current scale. **/
+	public float getLineHeight() {
+		return line_height * scale;
+	}
+	
+	/** Retrieve the scale used when drawing. **/
+	public float getScale() {
+		return scale;
+	}
+	
+	/**
+	 * Specify the scale used when drawing.
+	 * @param the_scale The floating point scale, greater than 0.
+	 */
+	public void setScale(final float the_scale) {
+		if (the_scale > 0)
+			scale = the_scale;
+	}
+	
+	/**
+	 * Tint every glyph drawn with the given color.
+	 * @param color The color to tint.
+	 */
+	public void setTintColor(final int color) {
+		use_tint = true;
+		
+		if (tint_paint == null) {
+			tint_paint = new Paint();
+			tint_paint.setAntiAlias(true);
+		} else if (color == tint_color) {
+			return;
+		}
+		
+		tint_color = color;
+		tint_paint.setColor(color);
+		tint_paint.setColorFilter(new LightingColorFilter(color, 1));
+	}
+	
+	/** Stop tinting glyphs. **/
+	public void skipTint() {
+		use_tint = false;
+	}
+	
+	/**
+	 * Check whether the font has a glyph for the given character.
+	 * @param ch The character.
+	 * @return True if the character can be drawn.
+	 */
+	public boolean hasGlyph(final char ch) {
+		return ch < char_frames.length && char_frames[ch] != -1;
+	}
+	
+	/**
+	 * Measure the width of the widest line of the given text, at the current scale.
+	 * @param text The text.
+	 * @return The width in pixels.
+	 */
+	public float measure(final CharSequence text) {
+		float line = 0;
+		float widest = 0;
+		for (int i = 0; i < text.length(); i++) {
+			final char ch = text.charAt(i);
+			if (ch == '\n') {
+				widest = Math.max(widest, line);
+				line = 0;
+				continue;
+			}
+			final int frame = ch < char_frames.length ? char_frames[ch] : -1;
+			if (frame != -1)
+				line += advances[frame];
+		}
+		return Math.max(widest, line) * scale;
+	}
+	
+	/**
+	 * Draw text, with its top left at (<code>x</code>, <code>y</code>).
+	 * Characters without a glyph are skipped.
+	 * @param c The canvas to draw on.
+	 * @param text The text.
+	 * @param x The x location.
+	 * @param y The y location.
+	 * @return The x location following the last character drawn.
+	 */
+	public float drawText(final Canvas c, final CharSequence text, final float x, final float y) {
+		float pen_x = x;
+		float pen_y = y;
+		for (int i = 0; i < text.length(); i++) {
+			final char ch = text.charAt(i);
+			if (ch == '\n') {
+				pen_x = x;
+				pen_y += line_height * scale;
+				continue;
+			}
+			pen_x = drawChar(c, ch, pen_x, pen_y);
+		}
+		return pen_x;
+	}
+	
+	/**
+	 * Draw <code>count</code> characters of <code>text</code>, starting at
+	 * <code>start</code>, with their top left at (<code>x</code>, <code>y</code>).
+	 * @param c The canvas to draw on.
+	 * @param text The characters.
+	 * @param start The index of the first character.
+	 * @param count The number of characters.
+	 * @param x The x location.
+	 * @param y The y location.
+	 * @return The x location following the last character drawn.
+	 */
+	public float drawText(final Canvas c, final char[] text, final int start, final int count, final float x, final float y) {
+		float pen_x = x;
+		float pen_y = y;
+		for (int i = start; i < start + count; i++) {
+			if (text[i] == '\n') {
+				pen_x = x;
+				pen_y += line_height * scale;
+				continue;
+			}
+			pen_x = drawChar(c, text[i], pen_x, pen_y);
+		}
+		return pen_x;
+	}
+	
+	/**
+	 * Draw an int in decimal, with its top left at (<code>x</code>, <code>y</code>),
+	 * without building a String.
+	 * @param c The canvas to draw on.
+	 * @param value The value.
+	 * @param x The x location.
+	 * @param y The y location.
+	 * @return The x location following the last digit drawn.
+	 */
+	public float drawInt(final Canvas c, final int value, final float x, final float y) {
+		final int length = intToChars(value, int_chars);
+		return drawText(c, int_chars, 0, length, x, y);
+	}
+	
+	/**
+	 * Lay out text into the given layout, unless the layout already holds
+	 * exactly this text laid out by this font.
+	 * @param text The text.
+	 * @param out The layout.
+	 * @return True if the layout changed.
+	 */
+	public boolean layout(final CharSequence text, final MMMTextLayout out) {
+		
+		final int length = text.length();
+		if (out.font == this && !out.from_int && out.length == length) {
+			int i = 0;
+			while (i < length && out.chars[i] == text.charAt(i))
+				i++;
+			if (i == length)
+				return false;
+		}
+		
+		out.ensureCapacity(length);
+		for (int i = 0; i < length; i++)
+			out.chars[i] = text.charAt(i);
+		out.length = length;
+		out.from_int = false;
+		
+		layoutChars(out);
+		return true;
+		
+	}
+	
+	/**
+	 * Lay out <code>count</code> characters of <code>text</code>, starting at
+	 * <code>start</code>, into the given layout, unless the layout already
+	 * holds exactly these characters laid out by this font.
+	 * @param text The characters.
+	 * @param start The index of the first character.
+	 * @param count The number of characters.
+	 * @param out The layout.
+	 * @return True if the layout changed.
+	 */
+	public boolean layout(final char[] text, final int start, final int count, final MMMTextLayout out) {
+		
+		if (start < 0 || count < 0 || start + count > text.length)
+			throw new IllegalArgumentException("characters " + start + " to " + (start + count) + " are outside the array of " + text.length);
+		
+		if (out.font == this && !out.from_int && out.length == count) {
+			int i = 0;
+			while (i < count && out.chars[i] == text[start + i])
+				i++;
+			if (i == count)
+				return false;
+		}
+		
+		out.ensureCapacity(count);
+		System.arraycopy(text, start, out.chars, 0, count);
+		out.length = count;
+		out.from_int = false;
+		
+		layoutChars(out);
+		return true;
+		
+	}
+	
+	/**
+	 * Lay out an int, in decimal, into the given layout, unless the layout
+	 * already holds exactly this value laid out by this font.
+	 * @param value The value.
+	 * @param out The layout.
+	 * @return True if the layout changed.
+	 */
+	public boolean layoutInt(final int value, final MMMTextLayout out) {
+		
+		if (out.font == this && out.from_int && out.int_value == value)
+			return false;
+		
+		out.ensureCapacity(int_chars.length);
+		out.length = intToChars(value, out.chars);
+		out.from_int = true;
+		out.int_value = value;
+		
+		layoutChars(out);
+		return true;
+		
+	}
+	
+	/**
+	 * Draw a layout, made by this font, with its top left at (<code>x</code>, <code>y</code>).
+	 * @param c The canvas to draw on.
+	 * @param layout The layout.
+	 * @param x The x location.
+	 * @param y The y location.
+	 */
+	public void draw(final Canvas c, final MMMTextLayout layout, final float x, final float y) {
+		if (layout.font != this)
+			throw new IllegalArgumentException("layout was not made by this font");
+		
+		for (int i = 0; i < layout.glyph_count; i++)
+			drawFrame(c, layout.frames[i], x + layout.glyph_x[i] * scale, y + layout.glyph_y[i] * scale);
+	}
+	
+	/** Calculate the glyphs of the characters held by a layout. **/
+	private void layoutChars(final MMMTextLayout out) {
+		
+		float pen_x = 0;
+		float pen_y = 0;
+		float widest = 0;
+		int glyphs = 0;
+		
+		for (int i = 0; i < out.length; i++) {
+			final char ch = out.chars[i];
+			if (ch == '\n') {
+				widest = Math.max(widest, pen_x);
+				pen_x = 0;
+				pen_y += line_height;
+				continue;
+			}
+			
+			final int frame = ch < char_frames.length ? char_frames[ch] : -1;
+			if (frame == -1)
+				continue;
+			
+			out.frames[glyphs] = frame;
+			out.glyph_x[glyphs] = pen_x;
+			out.glyph_y[glyphs] = pen_y;
+			glyphs++;
+			
+			pen_x += advances[frame];
+		}
+		
+		out.glyph_count = glyphs;
+		out.width = Math.max(widest, pen_x);
+		out.height = pen_y + line_height;
+		out.font = this;
+		
+	}
+	
+	/** Draw one character at the pen location, returning the pen location following it. **/
+	private float drawChar(final Canvas c, final char ch, final float pen_x, final float pen_y) {
+		final int frame = ch < char_frames.length ? char_frames[ch] : -1;
+		if (frame == -1)
+			return pen_x;
+		
+		drawFrame(c, frame, pen_x, pen_y);
+		return pen_x + advances[frame] * scale;
+	}
+	
+	/** Draw one glyph frame, with the pen at (<code>pen_x</code>, <code>pen_y</code>). **/
+	private void drawFrame(final Canvas c, final int frame, final float pen_x, final float pen_y) {
+		
+		// A palette sheet tints the frame itself, so no color filter is needed.
+		final boolean sheet_tint = use_tint && sheet.isTintApplied();
+		final Bitmap frame_bmp = sheet_tint ? sheet.getFrameBitmap(frame, src, scale, tint_color) : sheet.getFrameBitmap(frame, src, scale);
+		
+		// A streaming sheet may still be decoding this glyph.
+		if (frame_bmp == null)
+			return;
+		
+		// The glyph is drawn at its size in the sheet, whichever mip level it comes from.
+		sheet.getFrameRect(frame, frame_rect);
+		dst.left = Math.round(pen_x + x_offsets[frame] * scale);
+		dst.top = Math.round(pen_y + y_offsets[frame] * scale);
+		dst.right = dst.left + Math.round((frame_rect.right - frame_rect.left) * scale);
+		dst.bottom = dst.top + Math.round((frame_rect.bottom - frame_rect.top) * scale);
+		
+		c.drawBitmap(frame_bmp, src, dst, use_tint && !sheet_tint ? tint_paint : null);
+		
+	}
+	
+	/**
+	 * Write an int, in decimal, into the start of a char[] of at least 11 characters.
+	 * @return The number of characters written.
+	 */
+	private static int intToChars(final int value, final char[] out) {
+		
+		// Work with a negative value, so Integer.MIN_VALUE needs no special case.
+		int v = value > 0 ? -value : value;
+		int length = 0;
+		do {
+			out[length++] = (char)('0' - (v % 10));
+			v /= 10;
+		} while (v != 0);
+		
+		if (value < 0)
+			out[length++] = '-';
+		
+		// The digits were written backwards.
+		for (int i = 0, j = length - 1; i < j; i++, j--) {
+			final char t = out[i];
+			out[i] = out[j];
+			out[j] = t;
+		}
+		
+		return length;
+		
+	}
+	
+	/** Read the integer value of <code>key=value</code> from a BMFont line, or 0 if missing. **/
+	private static int parseField(final String line, final String key) {
+		int start = 0;
+		while (true) {
+			final int i = line.indexOf(key, start);
+			if (i < 0)
+				return 0;
+			
+			final int eq = i + key.length();
+			if ((i == 0 || line.charAt(i - 1) == ' ') && eq < line.length() && line.charAt(eq) == '=') {
+				int end = eq + 1;
+				while (end < line.length() && line.charAt(end) != ' ')
+					end++;
+				try {
+					return Integer.parseInt(line.substring(eq + 1, end));
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+			start = eq;
+		}
+	}
+	
+	private static char[] growChars(final char[] src, final int length) {
+		final char[] rtn_val = new char[length];
+		System.arraycopy(src, 0, rtn_val, 0, Math.min(src.length, length));
+		return rtn_val;
+	}
+	
+	private static int[] growInts(final int[] src, final int length) {
+		final int[] rtn_val = new int[length];
+		System.arraycopy(src, 0, rtn_val, 0, Math.min(src.length, length));
+		return rtn_val;
+	}
+	
+	private static float[] growFloats(final float[] src, final int length) {
+		final float[] rtn_val = new float[length];
+		System.arraycopy(src, 0, rtn_val, 0, Math.min(src.length, length));
+		return rtn_val;
+	}
+	
+}
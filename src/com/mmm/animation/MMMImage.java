@@ -1,10 +1,13 @@
 package com.mmm.animation;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
 
+import com.mmm.gameengine.GameRenderer;
+
 /**
  * The MMMImage class is a subclass of MMMAnimation. The behavior is
  * almost the exact same, however an MMMImage is designed to be
@@ -14,7 +17,7 @@ import android.graphics.Rect;
  * 
  * Last Edited by: Michael Morris (7.8.2012)
  * @author Michael Morris
- * @version 1.2.1
+ * @version 1.5.2
  *
  */
 public class MMMImage extends MMMAnimation {
@@ -107,39 +110,71 @@ public class MMMImage extends MMMAnimation {
 	@Override
 	public void draw(Canvas c) {
 		
-		// Rotation should happen to canvas matrix before any calls to darw.
-		c.rotate(rotation_angle_degrees, x + (float)((bmp.getWidth() * scale) / 2.0), y + (float)((bmp.getHeight() * scale) / 2.0));
+		// The sheet may come from a sheet resource, or be a palette or streaming sheet with no single Bitmap.
+		final MMMSpriteSheet s = getSpriteSheet();
+		if (s == null)
+			return;
 		
-		final Paint p = getUsablePaint();
+		// Draw from the mip level suited to the scale, if the sheet has any.
+		// A palette sheet tints the frame itself, so no color filter is needed.
+		final boolean sheet_tint = use_tint && s.isTintApplied();
+		final Rect src = src_rect;
+		final Bitmap level = sheet_tint ? s.getFrameBitmap(0, src, scale, tint_color) : s.getFrameBitmap(0, src, scale);
+		if (level == null)
+			return;
 		
-		// If the scale is anything but 1 (normal scale)
-		// design source and destination rectangles for effective scaling.
-		if (scale != 1.0f) {
-
-			Rect src = new Rect();
-			src.top = 0;
-			src.left = 0;
-			src.right = bmp.getWidth();
-			src.bottom = bmp.getHeight();
+		final int width = Math.round(s.getSpriteWidth() * scale);
+		final int height = Math.round(s.getSpriteHeight() * scale);
+		final float center_x = x + width * .5f;
+		final float center_y = y + height * .5f;
+		
+		final Paint p = sheet_tint ? null : getUsablePaint();
+		
+		// Rotation should happen to canvas matrix before any calls to darw.
+		c.rotate(rotation_angle_degrees, center_x, center_y);
+		
+		// If the whole Bitmap is drawn unscaled there is no need for wasting the time
+		// to set up the destination rectangle.
+		if (width == level.getWidth() && height == level.getHeight() && src.left == 0 && src.top == 0) {
 			
-			Rect dst = new Rect();
-			dst.top = (int)y;
-			dst.left = (int)x;
-			dst.right = (int)x + (int)(bmp.getWidth() * scale);
-			dst.bottom = (int)y + (int)(bmp.getHeight() * scale);
+			c.drawBitmap(level, x, y, p);
 			
-			//
-			c.drawBitmap(bmp, src, dst, p);
-		
-		// If the scale is 1.0f there is no need for wasting the time
-		// to create rectangles.
 		} else {
 			
-			c.drawBitmap(bmp, x, y, p);
+			final Rect dst = dst_rect;
+			dst.top = (int)y;
+			dst.left = (int)x;
+			dst.right = (int)x + width;
+			dst.bottom = (int)y + height;
+			
+			c.drawBitmap(level, src, dst, p);
 			
 		}
 		
-		c.rotate(-rotation_angle_degrees, x + (float)((bmp.getWidth() * scale) / 2.0), y + (float)((bmp.getHeight() * scale) / 2.0));
+		c.rotate(-rotation_angle_degrees, center_x, center_y);
+		
+	}
+	
+	/**
+	 * Draw the image (with/without scale) through a GameRenderer.
+	 * @param renderer The renderer to draw through.
+	 */
+	@Override
+	public void draw(final GameRenderer renderer) {
+		
+		final MMMSpriteSheet s = getSpriteSheet();
+		if (s == null)
+			return;
+		
+		s.prepareDraw(renderer);
+		final boolean sheet_tint = use_tint && s.isTintApplied();
+		final Rect src = src_rect;
+		final Bitmap level = sheet_tint ? s.getFrameBitmap(0, src, scale, tint_color) : s.getFrameBitmap(0, src, scale);
+		if (level == null)
+			return;
+		
+		renderer.drawBitmap(level, src, (int)x, (int)y, Math.round(s.getSpriteWidth() * scale), Math.round(s.getSpriteHeight() * scale),
+				rotation_angle_degrees, use_tint && !sheet_tint, tint_color);
 		
 	}
 		
@@ -0,0 +1,275 @@
+package com.mmm.animation;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import com.mmm.gameengine.GameRenderer;
+
+/**
+ * The MMMOcclusionCuller class draws a frames worth of MMMAnimations in
+ * layer order, lowest first, skipping every sprite hidden entirely behind an
+ * opaque sprite drawn over it. Before drawing, the sprites are walked front
+ * to back; each unrotated sprite whose frame has an opaque rectangle (see
+ * MMMSpriteSheet.getOpaqueRect()), and which is not tinted translucent,
+ * becomes an occluder, and a sprite whose
+ * bounds fall wholly inside one occluder already seen is culled. Only the
+ * largest occluders are kept, so the walk stays linear in the number of
+ * sprites.
+ * <BR>
+ * A sprite partly covered is drawn whole; only complete cover is culled.
+ * Sprites whose sheet is not loaded yet are always drawn and never occlude.
+ * The drawn and culled counts and pixels of the last frame are kept, to
+ * measure overdraw.
+ * <BR>
+ * To use:
+ *
+ * <code>culler.begin();</code>
+ *
+ * <code>for (MMMAnimation a : sprites) culler.add(a);</code>
+ *
+ * <code>culler.draw(canvas);</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.1
+ *
+ */
+public class MMMOcclusionCuller {
+	
+	/** The sprites added this frame, sorted by layer when drawn, and whether each is drawn. **/
+	private final MMMAnimation[] sprites;
+	private final boolean[] visible;
+	private int count;
+	
+	/** The left, top, right, and bottom of every occluder, and how many there are. **/
+	private final int[] occluders;
+	private final int max_occluders;
+	private int occluder_count;
+	
+	private final Rect opaque = new Rect();
+	private final Rect frame_rect = new Rect();
+	
+	/** The sprites and pixels drawn and culled by the last draw. **/
+	private int drawn_count, culled_count;
+	private long drawn_pixels, culled_pixels;
+	
+	/**
+	 * Create a new MMMOcclusionCuller.
+	 * @param capacity The most sprites that can be added in one frame.
+	 * @param the_max_occluders The most occluders to test each sprite against.
+	 */
+	public MMMOcclusionCuller(final int capacity, final int the_max_occluders) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be at least 1");
+		if (the_max_occluders < 1)
+			throw new IllegalArgumentException("there must be at least 1 occluder");
+		
+		sprites = new MMMAnimation[capacity];
+		visible = new boolean[capacity];
+		max_occluders = the_max_occluders;
+		occluders = new int[the_max_occluders * 4];
+	}
+	
+	/** Start a new frame, forgetting the sprites of the last. **/
+	public void begin() {
+		for (int i = 0; i < count; i++)
+			sprites[i] = null;
+		count = 0;
+	}
+	
+	/**
+	 * Add a sprite to draw this frame. Sprites on the same layer are drawn in
+	 * the order they were added.
+	 * @param anim The sprite.
+	 */
+	public void add(final MMMAnimation anim) {
+		if (count == sprites.length)
+			throw new IllegalStateException("no more than " + sprites.length + " sprites can be added in one frame");
+		sprites[count++] = anim;
+	}
+	
+	/**
+	 * Draw every sprite added since begin() which is not hidden.
+	 * @param c The canvas to draw on.
+	 */
+	public void draw(final Canvas c) {
+		cull();
+		for (int i = 0; i < count; i++) {
+			if (visible[i])
+				sprites[i].draw(c);
+		}
+	}
+	
+	/**
+	 * Draw every sprite added since begin() which is not hidden.
+	 * @param renderer The renderer to draw through.
+	 */
+	public void draw(final GameRenderer renderer) {
+		cull();
+		for (int i = 0; i < count; i++) {
+			if (visible[i])
+				sprites[i].draw(renderer);
+		}
+	}
+	
+	/** Sort the sprites by layer and decide, front to back, which are hidden. **/
+	private void cull() {
+		
+		// Insertion sort keeps sprites of one layer in the order added, and is quick for sprites added close to layer order.
+		for (int i = 1; i < count; i++) {
+			final MMMAnimation a = sprites[i];
+			final float layer = a.getLayer();
+			int j = i - 1;
+			while (j >= 0 && sprites[j].getLayer() > layer) {
+				sprites[j + 1] = sprites[j];
+				j--;
+			}
+			sprites[j + 1] = a;
+		}
+		
+		occluder_count = 0;
+		drawn_count = culled_count = 0;
+		drawn_pixels = culled_pixels = 0;
+		
+		for (int i = count - 1; i >= 0; i--) {
+			final MMMAnimation a = sprites[i];
+			final MMMSpriteSheet sheet = a.loadedSheet();
+			final int frame = a.currentFrame();
+			if (sheet == null || frame < 0) {
+				visible[i] = true;
+				drawn_count++;
+				continue;
+			}
+			
+			final int left = (int)a.getX();
+			final int top = (int)a.getY();
+			final int width = Math.round(sheet.getSpriteWidth() * a.getScale());
+			final int height = Math.round(sheet.getSpriteHeight() * a.getScale());
+			final long pixels = (long)width * height;
+			final boolean rotated = a.getRotation() % 360 != 0;
+			
+			// A rotated sprite is tested by the square its corners sweep around its center.
+			int l = left, t = top, r = left + width, b = top + height;
+			if (rotated) {
+				final int radius = (int)Math.ceil(Math.sqrt((double)width * width + (double)height * height) * .5);
+				final int cx = left + width / 2;
+				final int cy = top + height / 2;
+				l = cx - radius;
+				t = cy - radius;
+				r = cx + radius;
+				b = cy + radius;
+			}
+			
+			if (isOccluded(l, t, r, b)) {
+				visible[i] = false;
+				culled_count++;
+				culled_pixels += pixels;
+				continue;
+			}
+			
+			visible[i] = true;
+			drawn_count++;
+			drawn_pixels += pixels;
+			
+			// A tint with alpha below 255 draws the whole sprite translucent.
+			final boolean translucent = a.use_tint && (a.getTintColor() >>> 24) != 0xFF;
+			if (!rotated && !translucent && sheet.getOpaqueRect(frame, opaque))
+				addOccluder(sheet, frame, left, top, width, height);
+		}
+		
+	}
+	
+	/** Whether the given bounds lie wholly inside one occluder. **/
+	private boolean isOccluded(final int l, final int t, final int r, final int b) {
+		for (int i = 0; i < occluder_count * 4; i += 4) {
+			if (l >= occluders[i] && t >= occluders[i + 1] && r <= occluders[i + 2] && b <= occluders[i + 3])
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Add the opaque rectangle in <code>opaque</code>, scaled from the frames
+	 * own size to the bounds it is drawn at, as MMMAnimation.draw() stretches
+	 * it, replacing the smallest occluder if full.
+	 */
+	private void addOccluder(final MMMSpriteSheet sheet, final int frame, final int left, final int top, final int width, final int height) {
+		
+		sheet.getFrameRect(frame, frame_rect);
+		final int frame_width = frame_rect.right - frame_rect.left;
+		final int frame_height = frame_rect.bottom - frame_rect.top;
+		if (frame_width < 1 || frame_height < 1)
+			return;
+		
+		// Round inward, and lose a pixel each side when scaled since filtering blends the edge with its neighbors.
+		final int inset = width == frame_width && height == frame_height ? 0 : 1;
+		final int l = left + (int)Math.ceil((double)opaque.left * width / frame_width) + inset;
+		final int t = top + (int)Math.ceil((double)opaque.top * height / frame_height) + inset;
+		final int r = left + (int)Math.floor((double)opaque.right * width / frame_width) - inset;
+		final int b = top + (int)Math.floor((double)opaque.bottom * height / frame_height) - inset;
+		if (r <= l || b <= t)
+			return;
+		
+		int slot = occluder_count;
+		if (occluder_count == max_occluders) {
+			slot = 0;
+			for (int i = 1; i < max_occluders; i++) {
+				if (area(i) < area(slot))
+					slot = i;
+			}
+			if (area(slot) >= (long)(r - l) * (b - t))
+				return;
+		} else {
+			occluder_count++;
+		}
+		
+		final int i = slot * 4;
+		occluders[i] = l;
+		occluders[i + 1] = t;
+		occluders[i + 2] = r;
+		occluders[i + 3] = b;
+		
+	}
+	
+	private long area(final int slot) {
+		final int i = slot * 4;
+		return (long)(occluders[i + 2] - occluders[i]) * (occluders[i + 3] - occluders[i + 1]);
+	}
+	
+	/** Retrieve the number of sprites added since begin(). **/
+	public int getSpriteCount() {
+		return count;
+	}
+	
+	/** Retrieve the number of sprites drawn by the last draw. **/
+	public int getDrawnCount() {
+		return drawn_count;
+	}
+	
+	/** Retrieve the number of sprites culled by the last draw. **/
+	public int getCulledCount() {
+		return culled_count;
+	}
+	
+	/** Retrieve the number of sprite pixels drawn by the last draw, not counting sprites whose sheet was not loaded. **/
+	public long getDrawnPixels() {
+		return drawn_pixels;
+	}
+	
+	/** Retrieve the number of sprite pixels the last draw skipped. **/
+	public long getCulledPixels() {
+		return culled_pixels;
+	}
+	
+	/**
+	 * Retrieve the overdraw of the last draw: the sprite pixels drawn for
+	 * every pixel of the screen.
+	 * @param screen_area The number of pixels on the screen.
+	 * @return The drawn pixels divided by the screen area.
+	 */
+	public float getOverdraw(final long screen_area) {
+		if (screen_area <= 0)
+			throw new IllegalArgumentException("screen area must be above 0");
+		return (float)((double)drawn_pixels / screen_area);
+	}
+	
+}
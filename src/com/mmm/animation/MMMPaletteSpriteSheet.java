@@ -0,0 +1,347 @@
+package com.mmm.animation;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import com.mmm.gameengine.GameRenderer;
+
+/**
+ * The MMMPaletteSpriteSheet class is a grid MMMSpriteSheet kept as one byte
+ * per pixel, indexing a palette of up to 256 ARGB colors, rather than as a
+ * 4 byte per pixel Bitmap. Frames are expanded into a small cache of frame
+ * sized Bitmaps as they are drawn, reusing the least recently drawn.
+ * <BR>
+ * Tinting is applied to the palette before expanding, matching the
+ * LightingColorFilter used by MMMAnimation, so a tinted frame is drawn with
+ * no color filter at all. A frame drawn in several tints takes a cache
+ * entry per tint.
+ * <BR>
+ * Sheets with more than 256 colors do not qualify; fromBitmap() returns
+ * null for them. The cache should hold at least as many frames as are drawn
+ * each frame, or frames are expanded again every time they are drawn.
+ * Drawn through a GameRenderer, a cache entry is passed to its release()
+ * before being reused for another frame, so a batching renderer draws what
+ * it holds back first.
+ * <BR>
+ * To use:
+ *
+ * <code>MMMSpriteSheet sheet = MMMSpriteSheet.decodePalette(context, R.drawable.runner, 8, 4, 16);</code>
+ *
+ * @author Michael Morris
+ * @version 1.1.1
+ *
+ */
+public class MMMPaletteSpriteSheet extends MMMSpriteSheet {
+	
+	/** The most colors a palette holds. **/
+	public static final int MAX_COLORS = 256;
+	
+	/** The width and height of the whole sheet. **/
+	private final int sheet_width, sheet_height;
+	
+	/** The palette index of every pixel, row by row. **/
+	private final byte[] indices;
+	
+	/** The palette, and the same palette tinted by <code>tint_color</code>. **/
+	private final int[] palette;
+	private final int[] tinted_palette;
+	private int tinted_palette_color;
+	private boolean tinted_palette_ready = false;
+	
+	/** The cached frame Bitmaps, and the frame, tint, and last use of each. **/
+	private final Bitmap[] cache;
+	private final int[] cache_frame;
+	private final boolean[] cache_tinted;
+	private final int[] cache_tint;
+	private final long[] cache_used;
+	private long use_clock;
+	
+	/** The renderer last drawn through, told of every cache entry reused, or null. **/
+	private GameRenderer draw_renderer;
+	
+	/** The pixels of one frame, while expanding it. **/
+	private final int[] expand_pixels;
+	
+	/** The number of frames expanded into the cache. **/
+	private int expand_count;
+	
+	private boolean recycled = false;
+	
+	private MMMPaletteSpriteSheet(final int width, final int height, final byte[] the_indices, final int[] the_palette,
+			final int sprites_x, final int sprites_y, final int cache_frames) {
+		super(sprites_x, sprites_y);
+		
+		sheet_width = width;
+		sheet_height = height;
+		indices = the_indices;
+		palette = the_palette;
+		tinted_palette = new int[palette.length];
+		
+		cache = new Bitmap[cache_frames];
+		cache_frame = new int[cache_frames];
+		cache_tinted = new boolean[cache_frames];
+		cache_tint = new int[cache_frames];
+		cache_used = new long[cache_frames];
+		for (int i = 0; i < cache_frames; i++)
+			cache_frame[i] = -1;
+		
+		expand_pixels = new int[getSpriteWidth() * getSpriteHeight()];
+	}
+	
+	/**
+	 * Index the pixels of a Bitmap into a new MMMPaletteSpriteSheet, if it
+	 * has no more than MAX_COLORS colors. The Bitmap is not recycled.
+	 * @param bitmap The sprite sheet Bitmap.
+	 * @param sprites_x The number of sprites in the x direction.
+	 * @param sprites_y The number of sprites in the y direction.
+	 * @param cache_frames The number of expanded frames to keep, at least 2.
+	 * @return The new sheet, or null if the Bitmap has too many colors.
+	 */
+	public static MMMPaletteSpriteSheet fromBitmap(final Bitmap bitmap, final int sprites_x, final int sprites_y, final int cache_frames) {
+		if (bitmap == null)
+			throw new IllegalArgumentException("sprite sheet bitmap cannot be null");
+		return fromBitmap(bitmap, sprites_x, sprites_y, cache_frames, bitmap.getWidth(), bitmap.getHeight());
+	}
+	
+	/**
+	 * Index the pixels of a Bitmap into a new MMMPaletteSpriteSheet of the
+	 * given size, if it has no more than MAX_COLORS colors. The indices are
+	 * scaled nearest neighbor, so no colors are blended in. The Bitmap is not
+	 * recycled.
+	 * @param bitmap The sprite sheet Bitmap.
+	 * @param sprites_x The number of sprites in the x direction.
+	 * @param sprites_y The number of sprites in the y direction.
+	 * @param cache_frames The number of expanded frames to keep, at least 2.
+	 * @param width The width of the new sheet.
+	 * @param height The height of the new sheet.
+	 * @return The new sheet, or null if the Bitmap has too many colors.
+	 */
+	public static MMMPaletteSpriteSheet fromBitmap(final Bitmap bitmap, final int sprites_x, final int sprites_y, final int cache_frames,
+			final int width, final int height) {
+		
+		if (bitmap == null)
+			throw new IllegalArgumentException("sprite sheet bitmap cannot be null");
+		if (sprites_x < 1 || sprites_y < 1)
+			throw new IllegalArgumentException("number of sprites on a sheet cannot be less than 1 in any direction");
+		if (cache_frames < 2)
+			throw new IllegalArgumentException("the frame cache must hold at least 2 frames");
+		if (width < 1 || height < 1)
+			throw new IllegalArgumentException("sheet size must be at least 1 in each direction");
+		
+		final int source_width = bitmap.getWidth();
+		final int source_height = bitmap.getHeight();
+		final byte[] the_indices = new byte[source_width * source_height];
+		
+		// An open addressed table from color to palette index, sized to stay under half full.
+		final int[] table_colors = new int[MAX_COLORS * 2];
+		final int[] table_indices = new int[MAX_COLORS * 2];
+		for (int i = 0; i < table_indices.length; i++)
+			table_indices[i] = -1;
+		final int[] the_palette = new int[MAX_COLORS];
+		int colors = 0;
+		
+		// A row at a time, so the full ARGB sheet is never copied at once.
+		final int[] row = new int[source_width];
+		for (int y = 0; y < source_height; y++) {
+			bitmap.getPixels(row, 0, source_width, 0, y, source_width, 1);
+			for (int x = 0; x < source_width; x++) {
+				final int color = row[x];
+				int slot = ((color * 0x9E3779B1) >>> 23) & (table_colors.length - 1);
+				while (table_indices[slot] >= 0 && table_colors[slot] != color)
+					slot = (slot + 1) & (table_colors.length - 1);
+				
+				if (table_indices[slot] < 0) {
+					if (colors == MAX_COLORS)
+						return null;
+					table_colors[slot] = color;
+					table_indices[slot] = colors;
+					the_palette[colors++] = color;
+				}
+				the_indices[y * source_width + x] = (byte)table_indices[slot];
+			}
+		}
+		
+		final int[] trimmed = new int[colors];
+		System.arraycopy(the_palette, 0, trimmed, 0, colors);
+		
+		if (width == source_width && height == source_height)
+			return new MMMPaletteSpriteSheet(width, height, the_indices, trimmed, sprites_x, sprites_y, cache_frames);
+		
+		// Sample the source pixel under the center of every scaled pixel.
+		final byte[] scaled = new byte[width * height];
+		for (int y = 0; y < height; y++) {
+			final int sy = (int)(((2L * y + 1) * source_height) / (2L * height));
+			final int src_row = sy * source_width;
+			final int dst_row = y * width;
+			for (int x = 0; x < width; x++)
+				scaled[dst_row + x] = the_indices[src_row + (int)(((2L * x + 1) * source_width) / (2L * width))];
+		}
+		
+		return new MMMPaletteSpriteSheet(width, height, scaled, trimmed, sprites_x, sprites_y, cache_frames);
+		
+	}
+	
+	@Override
+	public int getSpriteWidth() {
+		return sheet_width / num_sprites_x;
+	}
+	
+	@Override
+	public int getSpriteHeight() {
+		return sheet_height / num_sprites_y;
+	}
+	
+	/** Retrieve the number of colors in the palette. **/
+	public int getColorCount() {
+		return palette.length;
+	}
+	
+	/** Retrieve the number of frames expanded into the cache so far. **/
+	public int getExpandCount() {
+		return expand_count;
+	}
+	
+	@Override
+	public Bitmap getFrameBitmap(final int frame, final Rect out) {
+		return expand(frame, false, 0, out);
+	}
+	
+	@Override
+	void prepareDraw(final GameRenderer renderer) {
+		draw_renderer = renderer;
+	}
+	
+	@Override
+	public boolean isTintApplied() {
+		return true;
+	}
+	
+	@Override
+	public Bitmap getFrameBitmap(final int frame, final Rect out, final float draw_scale, final int tint_color) {
+		return expand(frame, true, tint_color, out);
+	}
+	
+	/** Find the frame in the cache, or expand it into the least recently used entry. **/
+	private Bitmap expand(final int frame, final boolean tinted, final int tint_color, final Rect out) {
+		
+		if (recycled)
+			return null;
+		
+		final int sprite_width = getSpriteWidth();
+		final int sprite_height = getSpriteHeight();
+		out.left = 0;
+		out.top = 0;
+		out.right = sprite_width;
+		out.bottom = sprite_height;
+		
+		use_clock++;
+		int oldest = 0;
+		for (int i = 0; i < cache.length; i++) {
+			if (cache_frame[i] == frame && cache_tinted[i] == tinted && (!tinted || cache_tint[i] == tint_color)) {
+				cache_used[i] = use_clock;
+				return cache[i];
+			}
+			if (cache_used[i] < cache_used[oldest])
+				oldest = i;
+		}
+		
+		final int[] colors = tinted ? tintedPalette(tint_color) : palette;
+		
+		final int left = (frame % num_sprites_x) * sprite_width;
+		final int top = (frame / num_sprites_x) * sprite_height;
+		int p = 0;
+		for (int y = 0; y < sprite_height; y++) {
+			int i = (top + y) * sheet_width + left;
+			for (int x = 0; x < sprite_width; x++)
+				expand_pixels[p++] = colors[indices[i++] & 0xFF];
+		}
+		
+		if (cache[oldest] == null)
+			cache[oldest] = Bitmap.createBitmap(sprite_width, sprite_height, Bitmap.Config.ARGB_8888);
+		else if (draw_renderer != null)
+			draw_renderer.release(cache[oldest]);
+		cache[oldest].setPixels(expand_pixels, 0, sprite_width, 0, 0, sprite_width, sprite_height);
+		
+		cache_frame[oldest] = frame;
+		cache_tinted[oldest] = tinted;
+		cache_tint[oldest] = tint_color;
+		cache_used[oldest] = use_clock;
+		expand_count++;
+		
+		return cache[oldest];
+		
+	}
+	
+	/**
+	 * Tint the palette as LightingColorFilter(tint_color, 1) would: every
+	 * color channel multiplied by the tints, and 1 added to blue.
+	 */
+	private int[] tintedPalette(final int tint_color) {
+		
+		if (tinted_palette_ready && tinted_palette_color == tint_color)
+			return tinted_palette;
+		
+		final int tint_r = (tint_color >> 16) & 0xFF;
+		final int tint_g = (tint_color >> 8) & 0xFF;
+		final int tint_b = tint_color & 0xFF;
+		for (int i = 0; i < palette.length; i++) {
+			final int color = palette[i];
+			final int r = ((color >> 16) & 0xFF) * tint_r / 255;
+			final int g = ((color >> 8) & 0xFF) * tint_g / 255;
+			final int b = Math.min(255, (color & 0xFF) * tint_b / 255 + 1);
+			tinted_palette[i] = (color & 0xFF000000) | (r << 16) | (g << 8) | b;
+		}
+		
+		tinted_palette_color = tint_color;
+		tinted_palette_ready = true;
+		return tinted_palette;
+		
+	}
+	
+	@Override
+	protected void readFramePixels(final int frame, final Rect frame_rect, final int[] out) {
+		final int width = frame_rect.right - frame_rect.left;
+		final int height = frame_rect.bottom - frame_rect.top;
+		int p = 0;
+		for (int y = 0; y < height; y++) {
+			int i = (frame_rect.top + y) * sheet_width + frame_rect.left;
+			for (int x = 0; x < width; x++)
+				out[p++] = palette[indices[i++] & 0xFF];
+		}
+	}
+	
+	@Override
+	public int generateMips(final int levels) {
+		throw new IllegalStateException("palette sheets do not support mip levels");
+	}
+	
+	@Override
+	public void setMipLevel(final int level, final Bitmap bitmap) {
+		throw new IllegalStateException("palette sheets do not support mip levels");
+	}
+	
+	/** Retrieve the number of bytes held by the indices, palette, and frame cache. **/
+	@Override
+	public long getByteCount() {
+		long rtn_val = indices.length + palette.length * 4L * 2;
+		for (int i = 0; i < cache.length; i++) {
+			if (cache[i] != null)
+				rtn_val += (long)cache[i].getRowBytes() * cache[i].getHeight();
+		}
+		return rtn_val;
+	}
+	
+	@Override
+	public void recycle() {
+		recycled = true;
+		draw_renderer = null;
+		for (int i = 0; i < cache.length; i++) {
+			if (cache[i] != null) {
+				cache[i].recycle();
+				cache[i] = null;
+			}
+			cache_frame[i] = -1;
+		}
+	}
+	
+}
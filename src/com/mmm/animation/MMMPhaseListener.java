@@ -0,0 +1,36 @@
+package com.mmm.animation;
+
+/**
+ * The MMMPhaseListener interface is notified by an MMMAnimation when one of
+ * its phases reaches a frame the listener was registered for, or completes.
+ * The integer data given when registering is passed back, so one listener
+ * can serve many animations and events without any holder objects being
+ * created.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public interface MMMPhaseListener {
+	
+	/**
+	 * Called, from within MMMAnimation.tick(), when the phase advances onto
+	 * the registered frame.
+	 * @param anim The animation.
+	 * @param phase_id The String identifier of the phase.
+	 * @param frame The frame number reached.
+	 * @param data The integer data given when registering.
+	 */
+	public void onPhaseFrame(final MMMAnimation anim, final String phase_id, final int frame, final int data);
+	
+	/**
+	 * Called, from within MMMAnimation.tick(), when the phase completes: once
+	 * played through for ONE_SHOT and HOLD_LAST, which then stop, and every
+	 * cycle for LOOP and PING_PONG.
+	 * @param anim The animation.
+	 * @param phase_id The String identifier of the phase.
+	 * @param data The integer data given when registering.
+	 */
+	public void onPhaseComplete(final MMMAnimation anim, final String phase_id, final int data);
+	
+}
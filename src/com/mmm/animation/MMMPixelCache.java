@@ -0,0 +1,331 @@
+package com.mmm.animation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+/**
+ * The MMMPixelCache class keeps the decoded pixels of Bitmap resources in
+ * app private files, so that decoding a sprite sheet PNG is only paid once.
+ * Later loads memory map the cached file and copy its pixels straight into a
+ * new Bitmap, which is several times faster than BitmapFactory.
+ * <BR>
+ * Every file starts with a header:
+ * <pre>
+ * int MAGIC, int VERSION, int CRC32 of the resource bytes, int screen density,
+ * int width, int height, int Bitmap.Config, int row bytes, int pixel data length
+ * </pre>
+ * followed by the raw pixel data. An entry is decoded again whenever the
+ * resource bytes (so its checksum) or the screen density change. Once the
+ * files total more than the size cap, the least recently used are deleted.
+ * <BR>
+ * Set a default cache once, and every MMMSpriteSheet.decode() uses it:
+ *
+ * <code>MMMPixelCache.setDefault(MMMPixelCache.open(context, 32 * 1024 * 1024));</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public class MMMPixelCache {
+	
+	/** The first int of every cache file, 'MMMP'. **/
+	public static final int MAGIC = 0x4D4D4D50;
+	
+	/** The version of the cache file format. **/
+	public static final int VERSION = 1;
+	
+	/** The number of bytes before the pixel data. **/
+	private static final int HEADER_SIZE = 9 * 4;
+	
+	/** The cache used by MMMSpriteSheet.decode(), or null for none. **/
+	private static volatile MMMPixelCache default_cache = null;
+	
+	/** The directory holding the cache files. **/
+	private final File dir;
+	
+	/** The most bytes the cache files may total. **/
+	private final long max_bytes;
+	
+	/** The number of loads served from, and missing, the cache. **/
+	private int hit_count;
+	private int miss_count;
+	
+	/**
+	 * Create a new MMMPixelCache keeping its files in the given directory.
+	 * @param the_dir The directory, created if needed.
+	 * @param the_max_bytes The most bytes the cache files may total.
+	 */
+	public MMMPixelCache(final File the_dir, final long the_max_bytes) {
+		if (the_max_bytes < 1)
+			throw new IllegalArgumentException("cache size must be at least 1 byte");
+		
+		dir = the_dir;
+		max_bytes = the_max_bytes;
+		if (!dir.isDirectory() && !dir.mkdirs())
+			Log.e("StickmanPaintball", "MMMPixelCache() -- could not create " + dir);
+	}
+	
+	/**
+	 * Open the cache in the applications private "mmm_pixels" directory.
+	 * @param c The Context of the application.
+	 * @param max_bytes The most bytes the cache files may total.
+	 * @return The cache.
+	 */
+	public static MMMPixelCache open(final Context c, final long max_bytes) {
+		return new MMMPixelCache(c.getDir("mmm_pixels", Context.MODE_PRIVATE), max_bytes);
+	}
+	
+	/**
+	 * Set the cache used by MMMSpriteSheet.decode().
+	 * @param cache The cache, or null to always decode.
+	 */
+	public static void setDefault(final MMMPixelCache cache) {
+		default_cache = cache;
+	}
+	
+	/** Retrieve the cache used by MMMSpriteSheet.decode(), or null. **/
+	public static MMMPixelCache getDefault() {
+		return default_cache;
+	}
+	
+	/**
+	 * Load the given resource, from the cache if it holds an up to date
+	 * entry, otherwise by decoding it and storing the pixels for next time.
+	 * @param c The Context in which the resource is located.
+	 * @param resource_id The integer (ex - R.drawable.icon) id of the resource.
+	 * @return The Bitmap, or null if the resource could not be decoded.
+	 */
+	public synchronized Bitmap decode(final Context c, final int resource_id) {
+		
+		final int crc = checksum(c, resource_id);
+		final int density = c.getResources().getDisplayMetrics().densityDpi;
+		final File file = new File(dir, "res_" + Integer.toHexString(resource_id) + ".px");
+		
+		if (file.isFile()) {
+			final Bitmap cached = read(file, crc, density);
+			if (cached != null) {
+				hit_count++;
+				// Mark the entry as recently used. Some filesystems ignore this, leaving write order.
+				file.setLastModified(System.currentTimeMillis());
+				return cached;
+			}
+		}
+		
+		miss_count++;
+		
+		final Bitmap rtn_val = BitmapFactory.decodeResource(c.getResources(), resource_id);
+		if (rtn_val != null && rtn_val.getConfig() != null) {
+			write(file, rtn_val, crc, density);
+			trim();
+		}
+		
+		return rtn_val;
+		
+	}
+	
+	/** Retrieve the number of loads served from the cache. **/
+	public synchronized int getHitCount() {
+		return hit_count;
+	}
+	
+	/** Retrieve the number of loads which had to decode. **/
+	public synchronized int getMissCount() {
+		return miss_count;
+	}
+	
+	/** Retrieve the number of bytes the cache files currently total. **/
+	public synchronized long getSize() {
+		long rtn_val = 0;
+		final File[] files = dir.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				rtn_val += files[i].length();
+			}
+		}
+		return rtn_val;
+	}
+	
+	/** Delete every cache file. **/
+	public synchronized void clear() {
+		final File[] files = dir.listFiles();
+		if (files != null) {
+			for (int i = 0; i < files.length; i++) {
+				files[i].delete();
+			}
+		}
+	}
+	
+	/** Read a cache file, or return null if it is stale, corrupt, or unreadable. **/
+	private Bitmap read(final File file, final int crc, final int density) {
+		
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			final FileChannel channel = raf.getChannel();
+			final long size = channel.size();
+			if (size < HEADER_SIZE)
+				return null;
+			
+			final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (map.getInt() != MAGIC || map.getInt() != VERSION || map.getInt() != crc || map.getInt() != density)
+				return null;
+			
+			final int width = map.getInt();
+			final int height = map.getInt();
+			final Bitmap.Config config = toConfig(map.getInt());
+			final int row_bytes = map.getInt();
+			final int length = map.getInt();
+			if (config == null || width < 1 || height < 1 || length != row_bytes * height || size < HEADER_SIZE + (long)length)
+				return null;
+			
+			final Bitmap rtn_val = Bitmap.createBitmap(width, height, config);
+			if (rtn_val.getRowBytes() != row_bytes) {
+				rtn_val.recycle();
+				return null;
+			}
+			rtn_val.copyPixelsFromBuffer(map);
+			return rtn_val;
+			
+		} catch (IOException e) {
+			Log.e("StickmanPaintball", "MMMPixelCache.read() -- could not read " + file, e);
+			return null;
+		} finally {
+			close(raf);
+		}
+		
+	}
+	
+	/** Write a cache file, through a temporary file so a half written entry is never read. **/
+	private void write(final File file, final Bitmap bitmap, final int crc, final int density) {
+		
+		final File temp = new File(dir, file.getName() + ".tmp");
+		final int length = bitmap.getRowBytes() * bitmap.getHeight();
+		
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_SIZE + length);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(crc);
+		buffer.putInt(density);
+		buffer.putInt(bitmap.getWidth());
+		buffer.putInt(bitmap.getHeight());
+		buffer.putInt(fromConfig(bitmap.getConfig()));
+		buffer.putInt(bitmap.getRowBytes());
+		buffer.putInt(length);
+		bitmap.copyPixelsToBuffer(buffer);
+		buffer.flip();
+		
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(temp, "rw");
+			raf.setLength(0);
+			final FileChannel channel = raf.getChannel();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			close(raf);
+			raf = null;
+			
+			if (!temp.renameTo(file))
+				temp.delete();
+		} catch (IOException e) {
+			Log.e("StickmanPaintball", "MMMPixelCache.write() -- could not write " + file, e);
+			close(raf);
+			temp.delete();
+		}
+		
+	}
+	
+	/** Delete the least recently used files until the cache fits its size cap. **/
+	private void trim() {
+		
+		final File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		
+		long total = 0;
+		for (int i = 0; i < files.length; i++) {
+			total += files[i].length();
+		}
+		
+		while (total > max_bytes) {
+			int oldest = -1;
+			for (int i = 0; i < files.length; i++) {
+				if (files[i] != null && (oldest < 0 || files[i].lastModified() < files[oldest].lastModified()))
+					oldest = i;
+			}
+			if (oldest < 0)
+				break;
+			
+			total -= files[oldest].length();
+			files[oldest].delete();
+			files[oldest] = null;
+		}
+		
+	}
+	
+	/** Calculate the CRC32 of the raw resource bytes. **/
+	private static int checksum(final Context c, final int resource_id) {
+		
+		final CRC32 crc = new CRC32();
+		final byte[] buffer = new byte[8192];
+		InputStream in = null;
+		try {
+			in = c.getResources().openRawResource(resource_id);
+			int read;
+			while ((read = in.read(buffer)) > 0)
+				crc.update(buffer, 0, read);
+		} catch (IOException e) {
+			Log.e("StickmanPaintball", "MMMPixelCache.checksum() -- could not read resource " + resource_id, e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		
+		return (int)crc.getValue();
+		
+	}
+	
+	private static int fromConfig(final Bitmap.Config config) {
+		switch (config) {
+			case ALPHA_8: return 1;
+			case RGB_565: return 2;
+			case ARGB_4444: return 3;
+			case ARGB_8888: return 4;
+			default: return 0;
+		}
+	}
+	
+	private static Bitmap.Config toConfig(final int code) {
+		switch (code) {
+			case 1: return Bitmap.Config.ALPHA_8;
+			case 2: return Bitmap.Config.RGB_565;
+			case 3: return Bitmap.Config.ARGB_4444;
+			case 4: return Bitmap.Config.ARGB_8888;
+			default: return null;
+		}
+	}
+	
+	private static void close(final RandomAccessFile raf) {
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+	
+}
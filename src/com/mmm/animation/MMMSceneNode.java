@@ -0,0 +1,531 @@
+package com.mmm.animation;
+
+import android.graphics.Canvas;
+
+/**
+ * The MMMSceneNode class builds MMMAnimations into a hierarchy, so composite
+ * objects (a character with a weapon and a hat) are moved, scaled, and
+ * rotated as one. Every node has a location, layer, scale, and rotation
+ * relative to its parent; its world transform is cached, and only worked out
+ * again when the node or one of its ancestors has changed. A node with an
+ * animation attached owns that animations location, layer, scale, and
+ * rotation, setting them from its world transform.
+ * <BR>
+ * A node turns about the center of its sprite, as MMMAnimation draws it, and
+ * carries its children around that same point; a grouping node turns about
+ * its location.
+ * <BR>
+ * Children are linked through the nodes themselves, and every traversal
+ * walks those links without recursion or a stack, so updating, ticking, and
+ * drawing a tree never allocates. Each node also caches the combined world
+ * bounds of its whole subtree, so drawing skips any subtree entirely off
+ * screen.
+ * <BR>
+ * Nodes are drawn parent first, then children in the order they were added.
+ * <BR>
+ * To use:
+ *
+ * <code>MMMSceneNode player = new MMMSceneNode(body);</code>
+ *
+ * <code>player.addChild(new MMMSceneNode(hat)).setLocation(4, -12);</code>
+ *
+ * then, every frame, move only the root, and
+ *
+ * <code>player.update();</code>
+ *
+ * <code>player.draw(canvas, view_left, view_top, view_right, view_bottom);</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.1
+ *
+ */
+public class MMMSceneNode {
+	
+	/** The links to the parent, first child, last child, and next sibling. **/
+	private MMMSceneNode parent, first_child, last_child, next_sibling, previous_sibling;
+	
+	/** The animation drawn by this node, or null for a pure grouping node. **/
+	private MMMAnimation animation;
+	
+	/** Whether this node, and its subtree, are drawn. **/
+	private boolean visible = true;
+	
+	/** The transform relative to the parent. **/
+	private float local_x, local_y, local_layer;
+	private float local_scale = 1.0f;
+	private float local_rotation;
+	
+	/** Half the unscaled size of the sprite, the point this node turns about, and whether it is known yet. **/
+	private float half_width, half_height;
+	private boolean size_known;
+	
+	/** Set when the local transform changes. **/
+	private boolean dirty = true;
+	
+	/** The cached world transform, and the sine and cosine of its rotation. **/
+	private float world_x, world_y, world_layer;
+	private float world_scale = 1.0f;
+	private float world_rotation;
+	private float world_sin, world_cos = 1.0f;
+	
+	/** Incremented whenever the world transform is worked out again. **/
+	private int world_stamp;
+	
+	/** The parents world_stamp when this nodes world transform was last worked out. **/
+	private int parent_stamp = -1;
+	
+	/** The world bounds of this nodes subtree, and whether it has any. **/
+	private float sub_left, sub_top, sub_right, sub_bottom;
+	private boolean sub_empty = true;
+	
+	/** The number of nodes drawn, and subtrees culled, by the last draw. **/
+	private int nodes_drawn, subtrees_culled;
+	
+	/**
+	 * Create a new grouping MMMSceneNode, with no animation.
+	 */
+	public MMMSceneNode() {
+		this(null);
+	}
+	
+	/**
+	 * Create a new MMMSceneNode drawing the given animation.
+	 * @param the_animation The animation, or null for none.
+	 */
+	public MMMSceneNode(final MMMAnimation the_animation) {
+		animation = the_animation;
+	}
+	
+	/**
+	 * Add a child node, removing it from any previous parent. It is drawn
+	 * after the existing children.
+	 * @param child The child.
+	 * @return The child, for chaining.
+	 * @throws IllegalArgumentException if the child is this node or one of its ancestors.
+	 */
+	public MMMSceneNode addChild(final MMMSceneNode child) {
+		
+		for (MMMSceneNode n = this; n != null; n = n.parent) {
+			if (n == child)
+				throw new IllegalArgumentException("a node cannot be added below itself");
+		}
+		
+		child.removeFromParent();
+		
+		child.parent = this;
+		child.previous_sibling = last_child;
+		if (last_child != null)
+			last_child.next_sibling = child;
+		else
+			first_child = child;
+		last_child = child;
+		
+		// The child has a new ancestor chain; work its world transform out again.
+		child.dirty = true;
+		
+		return child;
+		
+	}
+	
+	/**
+	 * Remove this node, along with its subtree, from its parent.
+	 */
+	public void removeFromParent() {
+		
+		if (parent == null)
+			return;
+		
+		if (previous_sibling != null)
+			previous_sibling.next_sibling = next_sibling;
+		else
+			parent.first_child = next_sibling;
+		
+		if (next_sibling != null)
+			next_sibling.previous_sibling = previous_sibling;
+		else
+			parent.last_child = previous_sibling;
+		
+		parent = null;
+		next_sibling = null;
+		previous_sibling = null;
+		dirty = true;
+		
+	}
+	
+	/** Retrieve the parent node, or null for a root. **/
+	public MMMSceneNode getParent() {
+		return parent;
+	}
+	
+	/** Retrieve the first child node, or null if none. **/
+	public MMMSceneNode getFirstChild() {
+		return first_child;
+	}
+	
+	/** Retrieve the next sibling node, or null if this is the last child. **/
+	public MMMSceneNode getNextSibling() {
+		return next_sibling;
+	}
+	
+	/** Set the animation drawn by this node, or null for none. **/
+	public void setAnimation(final MMMAnimation the_animation) {
+		animation = the_animation;
+		half_width = half_height = 0;
+		size_known = false;
+		dirty = true;
+	}
+	
+	/** Retrieve the animation drawn by this node, or null. **/
+	public MMMAnimation getAnimation() {
+		return animation;
+	}
+	
+	/** Show or hide this node and its subtree. **/
+	public void setVisible(final boolean is_visible) {
+		visible = is_visible;
+	}
+	
+	/** Check whether this node and its subtree are drawn. **/
+	public boolean isVisible() {
+		return visible;
+	}
+	
+	/**
+	 * Set the location relative to the parent.
+	 * @return This node, for chaining.
+	 */
+	public MMMSceneNode setLocation(final float the_x, final float the_y) {
+		local_x = the_x;
+		local_y = the_y;
+		dirty = true;
+		return this;
+	}
+	
+	/**
+	 * Move relative to the current location.
+	 * @return This node, for chaining.
+	 */
+	public MMMSceneNode translate(final float the_dx, final float the_dy) {
+		local_x += the_dx;
+		local_y += the_dy;
+		dirty = true;
+		return this;
+	}
+	
+	/**
+	 * Set the layer relative to the parent.
+	 * @return This node, for chaining.
+	 */
+	public MMMSceneNode setLayer(final float the_layer) {
+		local_layer = the_layer;
+		dirty = true;
+		return this;
+	}
+	
+	/**
+	 * Set the scale relative to the parent. Must be greater than 0.
+	 * @return This node, for chaining.
+	 */
+	public MMMSceneNode setScale(final float the_scale) {
+		if (the_scale > 0) {
+			local_scale = the_scale;
+			dirty = true;
+		}
+		return this;
+	}
+	
+	/**
+	 * Set the rotation, in degrees, relative to the parent.
+	 * @return This node, for chaining.
+	 */
+	public MMMSceneNode setRotation(final float degrees) {
+		local_rotation = degrees;
+		dirty = true;
+		return this;
+	}
+	
+	public float getX() {
+		return local_x;
+	}
+	
+	public float getY() {
+		return local_y;
+	}
+	
+	public float getLayer() {
+		return local_layer;
+	}
+	
+	public float getScale() {
+		return local_scale;
+	}
+	
+	public float getRotation() {
+		return local_rotation;
+	}
+	
+	/** Retrieve the world x location, as of the last update(). **/
+	public float getWorldX() {
+		return world_x;
+	}
+	
+	/** Retrieve the world y location, as of the last update(). **/
+	public float getWorldY() {
+		return world_y;
+	}
+	
+	/** Retrieve the world layer, as of the last update(). **/
+	public float getWorldLayer() {
+		return world_layer;
+	}
+	
+	/** Retrieve the world scale, as of the last update(). **/
+	public float getWorldScale() {
+		return world_scale;
+	}
+	
+	/** Retrieve the world rotation in degrees, as of the last update(). **/
+	public float getWorldRotation() {
+		return world_rotation;
+	}
+	
+	/**
+	 * Bring the world transforms and bounds of this node and its whole subtree
+	 * up to date, and hand the new transforms to their animations. Only nodes
+	 * which changed, or whose ancestors changed, are worked out again. Call on
+	 * the root once per frame, after moving nodes and before drawing.
+	 */
+	public void update() {
+		
+		MMMSceneNode n = this;
+		while (true) {
+			n.refreshWorld();
+			n.resetBounds();
+			
+			if (n.first_child != null) {
+				n = n.first_child;
+				continue;
+			}
+			
+			// The subtree of n is done: add its bounds to its parent, then move on to a sibling, or finish the parent.
+			while (true) {
+				if (n == this)
+					return;
+				final MMMSceneNode p = n.parent;
+				p.addBounds(n);
+				if (n.next_sibling != null) {
+					n = n.next_sibling;
+					break;
+				}
+				n = p;
+			}
+		}
+		
+	}
+	
+	/**
+	 * Tick the animation of every node in this subtree.
+	 * @param dt The milliseconds since last update.
+	 */
+	public void tick(final long dt) {
+		for (MMMSceneNode n = this; n != null; n = n.next(this, true)) {
+			if (n.animation != null)
+				n.animation.tick(dt);
+		}
+	}
+	
+	/**
+	 * Draw every visible node of this subtree overlapping the viewport, as of
+	 * the last update(). Subtrees entirely outside the viewport are skipped
+	 * without visiting their nodes.
+	 * @param c The canvas to draw on.
+	 */
+	public void draw(final Canvas c, final float view_left, final float view_top, final float view_right, final float view_bottom) {
+		
+		nodes_drawn = 0;
+		subtrees_culled = 0;
+		
+		MMMSceneNode n = this;
+		while (n != null) {
+			final boolean enter = n.visible && !n.sub_empty
+					&& n.sub_left < view_right && n.sub_top < view_bottom && n.sub_right > view_left && n.sub_bottom > view_top;
+			
+			if (enter) {
+				if (n.animation != null) {
+					n.animation.draw(c);
+					nodes_drawn++;
+				}
+			} else {
+				subtrees_culled++;
+			}
+			
+			n = n.next(this, enter);
+		}
+		
+	}
+	
+	/** Retrieve the number of nodes drawn by the last draw(). **/
+	public int getNodesDrawn() {
+		return nodes_drawn;
+	}
+	
+	/** Retrieve the number of subtrees skipped as off screen (or hidden) by the last draw(). **/
+	public int getSubtreesCulled() {
+		return subtrees_culled;
+	}
+	
+	/** Retrieve the left edge of the world bounds of this subtree, as of the last update(). **/
+	public float getSubtreeLeft() {
+		return sub_left;
+	}
+	
+	/** Retrieve the top edge of the world bounds of this subtree, as of the last update(). **/
+	public float getSubtreeTop() {
+		return sub_top;
+	}
+	
+	/** Retrieve the right edge of the world bounds of this subtree, as of the last update(). **/
+	public float getSubtreeRight() {
+		return sub_right;
+	}
+	
+	/** Retrieve the bottom edge of the world bounds of this subtree, as of the last update(). **/
+	public float getSubtreeBottom() {
+		return sub_bottom;
+	}
+	
+	/**
+	 * Find the node after this one in a pre-order walk of the subtree of
+	 * <code>root</code>, optionally skipping this nodes own subtree.
+	 * @return The next node, or null once the walk is done.
+	 */
+	private MMMSceneNode next(final MMMSceneNode root, final boolean descend) {
+		if (descend && first_child != null)
+			return first_child;
+		
+		MMMSceneNode n = this;
+		while (n != root) {
+			if (n.next_sibling != null)
+				return n.next_sibling;
+			n = n.parent;
+		}
+		return null;
+	}
+	
+	/** Work out the world transform again if this node, or an ancestor, changed. **/
+	private void refreshWorld() {
+		
+		// The pivot is the sprites center, unknown until its sheet has loaded.
+		if (!size_known && animation != null) {
+			final MMMSpriteSheet sheet = animation.loadedSheet();
+			if (sheet != null) {
+				half_width = sheet.getSpriteWidth() * 0.5f;
+				half_height = sheet.getSpriteHeight() * 0.5f;
+				size_known = true;
+				dirty = true;
+			}
+		}
+		
+		if (parent == null) {
+			if (!dirty)
+				return;
+			world_x = local_x;
+			world_y = local_y;
+			world_layer = local_layer;
+			world_scale = local_scale;
+			world_rotation = local_rotation;
+		} else {
+			if (!dirty && parent_stamp == parent.world_stamp)
+				return;
+			
+			world_scale = parent.world_scale * local_scale;
+			
+			// Rotate this nodes center about the parents center, then step back to its corner.
+			final float ps = parent.world_scale;
+			final float dx = local_x * ps + half_width * world_scale - parent.half_width * ps;
+			final float dy = local_y * ps + half_height * world_scale - parent.half_height * ps;
+			world_x = parent.world_x + parent.half_width * ps + dx * parent.world_cos - dy * parent.world_sin - half_width * world_scale;
+			world_y = parent.world_y + parent.half_height * ps + dx * parent.world_sin + dy * parent.world_cos - half_height * world_scale;
+			world_layer = parent.world_layer + local_layer;
+			world_rotation = parent.world_rotation + local_rotation;
+			parent_stamp = parent.world_stamp;
+		}
+		
+		final double radians = Math.toRadians(world_rotation);
+		world_sin = (float)Math.sin(radians);
+		world_cos = (float)Math.cos(radians);
+		
+		dirty = false;
+		world_stamp++;
+		
+		if (animation != null) {
+			animation.setLocation(world_x, world_y, world_layer);
+			animation.setScale(world_scale);
+			animation.setRotation(Math.round(world_rotation));
+		}
+		
+	}
+	
+	/** Set the subtree bounds to the bounds of this nodes own animation. **/
+	private void resetBounds() {
+		
+		sub_empty = true;
+		if (animation == null)
+			return;
+		
+		final MMMSpriteSheet sheet = animation.loadedSheet();
+		sub_empty = false;
+		
+		// Until its sheet is loaded the size is unknown, so never cull it.
+		if (sheet == null) {
+			sub_left = Float.NEGATIVE_INFINITY;
+			sub_top = Float.NEGATIVE_INFINITY;
+			sub_right = Float.POSITIVE_INFINITY;
+			sub_bottom = Float.POSITIVE_INFINITY;
+			return;
+		}
+		
+		final float w = sheet.getSpriteWidth() * world_scale;
+		final float h = sheet.getSpriteHeight() * world_scale;
+		
+		if (world_sin == 0) {
+			sub_left = world_x;
+			sub_top = world_y;
+			sub_right = world_x + w;
+			sub_bottom = world_y + h;
+		} else {
+			// The sprite turns about its center; bound the circle it can sweep.
+			final float radius = (float)Math.sqrt(w * w + h * h) * 0.5f;
+			final float cx = world_x + w * 0.5f;
+			final float cy = world_y + h * 0.5f;
+			sub_left = cx - radius;
+			sub_top = cy - radius;
+			sub_right = cx + radius;
+			sub_bottom = cy + radius;
+		}
+		
+	}
+	
+	/** Grow the subtree bounds to include a childs subtree bounds. **/
+	private void addBounds(final MMMSceneNode child) {
+		
+		if (child.sub_empty)
+			return;
+		
+		if (sub_empty) {
+			sub_left = child.sub_left;
+			sub_top = child.sub_top;
+			sub_right = child.sub_right;
+			sub_bottom = child.sub_bottom;
+			sub_empty = false;
+			return;
+		}
+		
+		sub_left = Math.min(sub_left, child.sub_left);
+		sub_top = Math.min(sub_top, child.sub_top);
+		sub_right = Math.max(sub_right, child.sub_right);
+		sub_bottom = Math.max(sub_bottom, child.sub_bottom);
+		
+	}
+	
+}
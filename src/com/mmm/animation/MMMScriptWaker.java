@@ -0,0 +1,48 @@
+package com.mmm.animation;
+
+import com.mmm.gameengine.GameScriptScheduler;
+
+/**
+ * The MMMScriptWaker class lets GameScripts wait for an MMMAnimation phase
+ * to complete. Register it as a completion listener of the phase, with the
+ * handle of the script as the data, once when the script is started; the
+ * script then waits with GameScriptScheduler.waitWake() after starting the
+ * phase. Completions while the script is not waiting are ignored, so a
+ * looping phase can stay registered. Registered as a frame listener, it
+ * wakes the script on reaching that frame instead.
+ * <BR>
+ * To use:
+ *
+ * <code>MMMScriptWaker waker = new MMMScriptWaker(scripts);</code>
+ *
+ * <code>int handle = scripts.start(brawler_script, i);</code>
+ *
+ * <code>brawler.addCompletionListener("attack", waker, handle);</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public class MMMScriptWaker implements MMMPhaseListener {
+	
+	private final GameScriptScheduler scheduler;
+	
+	/**
+	 * Create a new MMMScriptWaker.
+	 * @param the_scheduler The scheduler running the scripts to wake.
+	 */
+	public MMMScriptWaker(final GameScriptScheduler the_scheduler) {
+		if (the_scheduler == null)
+			throw new IllegalArgumentException("scheduler cannot be null");
+		scheduler = the_scheduler;
+	}
+	
+	public void onPhaseFrame(final MMMAnimation anim, final String phase_id, final int frame, final int data) {
+		scheduler.wake(data);
+	}
+	
+	public void onPhaseComplete(final MMMAnimation anim, final String phase_id, final int data) {
+		scheduler.wake(data);
+	}
+	
+}
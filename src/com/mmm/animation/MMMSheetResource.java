@@ -0,0 +1,185 @@
+package com.mmm.animation;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.mmm.gameengine.GameResource;
+import com.mmm.gameengine.GameResourceScope;
+
+/**
+ * The MMMSheetResource class is a sprite sheet resource which is decoded
+ * lazily, the first time it is drawn, and can be released and decoded again
+ * as its owning GameState is left and returned to. Register it with the
+ * states GameResourceScope and hand it to any number of MMMAnimations.
+ * <BR>
+ * To use:
+ *
+ * <code>GameResourceScope scope = GameEngine.getInstance().getResourceScope(ID_HERE);</code>
+ *
+ * <code>runner.setSpriteSheet(MMMSheetResource.obtain(scope, context, R.drawable.runner, 8, 4));</code>
+ *
+ * @author Michael Morris
+ * @version 1.1.0
+ *
+ */
+public class MMMSheetResource implements GameResource {
+	
+	/** The Context the resource is decoded from. **/
+	private final Context context;
+	
+	/** The integer id of the resource, and how it is divided into sprites. **/
+	private final int resource_id;
+	private final int sprites_x, sprites_y;
+	
+	/** The most rows to keep resident if streamed, or 0 to decode the whole sheet. **/
+	private final int max_resident_rows;
+	
+	/** The number of expanded frames to cache if kept as a palette sheet, or 0 to keep the Bitmap. **/
+	private int palette_cache_frames = 0;
+	
+	/** The decoded sheet, or null while not loaded. **/
+	private MMMSpriteSheet sheet;
+	
+	/** Set when decoding failed, so it is not retried every frame until released. **/
+	private boolean failed;
+	
+	/** The number of times the sheet has been decoded. **/
+	private int load_count;
+	
+	/**
+	 * Create a new MMMSheetResource, which is not decoded until first used.
+	 * @param c The Context in which the resource is located.
+	 * @param the_resource_id The integer (ex - R.drawable.icon) id of the resource.
+	 * @param the_sprites_x The number of sprites in the x direction.
+	 * @param the_sprites_y The number of sprites in the y direction.
+	 */
+	public MMMSheetResource(final Context c, final int the_resource_id, final int the_sprites_x, final int the_sprites_y) {
+		this(c, the_resource_id, the_sprites_x, the_sprites_y, 0);
+	}
+	
+	/**
+	 * Create a new MMMSheetResource, which is not decoded until first used,
+	 * and is streamed (see MMMSpriteSheet.decodeStreaming()) if
+	 * <code>the_max_resident_rows</code> is above 0.
+	 * @param c The Context in which the resource is located.
+	 * @param the_resource_id The integer (ex - R.drawable.icon) id of the resource.
+	 * @param the_sprites_x The number of sprites in the x direction.
+	 * @param the_sprites_y The number of sprites in the y direction.
+	 * @param the_max_resident_rows The most rows to keep decoded when streamed, or 0 to decode the whole sheet.
+	 */
+	public MMMSheetResource(final Context c, final int the_resource_id, final int the_sprites_x, final int the_sprites_y, final int the_max_resident_rows) {
+		if (the_sprites_x < 1 || the_sprites_y < 1)
+			throw new IllegalArgumentException("number of sprites on a sheet cannot be less than 1 in any direction");
+		if (the_max_resident_rows < 0)
+			throw new IllegalArgumentException("max resident rows cannot be negative");
+		
+		context = c.getApplicationContext();
+		resource_id = the_resource_id;
+		sprites_x = the_sprites_x;
+		sprites_y = the_sprites_y;
+		max_resident_rows = the_max_resident_rows;
+	}
+	
+	/**
+	 * Retrieve the sheet resource registered with the scope for the given
+	 * resource and grid, creating and registering it if there is none yet, so
+	 * animations of one state share a single decoded sheet.
+	 * @param scope The scope to register with.
+	 * @param c The Context in which the resource is located.
+	 * @param resource_id The integer (ex - R.drawable.icon) id of the resource.
+	 * @param sprites_x The number of sprites in the x direction.
+	 * @param sprites_y The number of sprites in the y direction.
+	 * @return The shared sheet resource.
+	 */
+	public static MMMSheetResource obtain(final GameResourceScope scope, final Context c, final int resource_id, final int sprites_x, final int sprites_y) {
+		
+		for (int i = 0; i < scope.getResourceCount(); i++) {
+			if (scope.getResource(i) instanceof MMMSheetResource) {
+				final MMMSheetResource r = (MMMSheetResource)scope.getResource(i);
+				if (r.resource_id == resource_id && r.sprites_x == sprites_x && r.sprites_y == sprites_y)
+					return r;
+			}
+		}
+		
+		return scope.add(new MMMSheetResource(c, resource_id, sprites_x, sprites_y));
+		
+	}
+	
+	/**
+	 * Keep the sheet as a palette sheet (see MMMSpriteSheet.decodePalette())
+	 * if it has no more than 256 colors. Takes effect the next time the sheet
+	 * is decoded. Ignored if the sheet is streamed.
+	 * @param cache_frames The number of expanded frames to keep, at least 2, or 0 to keep the decoded Bitmap.
+	 */
+	public void setPalette(final int cache_frames) {
+		if (cache_frames != 0 && cache_frames < 2)
+			throw new IllegalArgumentException("the frame cache must hold at least 2 frames");
+		palette_cache_frames = cache_frames;
+	}
+	
+	/**
+	 * Retrieve the sprite sheet, decoding it first if not loaded.
+	 * @return The sprite sheet, or null if it could not be decoded.
+	 */
+	public MMMSpriteSheet getSheet() {
+		if (sheet == null && !failed)
+			load();
+		return sheet;
+	}
+	
+	@Override
+	public boolean load() {
+		
+		if (sheet != null)
+			return true;
+		
+		if (max_resident_rows > 0)
+			sheet = MMMSpriteSheet.decodeStreaming(context, resource_id, sprites_x, sprites_y, max_resident_rows);
+		else if (palette_cache_frames > 0)
+			sheet = MMMSpriteSheet.decodePalette(context, resource_id, sprites_x, sprites_y, palette_cache_frames);
+		else
+			sheet = MMMSpriteSheet.decode(context, resource_id, sprites_x, sprites_y);
+		
+		if (sheet == null) {
+			Log.e("StickmanPaintball", "MMMSheetResource.load() -- could not decode resource " + resource_id);
+			failed = true;
+			return false;
+		}
+		
+		load_count++;
+		return true;
+		
+	}
+	
+	@Override
+	public void release() {
+		if (sheet != null) {
+			sheet.recycle();
+			sheet = null;
+		}
+		failed = false;
+	}
+	
+	@Override
+	public boolean isLoaded() {
+		return sheet != null;
+	}
+	
+	@Override
+	public long getByteCount() {
+		if (sheet == null)
+			return 0;
+		return sheet.getByteCount();
+	}
+	
+	/** Retrieve the number of times the sheet has been decoded. **/
+	public int getLoadCount() {
+		return load_count;
+	}
+	
+	/** Retrieve the integer id of the resource. **/
+	public int getResourceId() {
+		return resource_id;
+	}
+	
+}
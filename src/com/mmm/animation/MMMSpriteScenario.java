@@ -0,0 +1,302 @@
+package com.mmm.animation;
+
+import java.util.Random;
+
+import android.graphics.Canvas;
+import android.view.MotionEvent;
+
+import com.mmm.gameengine.GameBenchmark;
+import com.mmm.gameengine.GameEngine;
+import com.mmm.gameengine.GameRenderer;
+import com.mmm.gameengine.RendererGameState;
+
+/**
+ * The MMMSpriteScenario class is a GameBenchmark scenario of animated
+ * sprites bouncing around the screen, all sharing one sprite sheet. Which
+ * engine features the sprites exercise is set before running: tint, varied
+ * scale, rotation, how often each sprite switches phase, and how often the
+ * scene switches state. Sprites are placed from a fixed seed, so runs are
+ * repeatable.
+ * <BR>
+ * The sheet is split into two phases, the first half of its frames and the
+ * second, which sprites switch between.
+ * <BR>
+ * With transitions on, the scene adds a second state, with the ID after its
+ * own, while it runs. Each transition switches to that state, which shows
+ * the sprites paused for one frame and switches back, so both the scenes
+ * and the engines leave and enter costs are measured.
+ * <BR>
+ * To use:
+ *
+ * <code>MMMSpriteScenario scenario = new MMMSpriteScenario("tinted", sheet, 800, 480);</code>
+ *
+ * <code>scenario.setTint(true);</code>
+ *
+ * <code>bench.run(scenario, new int[] { 100, 1000, 10000, 100000 });</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.1
+ *
+ */
+public class MMMSpriteScenario implements GameBenchmark.Scenario {
+	
+	private final String name;
+	private final MMMSpriteSheet sheet;
+	private final int width, height;
+	
+	private boolean tint = false;
+	private boolean scale = false;
+	private boolean rotation = false;
+	
+	/** The milliseconds between phase switches of each sprite, or 0 for none. **/
+	private long phase_switch_interval = 0;
+	
+	/** The milliseconds between state switches, or 0 for none. **/
+	private long transition_interval = 0;
+	
+	/**
+	 * Create a new MMMSpriteScenario.
+	 * @param the_name The name written in the CSV.
+	 * @param the_sheet The sprite sheet every sprite draws from.
+	 * @param the_width The width of the area sprites move in.
+	 * @param the_height The height of the area sprites move in.
+	 */
+	public MMMSpriteScenario(final String the_name, final MMMSpriteSheet the_sheet, final int the_width, final int the_height) {
+		if (the_sheet == null)
+			throw new IllegalArgumentException("sheet cannot be null");
+		
+		name = the_name;
+		sheet = the_sheet;
+		width = the_width;
+		height = the_height;
+	}
+	
+	/** Set whether every sprite is tinted, each its own color. **/
+	public void setTint(final boolean enabled) {
+		tint = enabled;
+	}
+	
+	/** Set whether sprites are scaled, each between 0.5 and 1.5. **/
+	public void setScale(final boolean enabled) {
+		scale = enabled;
+	}
+	
+	/** Set whether sprites spin. **/
+	public void setRotation(final boolean enabled) {
+		rotation = enabled;
+	}
+	
+	/**
+	 * Set how often each sprite switches phase. Switches are spread over the
+	 * frames, rather than every sprite switching at once.
+	 * @param interval The milliseconds between switches of one sprite, or 0 for none.
+	 */
+	public void setPhaseSwitchInterval(final long interval) {
+		phase_switch_interval = interval;
+	}
+	
+	/**
+	 * Set how often the scene switches away to another state and back,
+	 * through GameEngine.switchToState().
+	 * @param interval The milliseconds between switches away, or 0 for none.
+	 */
+	public void setTransitionInterval(final long interval) {
+		transition_interval = interval;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public RendererGameState createState(final int state_id, final int entity_count) {
+		return new Scene(state_id, entity_count);
+	}
+	
+	/** The synthetic scene. **/
+	private final class Scene implements RendererGameState {
+		
+		private final int id;
+		private final int count;
+		
+		private MMMAnimation[] sprites;
+		
+		/** The velocity of every sprite, in pixels per millisecond. **/
+		private float[] vx, vy;
+		
+		/** The sprites owed a phase switch, and the next sprite to switch. **/
+		private float switches_owed;
+		private int switch_cursor;
+		
+		private long since_transition;
+		
+		/** The state switched to and back from on every transition, or null without transitions. **/
+		private Interlude interlude;
+		
+		Scene(final int the_id, final int the_count) {
+			id = the_id;
+			count = the_count;
+		}
+		
+		public int getStateId() {
+			return id;
+		}
+		
+		public boolean init() {
+			
+			final Random random = new Random(count);
+			final int frames = sheet.getFrameCount();
+			final int half = Math.max(1, frames / 2);
+			
+			sprites = new MMMAnimation[count];
+			vx = new float[count];
+			vy = new float[count];
+			
+			for (int i = 0; i < count; i++) {
+				final MMMAnimation a = new MMMAnimation(random.nextFloat() * width, random.nextFloat() * height, 0);
+				a.setSpriteSheet(sheet);
+				a.createPhase("a", 0, half - 1, 50 + random.nextInt(100));
+				a.createPhase("b", frames > 1 ? half : 0, frames - 1, 50 + random.nextInt(100));
+				a.startPhase("a");
+				a.startPhase("b");
+				
+				if (tint) {
+					a.setTintColor(0xFF000000 | random.nextInt(0xFFFFFF));
+					a.useTint();
+				}
+				if (scale)
+					a.setScale(0.5f + random.nextFloat());
+				if (rotation)
+					a.setRotation(random.nextInt(360));
+				
+				vx[i] = (random.nextFloat() - 0.5f) * 0.4f;
+				vy[i] = (random.nextFloat() - 0.5f) * 0.4f;
+				sprites[i] = a;
+			}
+			
+			if (transition_interval > 0) {
+				interlude = new Interlude(this);
+				if (!GameEngine.getInstance().addState(interlude)) {
+					interlude = null;
+					return false;
+				}
+			}
+			
+			return true;
+			
+		}
+		
+		public boolean cleanup() {
+			if (interlude != null) {
+				GameEngine.getInstance().removeState(interlude.getStateId());
+				interlude = null;
+			}
+			sprites = null;
+			vx = null;
+			vy = null;
+			return true;
+		}
+		
+		public void switchedTo() {
+		}
+		
+		public void leaving() {
+		}
+		
+		public void update(final long dt) {
+			
+			for (int i = 0; i < count; i++) {
+				final MMMAnimation a = sprites[i];
+				a.translate(vx[i] * dt, vy[i] * dt);
+				if (a.getX() < 0 || a.getX() > width)
+					vx[i] = -vx[i];
+				if (a.getY() < 0 || a.getY() > height)
+					vy[i] = -vy[i];
+				if (rotation)
+					a.setRotation((a.getRotation() + 1) % 360);
+				a.tick(dt);
+			}
+			
+			if (phase_switch_interval > 0 && count > 0) {
+				switches_owed += (float)count * dt / phase_switch_interval;
+				while (switches_owed >= 1) {
+					final MMMAnimation a = sprites[switch_cursor];
+					a.setCurrentPhase("a".equals(a.getCurrentPhaseID()) ? "b" : "a");
+					switch_cursor = (switch_cursor + 1) % count;
+					switches_owed--;
+				}
+			}
+			
+			if (interlude != null) {
+				since_transition += dt;
+				if (since_transition >= transition_interval) {
+					since_transition -= transition_interval;
+					GameEngine.getInstance().switchToState(interlude.getStateId());
+				}
+			}
+			
+		}
+		
+		public void draw(final GameRenderer renderer) {
+			renderer.clear(0xFF000000);
+			for (int i = 0; i < count; i++) {
+				sprites[i].draw(renderer);
+			}
+		}
+		
+		public void draw(final Canvas canvas) {
+			canvas.drawColor(0xFF000000);
+			for (int i = 0; i < count; i++) {
+				sprites[i].draw(canvas);
+			}
+		}
+		
+		public void handleTouchEvent(final MotionEvent event) {
+		}
+		
+	}
+	
+	/** The state a scene transitions to: its sprites drawn paused for one frame, then back to the scene. **/
+	private static final class Interlude implements RendererGameState {
+		
+		private final Scene scene;
+		
+		Interlude(final Scene the_scene) {
+			scene = the_scene;
+		}
+		
+		public int getStateId() {
+			return scene.id + 1;
+		}
+		
+		public boolean init() {
+			return true;
+		}
+		
+		public boolean cleanup() {
+			return true;
+		}
+		
+		public void switchedTo() {
+		}
+		
+		public void leaving() {
+		}
+		
+		public void update(final long dt) {
+			GameEngine.getInstance().switchToState(scene.id);
+		}
+		
+		public void draw(final GameRenderer renderer) {
+			scene.draw(renderer);
+		}
+		
+		public void draw(final Canvas canvas) {
+			scene.draw(canvas);
+		}
+		
+		public void handleTouchEvent(final MotionEvent event) {
+		}
+		
+	}
+	
+}
@@ -0,0 +1,662 @@
+package com.mmm.animation;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.os.Build;
+
+import com.mmm.gameengine.GameRenderer;
+import com.mmm.gameengine.GameTrace;
+
+/**
+ * The MMMSpriteSheet class describes a Bitmap resource which is divided into
+ * a grid of equally sized sprites (frames). It is shared by everything which
+ * draws from a sprite sheet, MMMAnimation, MMMTileMap, etc., so that one
+ * decoded sheet can be used by any number of them.
+ * <BR>
+ * Frames are laid out in a sprite sheet from left to right, then top to bottom.
+ * Example:
+ * <pre>
+ *  ___ ___ ___ ___
+ * |_0_|_1_|_2_|_3_|
+ * |_4_|_5_|_6_|_7_|
+ * |_8_|_9_|10_|11_|
+ * </pre>
+ * A sheet may instead be a packed atlas (as generated offline by texture
+ * packing or font tools), in which every frame has its own rectangle.
+ * <BR>
+ * Very large grid sheets can be streamed with decodeStreaming(), which only
+ * keeps the rows of frames actually being drawn in memory (see
+ * MMMStreamingSpriteSheet). Anything drawing from a sheet which may be
+ * streamed should fetch its frames with getFrameBitmap().
+ * <BR>
+ * Sheets drawn well below full size (minimaps, zoomed out views) can be
+ * given a mip chain, generated at load with generateMips() or decoded from
+ * resources made offline with setMipLevel(). getFrameBitmap() given the
+ * effective drawing scale then picks the smallest level which is still at
+ * least as large as drawn, so less is read and less aliasing is seen.
+ * <BR>
+ * Sheets of no more than 256 colors can be kept at a quarter of the memory
+ * with decodePalette() (see MMMPaletteSpriteSheet). Such sheets apply tints
+ * themselves, so anything tinting should check isTintApplied().
+ * <BR>
+ * Decoded sheets record a fully opaque rectangle within every frame, for
+ * MMMOcclusionCuller to skip drawing what is hidden beneath them.
+ *
+ * @author Michael Morris
+ * @version 1.5.3
+ *
+ */
+public class MMMSpriteSheet {
+	
+	/** The sprite sheet. **/
+	protected Bitmap bmp;
+	
+	/** The number of sprites in the x direction on the sprite sheet. **/
+	protected final int num_sprites_x;
+	
+	/** The number of sprites in the y direction on the sprite sheet. **/
+	protected final int num_sprites_y;
+	
+	/** The left, top, right, and bottom of every frame of a packed atlas, or null for a grid. **/
+	protected final int[] frame_rects;
+	
+	/** The largest frame width and height of a packed atlas. **/
+	private int atlas_sprite_width, atlas_sprite_height;
+	
+	/** The mip levels, each half the size of the one before, or null if none. mips[0] is level 1. **/
+	protected Bitmap[] mips;
+	
+	/** The left, top, right, and bottom of a fully opaque area of every frame, relative to the frame, or null if not computed. **/
+	protected int[] opaque_rects;
+	
+	/**
+	 * Create a new MMMSpriteSheet from an already decoded Bitmap.
+	 * @param bitmap The sprite sheet Bitmap.
+	 * @param sprites_x The number of sprites in the x direction.
+	 * @param sprites_y The number of sprites in the y direction.
+	 */
+	public MMMSpriteSheet(final Bitmap bitmap, final int sprites_x, final int sprites_y) {
+		if (bitmap == null)
+			throw new IllegalArgumentException("sprite sheet bitmap cannot be null");
+		if (sprites_x < 1 || sprites_y < 1)
+			throw new IllegalArgumentException("number of sprites on a sheet cannot be less than 1 in any direction");
+		
+		bmp = bitmap;
+		num_sprites_x = sprites_x;
+		num_sprites_y = sprites_y;
+		frame_rects = null;
+	}
+	
+	/**
+	 * Create a new packed atlas MMMSpriteSheet, in which every frame has its
+	 * own rectangle, from an already decoded Bitmap.
+	 * @param bitmap The atlas Bitmap.
+	 * @param the_frame_rects The left, top, right, and bottom of every frame, in atlas pixels.
+	 */
+	public MMMSpriteSheet(final Bitmap bitmap, final int[] the_frame_rects) {
+		if (bitmap == null)
+			throw new IllegalArgumentException("sprite sheet bitmap cannot be null");
+		if (the_frame_rects == null || the_frame_rects.length == 0 || the_frame_rects.length % 4 != 0)
+			throw new IllegalArgumentException("frame rects must hold 4 values for each frame");
+		
+		bmp = bitmap;
+		frame_rects = the_frame_rects.clone();
+		num_sprites_x = frame_rects.length / 4;
+		num_sprites_y = 1;
+		
+		for (int i = 0; i < frame_rects.length; i += 4) {
+			atlas_sprite_width = Math.max(atlas_sprite_width, frame_rects[i + 2] - frame_rects[i]);
+			atlas_sprite_height = Math.max(atlas_sprite_height, frame_rects[i + 3] - frame_rects[i + 1]);
+		}
+	}
+	
+	/**
+	 * Create a grid MMMSpriteSheet without a sheet Bitmap, for subclasses
+	 * which supply their frames through getFrameBitmap().
+	 * @param sprites_x The number of sprites in the x direction.
+	 * @param sprites_y The number of sprites in the y direction.
+	 */
+	protected MMMSpriteSheet(final int sprites_x, final int sprites_y) {
+		if (sprites_x < 1 || sprites_y < 1)
+			throw new IllegalArgumentException("number of sprites on a sheet cannot be less than 1 in any direction");
+		
+		bmp = null;
+		num_sprites_x = sprites_x;
+		num_sprites_y = sprites_y;
+		frame_rects = null;
+	}
+	
+	/**
+	 * Decode the given resource into a new MMMSpriteSheet, through the default
+	 * MMMPixelCache if one has been set.
+	 * @param c The Context in which the resource is located.
+	 * @param resource_id The integer (ex - R.drawable.icon) id of the resource.
+	 * @param sprites_x The number of sprites in the x direction.
+	 * @param sprites_y The number of sprites in the y direction.
+	 * @return The new sprite sheet, or null if the resource could not be decoded.
+	 */
+	public static MMMSpriteSheet decode(final Context c, final int resource_id, final int sprites_x, final int sprites_y) {
+		
+		if (sprites_x < 1 || sprites_y < 1)
+			throw new IllegalArgumentException("number of sprites on a sheet cannot be less than 1 in any direction");
+		
+		// Load through the pixel cache, if one is set, rather than decoding every time.
+		final MMMPixelCache cache = MMMPixelCache.getDefault();
+		final Bitmap bitmap;
+		GameTrace.begin("MMMSpriteSheet.decode");
+		try {
+			bitmap = cache != null ? cache.decode(c, resource_id) : BitmapFactory.decodeResource(c.getResources(), resource_id);
+		} finally {
+			GameTrace.end();
+		}
+		if (bitmap == null)
+			return null;
+		
+		final MMMSpriteSheet rtn_val = new MMMSpriteSheet(bitmap, sprites_x, sprites_y);
+		rtn_val.computeOpaqueRects();
+		return rtn_val;
+		
+	}
+	
+	/**
+	 * Decode the given resource into a new MMMSpriteSheet which keeps only the
+	 * rows of frames in use in memory, decoding them in the background as they
+	 * are first drawn or prefetched. Streaming requires API 10; on older
+	 * versions the whole sheet is decoded instead. Either way frames are
+	 * scaled to the density scaled size decode() gives, so choosing streaming
+	 * does not change how large the sheet is drawn.
+	 * @param c The Context in which the resource is located.
+	 * @param resource_id The integer (ex - R.drawable.icon) id of the resource.
+	 * @param sprites_x The number of sprites in the x direction.
+	 * @param sprites_y The number of sprites in the y direction.
+	 * @param max_resident_rows The most rows of frames to keep decoded at once.
+	 * @return The new sprite sheet, or null if the resource could not be decoded.
+	 */
+	public static MMMSpriteSheet decodeStreaming(final Context c, final int resource_id, final int sprites_x, final int sprites_y, final int max_resident_rows) {
+		
+		if (sprites_x < 1 || sprites_y < 1)
+			throw new IllegalArgumentException("number of sprites on a sheet cannot be less than 1 in any direction");
+		
+		if (Build.VERSION.SDK_INT >= 10) {
+			final MMMSpriteSheet rtn_val = MMMStreamingSpriteSheet.open(c, resource_id, sprites_x, sprites_y, max_resident_rows);
+			if (rtn_val != null)
+				return rtn_val;
+		}
+		
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inScaled = false;
+		final Bitmap bitmap;
+		GameTrace.begin("MMMSpriteSheet.decode");
+		try {
+			bitmap = BitmapFactory.decodeResource(c.getResources(), resource_id, options);
+		} finally {
+			GameTrace.end();
+		}
+		if (bitmap == null)
+			return null;
+		
+		final int width = densityScaled(bitmap.getWidth() / sprites_x, options) * sprites_x;
+		final int height = densityScaled(bitmap.getHeight() / sprites_y, options) * sprites_y;
+		if (width == bitmap.getWidth() && height == bitmap.getHeight())
+			return new MMMSpriteSheet(bitmap, sprites_x, sprites_y);
+		
+		final Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+		bitmap.recycle();
+		return new MMMSpriteSheet(scaled, sprites_x, sprites_y);
+		
+	}
+	
+	/**
+	 * Decode the given resource into a new MMMPaletteSpriteSheet, holding one
+	 * byte per pixel, if it has no more than 256 colors. Otherwise the sheet
+	 * is kept as decoded, as by decode(). The sheet is decoded at its unscaled
+	 * pixel size, so no colors are blended in, then scaled nearest neighbor to
+	 * the density scaled size decode() gives, so choosing palette storage
+	 * does not change how large the sheet is drawn.
+	 * @param c The Context in which the resource is located.
+	 * @param resource_id The integer (ex - R.drawable.icon) id of the resource.
+	 * @param sprites_x The number of sprites in the x direction.
+	 * @param sprites_y The number of sprites in the y direction.
+	 * @param cache_frames The number of expanded frames to keep, at least 2.
+	 * @return The new sprite sheet, or null if the resource could not be decoded.
+	 */
+	public static MMMSpriteSheet decodePalette(final Context c, final int resource_id, final int sprites_x, final int sprites_y, final int cache_frames) {
+		
+		if (sprites_x < 1 || sprites_y < 1)
+			throw new IllegalArgumentException("number of sprites on a sheet cannot be less than 1 in any direction");
+		
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inScaled = false;
+		final Bitmap bitmap;
+		GameTrace.begin("MMMSpriteSheet.decode");
+		try {
+			bitmap = BitmapFactory.decodeResource(c.getResources(), resource_id, options);
+		} finally {
+			GameTrace.end();
+		}
+		if (bitmap == null)
+			return null;
+		
+		final int width = densityScaled(bitmap.getWidth(), options);
+		final int height = densityScaled(bitmap.getHeight(), options);
+		
+		final MMMSpriteSheet rtn_val = MMMPaletteSpriteSheet.fromBitmap(bitmap, sprites_x, sprites_y, cache_frames, width, height);
+		if (rtn_val == null) {
+			Bitmap full_bitmap = bitmap;
+			if (width != bitmap.getWidth() || height != bitmap.getHeight()) {
+				full_bitmap = Bitmap.createScaledBitmap(bitmap, width, height, true);
+				bitmap.recycle();
+			}
+			final MMMSpriteSheet full = new MMMSpriteSheet(full_bitmap, sprites_x, sprites_y);
+			full.computeOpaqueRects();
+			return full;
+		}
+		
+		bitmap.recycle();
+		rtn_val.computeOpaqueRects();
+		return rtn_val;
+		
+	}
+	
+	/** Scale a size decoded with inScaled off to the size BitmapFactory would have scaled it to. **/
+	static int densityScaled(final int size, final BitmapFactory.Options options) {
+		if (options.inDensity == 0 || options.inTargetDensity == 0 || options.inDensity == options.inTargetDensity)
+			return size;
+		return Math.max(1, (int)(size * options.inTargetDensity / (float)options.inDensity + 0.5f));
+	}
+	
+	/** Retrieve the sprite sheet Bitmap, or null for a streaming or palette sheet. **/
+	public Bitmap getBitmap() {
+		return bmp;
+	}
+	
+	/** Retrieve the number of sprites in the x direction. **/
+	public int getColumns() {
+		return num_sprites_x;
+	}
+	
+	/** Retrieve the number of sprites in the y direction. **/
+	public int getRows() {
+		return num_sprites_y;
+	}
+	
+	/** Retrieve the total number of frames on the sheet. **/
+	public int getFrameCount() {
+		return num_sprites_x * num_sprites_y;
+	}
+	
+	/** Check whether this sheet is a packed atlas rather than a grid. **/
+	public boolean isAtlas() {
+		return frame_rects != null;
+	}
+	
+	/** Retrieve the pixel width of one sprite, or of the widest frame of an atlas. **/
+	public int getSpriteWidth() {
+		if (frame_rects != null)
+			return atlas_sprite_width;
+		return bmp.getWidth() / num_sprites_x;
+	}
+	
+	/** Retrieve the pixel height of one sprite, or of the tallest frame of an atlas. **/
+	public int getSpriteHeight() {
+		if (frame_rects != null)
+			return atlas_sprite_height;
+		return bmp.getHeight() / num_sprites_y;
+	}
+	
+	/**
+	 * Calculate the area of the sheet Bitmap holding the given frame.
+	 * @param frame The frame number.
+	 * @param out The Rect to fill with the frames bounds, in sheet pixels.
+	 */
+	public void getFrameRect(final int frame, final Rect out) {
+		
+		if (frame_rects != null) {
+			final int i = frame * 4;
+			out.left = frame_rects[i];
+			out.top = frame_rects[i + 1];
+			out.right = frame_rects[i + 2];
+			out.bottom = frame_rects[i + 3];
+			return;
+		}
+		
+		final int sprite_width = getSpriteWidth();
+		final int sprite_height = getSpriteHeight();
+		
+		// Calculate the actual location (sprite location) of required frame.
+		final int sprite_row = frame / num_sprites_x;
+		final int sprite_col = frame % num_sprites_x;
+		
+		out.top = sprite_height * sprite_row;
+		out.left = sprite_width * sprite_col;
+		out.bottom = out.top + sprite_height;
+		out.right = out.left + sprite_width;
+		
+	}
+	
+	/**
+	 * Retrieve the Bitmap holding the given frame, and the area of it holding
+	 * the frame. For a fully decoded sheet this is always the sheet Bitmap and
+	 * getFrameRect(); a streaming sheet returns the Bitmap of the frames row,
+	 * or null while that row is still being decoded.
+	 * @param frame The frame number.
+	 * @param out The Rect to fill with the frames bounds within the returned Bitmap.
+	 * @return The Bitmap to draw the frame from, or null if the frame is not yet available.
+	 */
+	public Bitmap getFrameBitmap(final int frame, final Rect out) {
+		getFrameRect(frame, out);
+		return bmp;
+	}
+	
+	/**
+	 * Retrieve the Bitmap holding the given frame, from the mip level best
+	 * suited to drawing it at the given scale, and the area of it holding the
+	 * frame. Without mip levels this is the same as getFrameBitmap(frame, out).
+	 * @param frame The frame number.
+	 * @param out The Rect to fill with the frames bounds within the returned Bitmap.
+	 * @param draw_scale The scale the frame will be drawn at, relative to its full size.
+	 * @return The Bitmap to draw the frame from, or null if the frame is not yet available.
+	 */
+	public Bitmap getFrameBitmap(final int frame, final Rect out, float draw_scale) {
+		
+		if (mips == null || draw_scale > 0.5f)
+			return getFrameBitmap(frame, out);
+		
+		// Halve until the next level would be smaller than drawn.
+		int level = 0;
+		while (level < mips.length && mips[level] != null && draw_scale <= 0.5f) {
+			draw_scale *= 2.0f;
+			level++;
+		}
+		
+		getFrameRect(frame, out);
+		if (level == 0)
+			return bmp;
+		
+		out.left >>= level;
+		out.top >>= level;
+		out.right >>= level;
+		out.bottom >>= level;
+		
+		return mips[level - 1];
+		
+	}
+	
+	/**
+	 * Check whether this sheet applies tints itself, in
+	 * getFrameBitmap(frame, out, draw_scale, tint_color), so the frame should
+	 * be drawn without a tinting color filter. False for a Bitmap sheet.
+	 * @return True if the sheet applies tints.
+	 */
+	public boolean isTintApplied() {
+		return false;
+	}
+	
+	/**
+	 * Retrieve the Bitmap holding the given frame, tinted, if the sheet
+	 * applies tints itself (see isTintApplied()). Otherwise the tint is
+	 * ignored, and this is the same as getFrameBitmap(frame, out, draw_scale).
+	 * @param frame The frame number.
+	 * @param out The Rect to fill with the frames bounds within the returned Bitmap.
+	 * @param draw_scale The scale the frame will be drawn at, relative to its full size.
+	 * @param tint_color The ARGB tint color.
+	 * @return The Bitmap to draw the frame from, or null if the frame is not yet available.
+	 */
+	public Bitmap getFrameBitmap(final int frame, final Rect out, final float draw_scale, final int tint_color) {
+		return getFrameBitmap(frame, out, draw_scale);
+	}
+	
+	/**
+	 * Find, and record, the largest fully opaque rectangle through the center
+	 * of every frame, to be returned by getOpaqueRect(). Frames with a
+	 * transparent center record none. Reads every pixel of the sheet, so is
+	 * meant to be called once, when loading.
+	 * @throws IllegalStateException if the sheet is streamed.
+	 */
+	public void computeOpaqueRects() {
+		
+		final Rect frame_rect = new Rect();
+		final int frame_count = getFrameCount();
+		final int[] rects = new int[frame_count * 4];
+		
+		// A sheet without alpha is opaque everywhere.
+		if (bmp != null && !bmp.hasAlpha()) {
+			for (int frame = 0; frame < frame_count; frame++) {
+				getFrameRect(frame, frame_rect);
+				rects[frame * 4 + 2] = frame_rect.right - frame_rect.left;
+				rects[frame * 4 + 3] = frame_rect.bottom - frame_rect.top;
+			}
+			opaque_rects = rects;
+			return;
+		}
+		
+		int[] pixels = new int[0];
+		for (int frame = 0; frame < frame_count; frame++) {
+			getFrameRect(frame, frame_rect);
+			final int width = frame_rect.right - frame_rect.left;
+			final int height = frame_rect.bottom - frame_rect.top;
+			if (width < 1 || height < 1)
+				continue;
+			if (pixels.length < width * height)
+				pixels = new int[width * height];
+			readFramePixels(frame, frame_rect, pixels);
+			findOpaqueRect(pixels, width, height, rects, frame * 4);
+		}
+		opaque_rects = rects;
+		
+	}
+	
+	/**
+	 * Read the ARGB pixels of a frame, row by row, for computeOpaqueRects().
+	 * @param frame The frame number.
+	 * @param frame_rect The frames bounds within the sheet, from getFrameRect().
+	 * @param out The array to fill, at least the frames width times height.
+	 */
+	protected void readFramePixels(final int frame, final Rect frame_rect, final int[] out) {
+		if (bmp == null)
+			throw new IllegalStateException("opaque rects need a fully decoded sheet");
+		final int width = frame_rect.right - frame_rect.left;
+		bmp.getPixels(out, 0, width, frame_rect.left, frame_rect.top, width, frame_rect.bottom - frame_rect.top);
+	}
+	
+	/** Find the largest fully opaque rectangle containing the center of the pixels, writing it at <code>offset</code>. **/
+	private static void findOpaqueRect(final int[] pixels, final int width, final int height, final int[] out, final int offset) {
+		
+		final int cx = width / 2;
+		final int cy = height / 2;
+		
+		// The opaque run through the center column of every row, or left == right if the center is transparent.
+		final int[] lefts = new int[height];
+		final int[] rights = new int[height];
+		for (int y = 0; y < height; y++) {
+			final int row = y * width;
+			if ((pixels[row + cx] >>> 24) != 0xFF)
+				continue;
+			int l = cx;
+			while (l > 0 && (pixels[row + l - 1] >>> 24) == 0xFF)
+				l--;
+			int r = cx + 1;
+			while (r < width && (pixels[row + r] >>> 24) == 0xFF)
+				r++;
+			lefts[y] = l;
+			rights[y] = r;
+		}
+		
+		// Try every top above the center with every bottom below it, narrowing to the runs in between.
+		long best = 0;
+		int top_left = 0, top_right = width;
+		for (int top = cy; top >= 0 && rights[top] > lefts[top]; top--) {
+			top_left = Math.max(top_left, lefts[top]);
+			top_right = Math.min(top_right, rights[top]);
+			
+			int l = top_left, r = top_right;
+			for (int bottom = cy; bottom < height && rights[bottom] > lefts[bottom]; bottom++) {
+				l = Math.max(l, lefts[bottom]);
+				r = Math.min(r, rights[bottom]);
+				final long area = (long)(r - l) * (bottom - top + 1);
+				if (area > best) {
+					best = area;
+					out[offset] = l;
+					out[offset + 1] = top;
+					out[offset + 2] = r;
+					out[offset + 3] = bottom + 1;
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * Retrieve the fully opaque rectangle of a frame, relative to the frames
+	 * top left, as recorded by computeOpaqueRects().
+	 * @param frame The frame number.
+	 * @param out The Rect to fill.
+	 * @return True if the frame has an opaque rectangle, false if it has none or none were computed.
+	 */
+	public boolean getOpaqueRect(final int frame, final Rect out) {
+		if (opaque_rects == null || frame < 0 || frame * 4 >= opaque_rects.length)
+			return false;
+		final int i = frame * 4;
+		if (opaque_rects[i + 2] <= opaque_rects[i] || opaque_rects[i + 3] <= opaque_rects[i + 1])
+			return false;
+		out.left = opaque_rects[i];
+		out.top = opaque_rects[i + 1];
+		out.right = opaque_rects[i + 2];
+		out.bottom = opaque_rects[i + 3];
+		return true;
+	}
+	
+	/**
+	 * Generate mip levels from the sheet Bitmap, each half the size of the
+	 * last, by filtered downscaling. For a grid, levels stop early once a
+	 * sprite would no longer divide evenly, so frames never bleed into each
+	 * other; an atlas should leave padding between its frames instead.
+	 * Replaces any existing levels.
+	 * @param levels The most levels to generate.
+	 * @return The number of levels generated.
+	 */
+	public int generateMips(final int levels) {
+		
+		if (bmp == null)
+			throw new IllegalStateException("mip levels need a fully decoded sheet");
+		if (levels < 1)
+			throw new IllegalArgumentException("at least one mip level must be generated");
+		
+		releaseMips();
+		
+		final Bitmap[] generated = new Bitmap[levels];
+		Bitmap previous = bmp;
+		int cell_width = frame_rects != null ? 2 : getSpriteWidth();
+		int cell_height = frame_rects != null ? 2 : getSpriteHeight();
+		int count = 0;
+		
+		while (count < levels) {
+			if ((cell_width & 1) != 0 || (cell_height & 1) != 0 || previous.getWidth() < 2 || previous.getHeight() < 2)
+				break;
+			
+			previous = Bitmap.createScaledBitmap(previous, previous.getWidth() >> 1, previous.getHeight() >> 1, true);
+			generated[count++] = previous;
+			if (frame_rects == null) {
+				cell_width >>= 1;
+				cell_height >>= 1;
+			}
+		}
+		
+		if (count > 0) {
+			mips = new Bitmap[count];
+			System.arraycopy(generated, 0, mips, 0, count);
+		}
+		
+		return count;
+		
+	}
+	
+	/**
+	 * Set a mip level made offline, for instance decoded from a separate,
+	 * pre-shrunk, resource. Level <code>n</code> must be the sheet scaled by
+	 * 1/2^n, with frames at the same positions scaled likewise.
+	 * @param level The level, starting from 1.
+	 * @param bitmap The level Bitmap.
+	 */
+	public void setMipLevel(final int level, final Bitmap bitmap) {
+		
+		if (level < 1)
+			throw new IllegalArgumentException("mip levels start from 1");
+		if (bitmap == null)
+			throw new IllegalArgumentException("mip level bitmap cannot be null");
+		
+		if (mips == null || mips.length < level) {
+			final Bitmap[] grown = new Bitmap[level];
+			if (mips != null)
+				System.arraycopy(mips, 0, grown, 0, mips.length);
+			mips = grown;
+		}
+		
+		if (mips[level - 1] != null && mips[level - 1] != bitmap)
+			mips[level - 1].recycle();
+		mips[level - 1] = bitmap;
+		
+	}
+	
+	/** Retrieve the number of mip levels, not counting the full size sheet. **/
+	public int getMipCount() {
+		return mips == null ? 0 : mips.length;
+	}
+	
+	/** Free every mip level, leaving the full size sheet. **/
+	public void releaseMips() {
+		if (mips == null)
+			return;
+		for (int i = 0; i < mips.length; i++) {
+			if (mips[i] != null)
+				mips[i].recycle();
+		}
+		mips = null;
+	}
+	
+	/** Retrieve the number of bytes held by the sheet Bitmap and its mip levels. **/
+	public long getByteCount() {
+		long rtn_val = 0;
+		if (bmp != null)
+			rtn_val += (long)bmp.getRowBytes() * bmp.getHeight();
+		if (mips != null) {
+			for (int i = 0; i < mips.length; i++) {
+				if (mips[i] != null)
+					rtn_val += (long)mips[i].getRowBytes() * mips[i].getHeight();
+			}
+		}
+		return rtn_val;
+	}
+	
+	/**
+	 * Hint that the given range of frames is likely to be drawn soon, so a
+	 * streaming sheet can start decoding them. Does nothing for a fully
+	 * decoded sheet.
+	 * @param start_frame The first frame of the range.
+	 * @param end_frame The last frame of the range.
+	 */
+	public void prefetch(final int start_frame, final int end_frame) {
+	}
+	
+	/**
+	 * Get ready to draw frames through a GameRenderer. A streaming sheet
+	 * installs its decoded rows here, handing any row it evicts to the
+	 * renderer first, so sprites a batching renderer has held back are drawn
+	 * before the row is recycled. Does nothing for a fully decoded sheet.
+	 * @param renderer The renderer about to be drawn through.
+	 */
+	void prepareDraw(final GameRenderer renderer) {
+	}
+	
+	/**
+	 * Free the sheet Bitmap and any mip levels. The sheet must not be drawn from afterwards.
+	 */
+	public void recycle() {
+		releaseMips();
+		if (bmp != null)
+			bmp.recycle();
+	}
+	
+}
@@ -0,0 +1,456 @@
+package com.mmm.animation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Process;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.TypedValue;
+
+import com.mmm.gameengine.GameRenderer;
+import com.mmm.gameengine.GameTrace;
+
+/**
+ * The MMMStreamingSpriteSheet class is a grid MMMSpriteSheet which never
+ * holds the whole sheet in memory. Each row of frames is decoded on its own,
+ * with a BitmapRegionDecoder on a shared background thread, the first time a
+ * frame in that row is drawn or prefetched. Once more than the allowed number
+ * of rows are resident, the least recently drawn rows are freed. Resident
+ * sprite memory is then proportional to the phases actually in use rather
+ * than to the size of the sheet.
+ * <BR>
+ * Each row is scaled after decoding, so frames come out at the density
+ * scaled size MMMSpriteSheet.decode() would give them.
+ * <BR>
+ * A frame whose row is still being decoded is simply not drawn, so
+ * animations should prefetch a phase (see MMMAnimation.prefetchPhase()) a
+ * little before it is needed. Rows are installed and evicted on the drawing
+ * thread, so a Bitmap returned by getFrameBitmap() stays valid until the
+ * next call. Drawn through a GameRenderer, an evicted row is passed to its
+ * release() before being recycled. A row which fails to decode is logged
+ * once and never drawn.
+ * <BR>
+ * Requires API 10. Use MMMSpriteSheet.decodeStreaming(), which falls back to
+ * a fully decoded sheet on older versions.
+ * <BR>
+ * To use:
+ *
+ * <code>MMMSpriteSheet sheet = MMMSpriteSheet.decodeStreaming(context, R.drawable.boss, 16, 32, 6);</code>
+ *
+ * <code>boss.setSpriteSheet(sheet);</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.3
+ *
+ */
+public class MMMStreamingSpriteSheet extends MMMSpriteSheet {
+	
+	/** Row states, guarded by <code>this</code>. **/
+	private static final byte ROW_IDLE = 0;
+	private static final byte ROW_QUEUED = 1;
+	private static final byte ROW_DECODED = 2;
+	private static final byte ROW_FAILED = 3;
+	
+	/** The decoder of the whole sheet, used only by the loader thread until recycled. Guarded by <code>decoder_lock</code>. **/
+	private final BitmapRegionDecoder decoder;
+	private final Object decoder_lock = new Object();
+	private boolean decoder_recycled;
+	
+	/** The pixel size of one frame in the resource, and once scaled for the screen density. **/
+	private final int source_frame_width, source_frame_height;
+	private final int frame_width, frame_height;
+	
+	/** The most rows to keep resident at once. **/
+	private final int max_resident_rows;
+	
+	/** The resident row Bitmaps, and when each was last drawn from. Only touched on the drawing thread. **/
+	private final Bitmap[] rows;
+	private final long[] row_last_used;
+	private long use_clock;
+	private int resident_count;
+	private long resident_bytes;
+	
+	/** The state of every row, and rows decoded but not yet installed. Guarded by <code>this</code>. **/
+	private final byte[] row_state;
+	private final Bitmap[] decoded;
+	
+	/** Rows waiting to be decoded, as a double ended queue so demanded rows go before prefetched ones. Guarded by <code>this</code>. **/
+	private final int[] queue;
+	private int queue_head, queue_count;
+	
+	/** Whether this sheet is waiting in the loaders queue. Guarded by <code>this</code>. **/
+	private boolean scheduled;
+	
+	/** Set by the loader when decoded rows are waiting to be installed. **/
+	private volatile boolean install_pending;
+	
+	/** Set once recycled; no more rows are decoded. Guarded by <code>this</code>. **/
+	private boolean recycled;
+	
+	/** The number of rows decoded, and evicted. **/
+	private volatile int decode_count;
+	private int evict_count;
+	
+	private MMMStreamingSpriteSheet(final BitmapRegionDecoder the_decoder, final BitmapFactory.Options density, final int sprites_x, final int sprites_y,
+			final int the_max_resident_rows) {
+		super(sprites_x, sprites_y);
+		
+		decoder = the_decoder;
+		source_frame_width = decoder.getWidth() / sprites_x;
+		source_frame_height = decoder.getHeight() / sprites_y;
+		frame_width = densityScaled(source_frame_width, density);
+		frame_height = densityScaled(source_frame_height, density);
+		max_resident_rows = the_max_resident_rows;
+		
+		rows = new Bitmap[sprites_y];
+		row_last_used = new long[sprites_y];
+		row_state = new byte[sprites_y];
+		decoded = new Bitmap[sprites_y];
+		queue = new int[sprites_y];
+	}
+	
+	/**
+	 * Open the given resource as a streaming sprite sheet. Requires API 10.
+	 * @param c The Context in which the resource is located.
+	 * @param resource_id The integer (ex - R.drawable.icon) id of the resource. Must be a PNG or JPEG.
+	 * @param sprites_x The number of sprites in the x direction.
+	 * @param sprites_y The number of sprites in the y direction.
+	 * @param max_resident_rows The most rows of frames to keep decoded at once.
+	 * @return The new sprite sheet, or null if the resource could not be opened.
+	 */
+	public static MMMStreamingSpriteSheet open(final Context c, final int resource_id, final int sprites_x, final int sprites_y, final int max_resident_rows) {
+		
+		if (sprites_x < 1 || sprites_y < 1)
+			throw new IllegalArgumentException("number of sprites on a sheet cannot be less than 1 in any direction");
+		if (max_resident_rows < 1)
+			throw new IllegalArgumentException("at least one row must be allowed to be resident");
+		
+		InputStream in = null;
+		try {
+			final TypedValue value = new TypedValue();
+			in = c.getResources().openRawResource(resource_id, value);
+			final BitmapRegionDecoder d = BitmapRegionDecoder.newInstance(in, false);
+			if (d == null)
+				return null;
+			
+			// The densities BitmapFactory.decodeResource() would scale between.
+			final BitmapFactory.Options density = new BitmapFactory.Options();
+			if (value.density == TypedValue.DENSITY_DEFAULT)
+				density.inDensity = DisplayMetrics.DENSITY_DEFAULT;
+			else if (value.density != TypedValue.DENSITY_NONE)
+				density.inDensity = value.density;
+			density.inTargetDensity = c.getResources().getDisplayMetrics().densityDpi;
+			
+			return new MMMStreamingSpriteSheet(d, density, sprites_x, sprites_y, max_resident_rows);
+		} catch (IOException e) {
+			Log.e("StickmanPaintball", "MMMStreamingSpriteSheet.open() -- could not open resource " + resource_id, e);
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		
+	}
+	
+	@Override
+	public int getSpriteWidth() {
+		return frame_width;
+	}
+	
+	@Override
+	public int getSpriteHeight() {
+		return frame_height;
+	}
+	
+	@Override
+	public Bitmap getFrameBitmap(final int frame, final Rect out) {
+		
+		if (install_pending)
+			install(null);
+		
+		final int row = frame / num_sprites_x;
+		final Bitmap rtn_val = rows[row];
+		
+		if (rtn_val == null) {
+			request(row, true);
+			return null;
+		}
+		
+		row_last_used[row] = ++use_clock;
+		
+		out.left = frame_width * (frame % num_sprites_x);
+		out.top = 0;
+		out.right = out.left + frame_width;
+		out.bottom = rtn_val.getHeight();
+		
+		return rtn_val;
+		
+	}
+	
+	@Override
+	void prepareDraw(final GameRenderer renderer) {
+		if (install_pending)
+			install(renderer);
+	}
+	
+	@Override
+	public void prefetch(final int start_frame, final int end_frame) {
+		final int last_row = Math.min(end_frame / num_sprites_x, num_sprites_y - 1);
+		for (int row = Math.max(start_frame / num_sprites_x, 0); row <= last_row; row++) {
+			if (rows[row] == null)
+				request(row, false);
+		}
+	}
+	
+	/**
+	 * Mip levels are not supported by streaming sheets.
+	 * @throws IllegalStateException always.
+	 */
+	@Override
+	public int generateMips(final int levels) {
+		throw new IllegalStateException("streaming sheets do not support mip levels");
+	}
+	
+	/**
+	 * Mip levels are not supported by streaming sheets.
+	 * @throws IllegalStateException always.
+	 */
+	@Override
+	public void setMipLevel(final int level, final Bitmap bitmap) {
+		throw new IllegalStateException("streaming sheets do not support mip levels");
+	}
+	
+	@Override
+	public long getByteCount() {
+		return resident_bytes;
+	}
+	
+	/** Retrieve the number of rows currently decoded and resident. **/
+	public int getResidentRowCount() {
+		return resident_count;
+	}
+	
+	/** Retrieve the number of bytes held by resident rows. **/
+	public long getResidentBytes() {
+		return resident_bytes;
+	}
+	
+	/** Retrieve the total number of rows decoded so far. **/
+	public int getDecodeCount() {
+		return decode_count;
+	}
+	
+	/** Retrieve the total number of rows evicted so far. **/
+	public int getEvictCount() {
+		return evict_count;
+	}
+	
+	/**
+	 * Free every resident row and the decoder. Must be called on the drawing
+	 * thread, and the sheet must not be drawn from afterwards.
+	 */
+	@Override
+	public void recycle() {
+		
+		synchronized (this) {
+			recycled = true;
+			queue_count = 0;
+			for (int i = 0; i < decoded.length; i++) {
+				if (decoded[i] != null) {
+					decoded[i].recycle();
+					decoded[i] = null;
+				}
+				row_state[i] = ROW_IDLE;
+			}
+		}
+		
+		// Waits for a decode in progress, which holds only the decoder lock.
+		synchronized (decoder_lock) {
+			decoder_recycled = true;
+			decoder.recycle();
+		}
+		
+		for (int i = 0; i < rows.length; i++) {
+			if (rows[i] != null) {
+				rows[i].recycle();
+				rows[i] = null;
+			}
+		}
+		resident_count = 0;
+		resident_bytes = 0;
+		
+	}
+	
+	/** Queue a row for decoding, at the front if it is needed now. **/
+	private synchronized void request(final int row, final boolean urgent) {
+		
+		if (recycled || row_state[row] != ROW_IDLE)
+			return;
+		
+		row_state[row] = ROW_QUEUED;
+		if (urgent) {
+			queue_head = (queue_head + queue.length - 1) % queue.length;
+			queue[queue_head] = row;
+		} else {
+			queue[(queue_head + queue_count) % queue.length] = row;
+		}
+		queue_count++;
+		
+		if (!scheduled) {
+			scheduled = true;
+			Loader.enqueue(this);
+		}
+		
+	}
+	
+	/**
+	 * Decode every queued row. Called on the loader thread. The row is taken
+	 * and published under <code>this</code>, but decoded under the decoder
+	 * lock alone, so the drawing thread never waits on a decode.
+	 */
+	private void decodeQueued() {
+		
+		final Rect region = new Rect();
+		
+		while (true) {
+			final int row;
+			synchronized (this) {
+				if (recycled || queue_count == 0) {
+					scheduled = false;
+					return;
+				}
+				row = queue[queue_head];
+				queue_head = (queue_head + 1) % queue.length;
+				queue_count--;
+			}
+			
+			region.set(0, row * source_frame_height, source_frame_width * num_sprites_x, (row + 1) * source_frame_height);
+			Bitmap b = null;
+			synchronized (decoder_lock) {
+				if (!decoder_recycled) {
+					GameTrace.begin("MMMStreamingSpriteSheet.decodeRow");
+					try {
+						b = decoder.decodeRegion(region, null);
+					} finally {
+						GameTrace.end();
+					}
+				}
+			}
+			
+			// Scaled here, off the drawing thread, as decodeResource() would have.
+			final int row_width = frame_width * num_sprites_x;
+			if (b != null && (b.getWidth() != row_width || b.getHeight() != frame_height)) {
+				final Bitmap scaled = Bitmap.createScaledBitmap(b, row_width, frame_height, true);
+				b.recycle();
+				b = scaled;
+			}
+			
+			synchronized (this) {
+				if (recycled) {
+					if (b != null)
+						b.recycle();
+					scheduled = false;
+					return;
+				}
+				
+				// A row which cannot be decoded is not retried, or it would be requested every frame.
+				if (b == null) {
+					Log.e("StickmanPaintball", "MMMStreamingSpriteSheet.decodeQueued() -- could not decode row " + row);
+					row_state[row] = ROW_FAILED;
+					continue;
+				}
+				
+				decoded[row] = b;
+				row_state[row] = ROW_DECODED;
+				decode_count++;
+			}
+			install_pending = true;
+		}
+		
+	}
+	
+	/**
+	 * Move decoded rows into place, evicting the least recently used rows if
+	 * over budget. Called on the drawing thread.
+	 * @param renderer The renderer being drawn through, told of every evicted row, or null.
+	 */
+	private void install(final GameRenderer renderer) {
+		
+		synchronized (this) {
+			install_pending = false;
+			for (int row = 0; row < decoded.length; row++) {
+				if (row_state[row] != ROW_DECODED)
+					continue;
+				
+				rows[row] = decoded[row];
+				decoded[row] = null;
+				row_state[row] = ROW_IDLE;
+				row_last_used[row] = ++use_clock;
+				resident_count++;
+				resident_bytes += (long)rows[row].getRowBytes() * rows[row].getHeight();
+			}
+		}
+		
+		while (resident_count > max_resident_rows) {
+			int oldest = -1;
+			for (int row = 0; row < rows.length; row++) {
+				if (rows[row] != null && (oldest < 0 || row_last_used[row] < row_last_used[oldest]))
+					oldest = row;
+			}
+			
+			resident_bytes -= (long)rows[oldest].getRowBytes() * rows[oldest].getHeight();
+			if (renderer != null)
+				renderer.release(rows[oldest]);
+			rows[oldest].recycle();
+			rows[oldest] = null;
+			resident_count--;
+			evict_count++;
+		}
+		
+	}
+	
+	/**
+	 * The single background thread shared by every streaming sheet, decoding
+	 * the queued rows of one sheet at a time.
+	 */
+	private static final class Loader implements Runnable {
+		
+		private static final LinkedBlockingQueue<MMMStreamingSpriteSheet> sheets = new LinkedBlockingQueue<MMMStreamingSpriteSheet>();
+		
+		private static Thread thread;
+		
+		static synchronized void enqueue(final MMMStreamingSpriteSheet sheet) {
+			if (thread == null) {
+				thread = new Thread(new Loader(), "MMMStreamingSpriteSheet");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			sheets.offer(sheet);
+		}
+		
+		@Override
+		public void run() {
+			Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+			while (true) {
+				try {
+					sheets.take().decodeQueued();
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+		
+	}
+	
+}
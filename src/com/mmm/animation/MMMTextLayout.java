@@ -0,0 +1,107 @@
+package com.mmm.animation;
+
+/**
+ * The MMMTextLayout class holds the glyph positions of a piece of text, as
+ * laid out by an MMMBitmapFont. Keep one layout per piece of HUD text (score,
+ * timer, etc.) and lay it out again every frame; the font only does any work
+ * when the text has actually changed, and drawing a layout is a single pass
+ * over its glyphs.
+ * <BR>
+ * A layout grows to fit the longest text given to it, after which laying
+ * out and drawing never allocate.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public final class MMMTextLayout {
+	
+	/** The characters which were laid out, used to detect changes. **/
+	char[] chars;
+	int length;
+	
+	/** Whether the layout was made from an int, and which. **/
+	boolean from_int;
+	int int_value;
+	
+	/** The font which made the layout, or null if none has yet. **/
+	MMMBitmapFont font;
+	
+	/** The frame number and unscaled location of every glyph. **/
+	int[] frames;
+	float[] glyph_x;
+	float[] glyph_y;
+	int glyph_count;
+	
+	/** The unscaled size of the laid out text. **/
+	float width;
+	float height;
+	
+	/**
+	 * Create a new, empty, MMMTextLayout with room for 16 characters.
+	 */
+	public MMMTextLayout() {
+		this(16);
+	}
+	
+	/**
+	 * Create a new, empty, MMMTextLayout with room for <code>capacity</code>
+	 * characters before any growth is required.
+	 * @param capacity The number of characters to preallocate.
+	 */
+	public MMMTextLayout(final int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be at least 1");
+		
+		chars = new char[capacity];
+		frames = new int[capacity];
+		glyph_x = new float[capacity];
+		glyph_y = new float[capacity];
+	}
+	
+	/** Retrieve the number of characters laid out. **/
+	public int getLength() {
+		return length;
+	}
+	
+	/** Retrieve the number of glyphs which will be drawn. **/
+	public int getGlyphCount() {
+		return glyph_count;
+	}
+	
+	/** Retrieve the width of the laid out text, at a scale of 1.0. **/
+	public float getWidth() {
+		return width;
+	}
+	
+	/** Retrieve the height of the laid out text, at a scale of 1.0. **/
+	public float getHeight() {
+		return height;
+	}
+	
+	/** Forget the laid out text, so the next layout call always lays out again. **/
+	public void clear() {
+		font = null;
+		length = 0;
+		glyph_count = 0;
+		width = 0;
+		height = 0;
+	}
+	
+	/** Make sure there is room for <code>capacity</code> characters. **/
+	void ensureCapacity(final int capacity) {
+		if (capacity <= chars.length)
+			return;
+		
+		final int size = Math.max(capacity, chars.length * 2);
+		
+		final char[] c = new char[size];
+		System.arraycopy(chars, 0, c, 0, length);
+		chars = c;
+		
+		frames = new int[size];
+		glyph_x = new float[size];
+		glyph_y = new float[size];
+	}
+	
+}
@@ -0,0 +1,259 @@
+package com.mmm.animation;
+
+/**
+ * The MMMTickScheduler class ticks a set of MMMAnimations at a level of
+ * detail suited to each: full rate while on screen, and only every Nth frame
+ * while off screen or marked as low priority. Skipped frames are not lost;
+ * their time deltas are accumulated and handed over in one tick, so every
+ * phase ends up on exactly the frame it would have at full rate. An
+ * animation coming back on screen is caught up immediately, then ticked at
+ * full rate again.
+ * <BR>
+ * Reduced rate animations are spread over the N frames, so the work saved
+ * is spread evenly rather than every one ticking on the same frame.
+ * <BR>
+ * To use:
+ *
+ * <code>MMMTickScheduler ticks = new MMMTickScheduler(4);</code>
+ *
+ * <code>ticks.add(enemy);</code>
+ *
+ * then, from the states update(),
+ *
+ * <code>ticks.setViewport(camera_x, camera_y, camera_x + width, camera_y + height);</code>
+ *
+ * <code>ticks.tick(dt);</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public class MMMTickScheduler {
+	
+	/** The number of registered animations. **/
+	private int count;
+	
+	/** The registered animations. **/
+	private MMMAnimation[] animations;
+	
+	/** The tick divisor each animation asked for even while on screen, 1 for full rate. **/
+	private int[] priorities;
+	
+	/** The milliseconds accumulated by each animation since its last tick. **/
+	private long[] pending_dt;
+	
+	/** Whether each animation was on screen at its last check. **/
+	private boolean[] visible;
+	
+	/** The tick divisor of animations while off screen. **/
+	private int offscreen_divisor;
+	
+	/** The viewport, in the same coordinates as the animations locations. **/
+	private float view_left, view_top, view_right, view_bottom;
+	private boolean has_viewport;
+	
+	/** The number of frames ticked, used to stagger reduced rate animations. **/
+	private int frame;
+	
+	/** The ticks skipped in the last frame, and in total. **/
+	private int ticks_saved;
+	private long total_ticks_saved;
+	
+	/**
+	 * Create a new MMMTickScheduler.
+	 * @param the_offscreen_divisor Off screen animations are ticked once every this many frames.
+	 */
+	public MMMTickScheduler(final int the_offscreen_divisor) {
+		setOffscreenDivisor(the_offscreen_divisor);
+		animations = new MMMAnimation[16];
+		priorities = new int[16];
+		pending_dt = new long[16];
+		visible = new boolean[16];
+	}
+	
+	/**
+	 * Set how often off screen animations are ticked.
+	 * @param divisor Off screen animations are ticked once every this many frames. 1 ticks them every frame.
+	 */
+	public void setOffscreenDivisor(final int divisor) {
+		if (divisor < 1)
+			throw new IllegalArgumentException("divisor must be at least 1");
+		offscreen_divisor = divisor;
+	}
+	
+	/**
+	 * Set the viewport. Animations not overlapping it are off screen. Pad it
+	 * by the largest amount a rotated sprite can stick out of its bounds.
+	 */
+	public void setViewport(final float left, final float top, final float right, final float bottom) {
+		view_left = left;
+		view_top = top;
+		view_right = right;
+		view_bottom = bottom;
+		has_viewport = true;
+	}
+	
+	/** Forget the viewport, treating every animation as on screen. **/
+	public void clearViewport() {
+		has_viewport = false;
+	}
+	
+	/**
+	 * Register an animation at full priority. Registering it again only
+	 * resets its priority.
+	 * @param anim The animation.
+	 */
+	public void add(final MMMAnimation anim) {
+		add(anim, 1);
+	}
+	
+	/**
+	 * Register an animation which is ticked once every <code>divisor</code>
+	 * frames even while on screen, such as a distant background layer.
+	 * Registering it again only changes its priority.
+	 * @param anim The animation.
+	 * @param divisor The animation is ticked once every this many frames. 1 for full rate.
+	 */
+	public void add(final MMMAnimation anim, final int divisor) {
+		
+		if (anim == null)
+			throw new IllegalArgumentException("animation cannot be null");
+		if (divisor < 1)
+			throw new IllegalArgumentException("divisor must be at least 1");
+		
+		final int existing = indexOf(anim);
+		if (existing >= 0) {
+			priorities[existing] = divisor;
+			return;
+		}
+		
+		if (count == animations.length)
+			grow();
+		
+		animations[count] = anim;
+		priorities[count] = divisor;
+		pending_dt[count] = 0;
+		visible[count] = true;
+		count++;
+		
+	}
+	
+	/**
+	 * Unregister an animation, first handing it any time it has accumulated.
+	 * @param anim The animation.
+	 */
+	public void remove(final MMMAnimation anim) {
+		
+		final int i = indexOf(anim);
+		if (i < 0)
+			return;
+		
+		if (pending_dt[i] > 0)
+			anim.tick(pending_dt[i]);
+		
+		// Move the last animation into the gap.
+		count--;
+		animations[i] = animations[count];
+		priorities[i] = priorities[count];
+		pending_dt[i] = pending_dt[count];
+		visible[i] = visible[count];
+		animations[count] = null;
+		
+	}
+	
+	/** Unregister every animation, without ticking them. **/
+	public void clear() {
+		for (int i = 0; i < count; i++) {
+			animations[i] = null;
+		}
+		count = 0;
+	}
+	
+	/** Retrieve the number of registered animations. **/
+	public int getCount() {
+		return count;
+	}
+	
+	/**
+	 * Tick every registered animation due this frame, with all the time it
+	 * has accumulated.
+	 * @param dt The milliseconds since last update.
+	 */
+	public void tick(final long dt) {
+		
+		frame++;
+		ticks_saved = 0;
+		
+		for (int i = 0; i < count; i++) {
+			final MMMAnimation anim = animations[i];
+			
+			final boolean on_screen = !has_viewport || anim.overlaps(view_left, view_top, view_right, view_bottom);
+			final boolean entered = on_screen && !visible[i];
+			visible[i] = on_screen;
+			
+			final int divisor = on_screen ? priorities[i] : Math.max(priorities[i], offscreen_divisor);
+			
+			pending_dt[i] += dt;
+			
+			// Stagger by slot, so reduced rate animations do not all tick on the same frame.
+			if (divisor == 1 || entered || (frame + i) % divisor == 0) {
+				anim.tick(pending_dt[i]);
+				pending_dt[i] = 0;
+			} else {
+				ticks_saved++;
+			}
+		}
+		
+		total_ticks_saved += ticks_saved;
+		
+	}
+	
+	/** Retrieve the number of ticks skipped in the last frame. **/
+	public int getTicksSaved() {
+		return ticks_saved;
+	}
+	
+	/** Retrieve the total number of ticks skipped. **/
+	public long getTotalTicksSaved() {
+		return total_ticks_saved;
+	}
+	
+	/** Retrieve the number of registered animations on screen at the last tick. **/
+	public int getVisibleCount() {
+		int rtn_val = 0;
+		for (int i = 0; i < count; i++) {
+			if (visible[i])
+				rtn_val++;
+		}
+		return rtn_val;
+	}
+	
+	private int indexOf(final MMMAnimation anim) {
+		for (int i = 0; i < count; i++) {
+			if (animations[i] == anim)
+				return i;
+		}
+		return -1;
+	}
+	
+	private void grow() {
+		final int size = animations.length * 2;
+		
+		final MMMAnimation[] a = new MMMAnimation[size];
+		System.arraycopy(animations, 0, a, 0, count);
+		animations = a;
+		
+		final int[] p = new int[size];
+		System.arraycopy(priorities, 0, p, 0, count);
+		priorities = p;
+		
+		final long[] d = new long[size];
+		System.arraycopy(pending_dt, 0, d, 0, count);
+		pending_dt = d;
+		
+		final boolean[] v = new boolean[size];
+		System.arraycopy(visible, 0, v, 0, count);
+		visible = v;
+	}
+	
+}
@@ -0,0 +1,461 @@
+package com.mmm.animation;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * The MMMTileMap class draws a large grid of tiles taken from an MMMSpriteSheet.
+ * Each tile is a frame number of the sheet, stored compactly in a short[].
+ * <BR>
+ * Rather than drawing every tile every frame, the map is divided into square
+ * chunks of tiles which are prerendered into cached Bitmaps, so drawing the
+ * visible part of the map costs one drawBitmap() per visible chunk. A chunk
+ * is only rendered again after one of its tiles has changed. At most
+ * <code>max_cached_chunks</code> chunk Bitmaps are kept; the chunk least
+ * recently drawn gives up its Bitmap when another is required.
+ * <BR>
+ * Animated tiles (water, torches, etc.) are left out of the chunk Bitmaps and
+ * drawn individually on top, every frame, with the frame matching the maps
+ * clock. Only the animated tiles of visible chunks are drawn.
+ * <BR>
+ * Tiles are drawn from the sheets frame Bitmaps, so palette and streaming
+ * sheets work too. A chunk rendered while some of its tiles were still
+ * being decoded is rendered again until they have all been drawn.
+ * <BR>
+ * The map is positioned at (0, 0) in world coordinates; draw() is given the
+ * world location shown at the top left of the canvas.
+ *
+ * @author Michael Morris
+ * @version 1.0.1
+ *
+ */
+public class MMMTileMap {
+	
+	/** The tile value of an empty cell. **/
+	public static final short EMPTY = -1;
+	
+	/** The sprite sheet the tiles are taken from. **/
+	private final MMMSpriteSheet sheet;
+	
+	/** The width and height of the map, in tiles. **/
+	private final int width, height;
+	
+	/** The tile (frame number) of every cell, row by row. **/
+	private final short[] tiles;
+	
+	/** The width and height of a chunk, in tiles. **/
+	private final int chunk_size;
+	
+	/** The number of chunks in the x and y direction. **/
+	private final int chunks_x, chunks_y;
+	
+	/** The cached Bitmap of every chunk, or null. **/
+	private final Bitmap[] chunk_bitmaps;
+	
+	/** Whether each chunk must be rendered again before being drawn. **/
+	private final boolean[] chunk_dirty;
+	
+	/** The draw number each chunk was last drawn on. **/
+	private final int[] chunk_last_drawn;
+	
+	/** The cells holding animated tiles in each chunk, rebuilt with the chunk. **/
+	private final int[][] chunk_animated;
+	private final int[] chunk_animated_count;
+	
+	/** The largest number of chunk Bitmaps kept at once, and the number currently kept. **/
+	private final int max_cached_chunks;
+	private int cached_chunks;
+	
+	/** The animation index of every tile value, or -1 if the tile is not animated. **/
+	private final int[] tile_animation;
+	
+	/** The frames and frame speed of every animated tile. **/
+	private int[][] animation_frames;
+	private long[] animation_speeds;
+	private int animation_count;
+	
+	/** The number of milliseconds ticked, used to select animated tile frames. **/
+	private long clock;
+	
+	/** Incremented on every draw. **/
+	private int draw_count;
+	
+	/** The number of chunks rendered since the map was created. **/
+	private int chunks_rendered;
+	
+	/** Reused while rendering and drawing, to avoid creating objects every frame. **/
+	private final Canvas chunk_canvas = new Canvas();
+	private final Rect src = new Rect();
+	private final Rect dst = new Rect();
+	
+	/**
+	 * Create a new, empty, MMMTileMap.
+	 * @param the_sheet The sprite sheet the tiles are taken from.
+	 * @param the_width The width of the map, in tiles.
+	 * @param the_height The height of the map, in tiles.
+	 * @param the_chunk_size The width and height of a prerendered chunk, in tiles.
+	 * @param the_max_cached_chunks The largest number of chunk Bitmaps to keep. Should cover at least one screen.
+	 */
+	public MMMTileMap(final MMMSpriteSheet the_sheet, final int the_width, final int the_height,
+					  final int the_chunk_size, final int the_max_cached_chunks) {
+		if (the_sheet == null)
+			throw new IllegalArgumentException("tile map must have a sprite sheet");
+		if (the_width < 1 || the_height < 1)
+			throw new IllegalArgumentException("tile map must be at least 1x1 tiles");
+		if (the_chunk_size < 1)
+			throw new IllegalArgumentException("chunk size must be at least 1 tile");
+		if (the_max_cached_chunks < 1)
+			throw new IllegalArgumentException("at least one chunk must be cached");
+		
+		sheet = the_sheet;
+		width = the_width;
+		height = the_height;
+		chunk_size = the_chunk_size;
+		max_cached_chunks = the_max_cached_chunks;
+		
+		tiles = new short[width * height];
+		for (int i = 0; i < tiles.length; i++)
+			tiles[i] = EMPTY;
+		
+		chunks_x = (width + chunk_size - 1) / chunk_size;
+		chunks_y = (height + chunk_size - 1) / chunk_size;
+		
+		final int chunk_count = chunks_x * chunks_y;
+		chunk_bitmaps = new Bitmap[chunk_count];
+		chunk_dirty = new boolean[chunk_count];
+		chunk_last_drawn = new int[chunk_count];
+		chunk_animated = new int[chunk_count][];
+		chunk_animated_count = new int[chunk_count];
+		for (int i = 0; i < chunk_count; i++)
+			chunk_dirty[i] = true;
+		
+		tile_animation = new int[sheet.getFrameCount()];
+		for (int i = 0; i < tile_animation.length; i++)
+			tile_animation[i] = -1;
+		
+		animation_frames = new int[4][];
+		animation_speeds = new long[4];
+	}
+	
+	/** Retrieve the width of the map, in tiles. **/
+	public int getWidth() {
+		return width;
+	}
+	
+	/** Retrieve the height of the map, in tiles. **/
+	public int getHeight() {
+		return height;
+	}
+	
+	/** Retrieve the pixel width of one tile. **/
+	public int getTileWidth() {
+		return sheet.getSpriteWidth();
+	}
+	
+	/** Retrieve the pixel height of one tile. **/
+	public int getTileHeight() {
+		return sheet.getSpriteHeight();
+	}
+	
+	/**
+	 * Retrieve the tile at the given cell.
+	 * @param tx The x location, in tiles.
+	 * @param ty The y location, in tiles.
+	 * @return The tile (frame number), or EMPTY.
+	 */
+	public short getTile(final int tx, final int ty) {
+		checkCell(tx, ty);
+		return tiles[ty * width + tx];
+	}
+	
+	/**
+	 * Set the tile at the given cell. Only the chunk holding the cell is
+	 * rendered again, and only if the tile actually changed.
+	 * @param tx The x location, in tiles.
+	 * @param ty The y location, in tiles.
+	 * @param tile The tile (frame number), or EMPTY.
+	 */
+	public void setTile(final int tx, final int ty, final short tile) {
+		checkCell(tx, ty);
+		checkTile(tile);
+		
+		final int i = ty * width + tx;
+		if (tiles[i] == tile)
+			return;
+		
+		tiles[i] = tile;
+		chunk_dirty[(ty / chunk_size) * chunks_x + (tx / chunk_size)] = true;
+	}
+	
+	/**
+	 * Replace every tile of the map, row by row.
+	 * @param the_tiles The tiles (frame numbers, or EMPTY), width * height of them.
+	 */
+	public void setTiles(final short[] the_tiles) {
+		if (the_tiles.length != tiles.length)
+			throw new IllegalArgumentException("expected " + tiles.length + " tiles, not " + the_tiles.length);
+		for (int i = 0; i < the_tiles.length; i++)
+			checkTile(the_tiles[i]);
+		
+		System.arraycopy(the_tiles, 0, tiles, 0, tiles.length);
+		invalidate();
+	}
+	
+	/**
+	 * Make the given tile animated, cycling through <code>frames</code> with
+	 * <code>frame_speed</code> milliseconds between each. Every cell holding
+	 * the tile is drawn animated.
+	 * @param tile The tile (frame number) to animate.
+	 * @param frames The frame numbers to cycle through.
+	 * @param frame_speed The number of milliseconds between each frame.
+	 */
+	public void setAnimatedTile(final short tile, final int[] frames, final long frame_speed) {
+		checkTile(tile);
+		if (tile == EMPTY)
+			throw new IllegalArgumentException("the empty tile cannot be animated");
+		if (frames == null || frames.length == 0)
+			throw new IllegalArgumentException("an animated tile must have at least one frame");
+		if (frame_speed < 1)
+			throw new IllegalArgumentException("frame speed must be greater than 1");
+		for (int i = 0; i < frames.length; i++)
+			if (frames[i] < 0 || frames[i] >= sheet.getFrameCount())
+				throw new IllegalArgumentException("frame " + frames[i] + " is not on the sprite sheet");
+		
+		if (animation_count == animation_frames.length) {
+			final int[][] f = new int[animation_count * 2][];
+			System.arraycopy(animation_frames, 0, f, 0, animation_count);
+			animation_frames = f;
+			final long[] s = new long[animation_count * 2];
+			System.arraycopy(animation_speeds, 0, s, 0, animation_count);
+			animation_speeds = s;
+		}
+		
+		int index = tile_animation[tile];
+		if (index == -1)
+			index = animation_count++;
+		
+		animation_frames[index] = frames.clone();
+		animation_speeds[index] = frame_speed;
+		tile_animation[tile] = index;
+		
+		// The tile moves from the chunk Bitmaps to the animated overlay.
+		invalidate();
+	}
+	
+	/**
+	 * Advance the clock used to select animated tile frames.
+	 * @param dt The time delta. (Number of milliseconds to tick)
+	 */
+	public void tick(final long dt) {
+		clock += dt;
+	}
+	
+	/** Mark every chunk to be rendered again before it is next drawn. **/
+	public void invalidate() {
+		for (int i = 0; i < chunk_dirty.length; i++)
+			chunk_dirty[i] = true;
+	}
+	
+	/** Retrieve the number of chunks rendered since the map was created. **/
+	public int getChunksRendered() {
+		return chunks_rendered;
+	}
+	
+	/** Retrieve the number of chunk Bitmaps currently kept. **/
+	public int getCachedChunkCount() {
+		return cached_chunks;
+	}
+	
+	/**
+	 * Draw the part of the map visible on the canvas.
+	 * @param c The canvas to draw on.
+	 * @param view_x The world x location shown at the left edge of the canvas.
+	 * @param view_y The world y location shown at the top edge of the canvas.
+	 * @param view_width The width of the area to draw, in pixels.
+	 * @param view_height The height of the area to draw, in pixels.
+	 */
+	public void draw(final Canvas c, final float view_x, final float view_y, final int view_width, final int view_height) {
+		
+		draw_count++;
+		
+		final int chunk_width = chunk_size * sheet.getSpriteWidth();
+		final int chunk_height = chunk_size * sheet.getSpriteHeight();
+		
+		// Find the range of visible chunks.
+		final int first_x = Math.max(0, (int)Math.floor(view_x / chunk_width));
+		final int first_y = Math.max(0, (int)Math.floor(view_y / chunk_height));
+		final int last_x = Math.min(chunks_x - 1, (int)Math.floor((view_x + view_width - 1) / chunk_width));
+		final int last_y = Math.min(chunks_y - 1, (int)Math.floor((view_y + view_height - 1) / chunk_height));
+		
+		// Mark every visible chunk first, so none is evicted while the others are rendered.
+		for (int cy = first_y; cy <= last_y; cy++)
+			for (int cx = first_x; cx <= last_x; cx++)
+				chunk_last_drawn[cy * chunks_x + cx] = draw_count;
+		
+		for (int cy = first_y; cy <= last_y; cy++) {
+			for (int cx = first_x; cx <= last_x; cx++) {
+				final int chunk = cy * chunks_x + cx;
+				if (chunk_dirty[chunk] || chunk_bitmaps[chunk] == null)
+					renderChunk(chunk);
+				
+				c.drawBitmap(chunk_bitmaps[chunk], cx * chunk_width - view_x, cy * chunk_height - view_y, null);
+			}
+		}
+		
+		if (animation_count == 0)
+			return;
+		
+		// Animated overlay pass.
+		final int tile_width = sheet.getSpriteWidth();
+		final int tile_height = sheet.getSpriteHeight();
+		for (int cy = first_y; cy <= last_y; cy++) {
+			for (int cx = first_x; cx <= last_x; cx++) {
+				final int chunk = cy * chunks_x + cx;
+				final int[] cells = chunk_animated[chunk];
+				final int count = chunk_animated_count[chunk];
+				for (int i = 0; i < count; i++) {
+					final int cell = cells[i];
+					final int animation = tile_animation[tiles[cell]];
+					final int[] frames = animation_frames[animation];
+					
+					final Bitmap tile_bitmap = sheet.getFrameBitmap(frames[(int)((clock / animation_speeds[animation]) % frames.length)], src);
+					if (tile_bitmap == null)
+						continue;
+					
+					dst.left = Math.round((cell % width) * tile_width - view_x);
+					dst.top = Math.round((cell / width) * tile_height - view_y);
+					dst.right = dst.left + tile_width;
+					dst.bottom = dst.top + tile_height;
+					
+					c.drawBitmap(tile_bitmap, src, dst, null);
+				}
+			}
+		}
+		
+	}
+	
+	/** Render the static tiles of a chunk into its Bitmap, and collect its animated cells. **/
+	private void renderChunk(final int chunk) {
+		
+		final int cx = chunk % chunks_x;
+		final int cy = chunk / chunks_x;
+		final int tile_width = sheet.getSpriteWidth();
+		final int tile_height = sheet.getSpriteHeight();
+		
+		// Chunks on the right and bottom edges may hold fewer tiles.
+		final int first_tx = cx * chunk_size;
+		final int first_ty = cy * chunk_size;
+		final int tiles_x = Math.min(chunk_size, width - first_tx);
+		final int tiles_y = Math.min(chunk_size, height - first_ty);
+		
+		final Bitmap bitmap = obtainChunkBitmap(chunk, tiles_x * tile_width, tiles_y * tile_height);
+		bitmap.eraseColor(0);
+		chunk_canvas.setBitmap(bitmap);
+		
+		int animated = 0;
+		boolean missing = false;
+		
+		for (int ty = 0; ty < tiles_y; ty++) {
+			for (int tx = 0; tx < tiles_x; tx++) {
+				final int cell = (first_ty + ty) * width + first_tx + tx;
+				final short tile = tiles[cell];
+				if (tile == EMPTY)
+					continue;
+				
+				if (tile_animation[tile] != -1) {
+					if (chunk_animated[chunk] == null || chunk_animated[chunk].length == animated) {
+						final int[] grown = new int[animated == 0 ? 8 : animated * 2];
+						if (animated > 0)
+							System.arraycopy(chunk_animated[chunk], 0, grown, 0, animated);
+						chunk_animated[chunk] = grown;
+					}
+					chunk_animated[chunk][animated++] = cell;
+					continue;
+				}
+				
+				final Bitmap tile_bitmap = sheet.getFrameBitmap(tile, src);
+				if (tile_bitmap == null) {
+					missing = true;
+					continue;
+				}
+				
+				dst.left = tx * tile_width;
+				dst.top = ty * tile_height;
+				dst.right = dst.left + tile_width;
+				dst.bottom = dst.top + tile_height;
+				chunk_canvas.drawBitmap(tile_bitmap, src, dst, null);
+			}
+		}
+		
+		chunk_animated_count[chunk] = animated;
+		// A tile still being decoded leaves the chunk to be rendered again.
+		chunk_dirty[chunk] = missing;
+		chunks_rendered++;
+		
+	}
+	
+	/**
+	 * Find a Bitmap for the chunk: its own, the Bitmap of the chunk least
+	 * recently drawn if the cache is full, or a new one.
+	 */
+	private Bitmap obtainChunkBitmap(final int chunk, final int bitmap_width, final int bitmap_height) {
+		
+		Bitmap bitmap = chunk_bitmaps[chunk];
+		if (bitmap != null)
+			return bitmap;
+		
+		if (cached_chunks >= max_cached_chunks) {
+			int victim = -1;
+			for (int i = 0; i < chunk_bitmaps.length; i++) {
+				if (chunk_bitmaps[i] != null && chunk_last_drawn[i] != draw_count
+						&& (victim == -1 || chunk_last_drawn[i] < chunk_last_drawn[victim]))
+					victim = i;
+			}
+			
+			if (victim != -1) {
+				bitmap = chunk_bitmaps[victim];
+				chunk_bitmaps[victim] = null;
+				chunk_dirty[victim] = true;
+				cached_chunks--;
+				
+				if (bitmap.getWidth() != bitmap_width || bitmap.getHeight() != bitmap_height) {
+					bitmap.recycle();
+					bitmap = null;
+				}
+			}
+		}
+		
+		if (bitmap == null)
+			bitmap = Bitmap.createBitmap(bitmap_width, bitmap_height, Bitmap.Config.ARGB_8888);
+		
+		chunk_bitmaps[chunk] = bitmap;
+		cached_chunks++;
+		
+		return bitmap;
+		
+	}
+	
+	/** Free every cached chunk Bitmap. They are rendered again when next drawn. **/
+	public void recycle() {
+		for (int i = 0; i < chunk_bitmaps.length; i++) {
+			if (chunk_bitmaps[i] != null) {
+				chunk_bitmaps[i].recycle();
+				chunk_bitmaps[i] = null;
+			}
+			chunk_dirty[i] = true;
+		}
+		cached_chunks = 0;
+	}
+	
+	private void checkCell(final int tx, final int ty) {
+		if (tx < 0 || ty < 0 || tx >= width || ty >= height)
+			throw new IllegalArgumentException("cell (" + tx + ", " + ty + ") is outside the " + width + "x" + height + " map");
+	}
+	
+	private void checkTile(final short tile) {
+		if (tile != EMPTY && (tile < 0 || tile >= sheet.getFrameCount()))
+			throw new IllegalArgumentException("tile " + tile + " is not on the sprite sheet");
+	}
+	
+}
@@ -0,0 +1,129 @@
+package com.mmm.animation;
+
+/**
+ * The MMMTween class holds the property and easing identifiers used by
+ * MMMTweenManager, along with the easing curves themselves. Easing curves
+ * are plain integer constants evaluated by a switch, so selecting a curve
+ * never requires an object to be created.
+ * <BR>
+ * Every easing function maps a normalized time <code>t</code> (0.0 - 1.0)
+ * to a normalized progress value. Progress is usually within 0.0 - 1.0,
+ * however the BACK and ELASTIC curves intentionally overshoot.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public final class MMMTween {
+	
+	/** Tween the x location of an MMMAnimation. **/
+	public static final int X = 0;
+	
+	/** Tween the y location of an MMMAnimation. **/
+	public static final int Y = 1;
+	
+	/** Tween the x and y location of an MMMAnimation together. **/
+	public static final int POSITION = 2;
+	
+	/** Tween the layer (z location) of an MMMAnimation. **/
+	public static final int LAYER = 3;
+	
+	/** Tween the scale of an MMMAnimation. **/
+	public static final int SCALE = 4;
+	
+	/** Tween the rotation (in degrees) of an MMMAnimation. **/
+	public static final int ROTATION = 5;
+	
+	/** Tween the tint color of an MMMAnimation, channel by channel. **/
+	public static final int TINT = 6;
+	
+	public static final int LINEAR = 0;
+	public static final int QUAD_IN = 1;
+	public static final int QUAD_OUT = 2;
+	public static final int QUAD_IN_OUT = 3;
+	public static final int CUBIC_IN = 4;
+	public static final int CUBIC_OUT = 5;
+	public static final int CUBIC_IN_OUT = 6;
+	public static final int SINE_IN = 7;
+	public static final int SINE_OUT = 8;
+	public static final int SINE_IN_OUT = 9;
+	public static final int BACK_IN = 10;
+	public static final int BACK_OUT = 11;
+	public static final int ELASTIC_OUT = 12;
+	public static final int BOUNCE_OUT = 13;
+	
+	/** The amount of overshoot used by the BACK curves. **/
+	private static final float BACK_OVERSHOOT = 1.70158f;
+	
+	/** A private constructor, MMMTween only provides constants and static methods. **/
+	private MMMTween() { }
+	
+	/**
+	 * Evaluate the easing curve specified by <code>easing</code> at the normalized
+	 * time <code>t</code>.
+	 * @param easing The easing curve identifier (ex - MMMTween.QUAD_OUT).
+	 * @param t The normalized time, 0.0 to 1.0 inclusive.
+	 * @return The normalized progress along the tween.
+	 * @throws IllegalArgumentException if the easing identifier is unknown.
+	 */
+	public static float ease(final int easing, final float t) {
+		
+		switch (easing) {
+		case LINEAR:
+			return t;
+		case QUAD_IN:
+			return t * t;
+		case QUAD_OUT:
+			return t * (2.0f - t);
+		case QUAD_IN_OUT:
+			if (t < 0.5f)
+				return 2.0f * t * t;
+			return -1.0f + (4.0f - 2.0f * t) * t;
+		case CUBIC_IN:
+			return t * t * t;
+		case CUBIC_OUT: {
+			final float f = t - 1.0f;
+			return f * f * f + 1.0f;
+		}
+		case CUBIC_IN_OUT: {
+			if (t < 0.5f)
+				return 4.0f * t * t * t;
+			final float f = 2.0f * t - 2.0f;
+			return 0.5f * f * f * f + 1.0f;
+		}
+		case SINE_IN:
+			return 1.0f - (float)Math.cos(t * Math.PI * 0.5);
+		case SINE_OUT:
+			return (float)Math.sin(t * Math.PI * 0.5);
+		case SINE_IN_OUT:
+			return 0.5f * (1.0f - (float)Math.cos(t * Math.PI));
+		case BACK_IN:
+			return t * t * ((BACK_OVERSHOOT + 1.0f) * t - BACK_OVERSHOOT);
+		case BACK_OUT: {
+			final float f = t - 1.0f;
+			return f * f * ((BACK_OVERSHOOT + 1.0f) * f + BACK_OVERSHOOT) + 1.0f;
+		}
+		case ELASTIC_OUT:
+			if (t <= 0.0f || t >= 1.0f)
+				return t;
+			return (float)(Math.pow(2.0, -10.0 * t) * Math.sin((t - 0.075) * (2.0 * Math.PI) / 0.3) + 1.0);
+		case BOUNCE_OUT:
+			if (t < 1.0f / 2.75f)
+				return 7.5625f * t * t;
+			if (t < 2.0f / 2.75f) {
+				final float f = t - 1.5f / 2.75f;
+				return 7.5625f * f * f + 0.75f;
+			}
+			if (t < 2.5f / 2.75f) {
+				final float f = t - 2.25f / 2.75f;
+				return 7.5625f * f * f + 0.9375f;
+			}
+			final float f = t - 2.625f / 2.75f;
+			return 7.5625f * f * f + 0.984375f;
+		default:
+			throw new IllegalArgumentException("unknown easing " + easing);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,23 @@
+package com.mmm.animation;
+
+/**
+ * The MMMTweenListener interface is notified by an MMMTweenManager when a
+ * tween has reached its end value. A single listener may be shared by any
+ * number of tweens, the handle passed back identifies which one finished.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public interface MMMTweenListener {
+	
+	/**
+	 * Called, from within MMMTweenManager.update(), once the tween has
+	 * applied its final value. Any tween chained after this one has already
+	 * been started when this is called.
+	 * @param handle The handle of the completed tween. It is no longer valid.
+	 * @param target The MMMAnimation the tween was applied to.
+	 */
+	public void onTweenComplete(final int handle, final MMMAnimation target);
+	
+}
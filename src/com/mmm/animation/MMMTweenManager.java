@@ -0,0 +1,643 @@
+package com.mmm.animation;
+
+/**
+ * The MMMTweenManager class animates the position, layer, scale, rotation,
+ * and tint of MMMAnimation objects over time, following one of the easing
+ * curves defined in MMMTween. It is driven by the same millisecond delta
+ * passed to GameState.update().
+ * <BR>
+ * Tweens are not objects. Every tween lives in a slot of a set of parallel
+ * arrays and is referred to by an integer handle, so starting, running,
+ * chaining, and finishing thousands of tweens does not allocate. The arrays
+ * only grow (doubling) when more tweens are alive at once than ever before.
+ * A handle stays valid until its tween completes or is cancelled, after
+ * which it is simply ignored by every method that accepts one.
+ * <BR>
+ * To use:
+ *
+ * <code>MMMTweenManager tweens = new MMMTweenManager(256);</code>
+ *
+ * <code>int a = tweens.moveTo(hero, 300, 120, 500, MMMTween.QUAD_OUT);</code>
+ *
+ * <code>int b = tweens.to(hero, MMMTween.ROTATION, 360, 250, MMMTween.LINEAR);</code>
+ *
+ * <code>tweens.chain(a, b);</code>
+ *
+ * then call <code>tweens.update(dt)</code> from the states update().
+ *
+ * @author Michael Morris
+ * @version 1.0.1
+ *
+ */
+public class MMMTweenManager {
+	
+	/** The value returned when no tween could be referred to. **/
+	public static final int NO_TWEEN = -1;
+	
+	/** The number of low bits of a handle holding the slot index. **/
+	private static final int INDEX_BITS = 16;
+	
+	/** The mask which extracts the slot index from a handle. **/
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+	
+	/** The mask applied to slot generations, keeping handles positive. **/
+	private static final int GENERATION_MASK = 0x7FFF;
+	
+	/** The largest number of tweens which can be alive at once. **/
+	public static final int MAX_CAPACITY = 1 << INDEX_BITS;
+	
+	/** The slot is unused. **/
+	private static final int STATE_FREE = 0;
+	
+	/** The slot is chained after another tween and waiting for it to finish. **/
+	private static final int STATE_WAITING = 1;
+	
+	/** The slot is receiving updates. **/
+	private static final int STATE_ACTIVE = 2;
+	
+	/** The number of slots currently allocated. **/
+	private int capacity;
+	
+	/** The MMMAnimation each slot applies to. **/
+	private MMMAnimation[] targets;
+	
+	/** The MMMTween property identifier of each slot. **/
+	private int[] properties;
+	
+	/** The MMMTween easing identifier of each slot. **/
+	private int[] easings;
+	
+	/** The STATE_* of each slot. **/
+	private int[] states;
+	
+	/** The generation of each slot, incremented whenever the slot is freed. **/
+	private int[] generations;
+	
+	/** Whether the start values of each slot have been captured. **/
+	private boolean[] started;
+	
+	/** The start and end values (x, or the only value, and y) of each slot. **/
+	private float[] from_a, from_b, to_a, to_b;
+	
+	/** The start and end colors of each TINT slot. **/
+	private int[] from_color, to_color;
+	
+	/** The duration, milliseconds elapsed, and start delay of each slot. **/
+	private long[] durations, elapsed, delays;
+	
+	/** The chained successor and predecessor of each slot, or -1. **/
+	private int[] next, prev;
+	
+	/** The completion listener of each slot, or null. **/
+	private MMMTweenListener[] listeners;
+	
+	/** The update number each slot was last stepped on. **/
+	private int[] stamps;
+	
+	/** The stack of free slot indices. **/
+	private int[] free_slots;
+	private int free_count;
+	
+	/** The densely packed list of active slot indices, and each slots position within it. **/
+	private int[] active;
+	private int[] active_pos;
+	private int active_count;
+	
+	/** Incremented on every update, used to step each slot at most once per update. **/
+	private int update_stamp;
+	
+	/**
+	 * Create a new MMMTweenManager with room for 64 simultaneous tweens.
+	 */
+	public MMMTweenManager() {
+		this(64);
+	}
+	
+	/**
+	 * Create a new MMMTweenManager with room for <code>initial_capacity</code>
+	 * simultaneous tweens before any growth is required.
+	 * @param initial_capacity The number of tween slots to preallocate.
+	 */
+	public MMMTweenManager(final int initial_capacity) {
+		if (initial_capacity < 1 || initial_capacity > MAX_CAPACITY)
+			throw new IllegalArgumentException("initial capacity must be between 1 and " + MAX_CAPACITY);
+		
+		capacity = 0;
+		targets = new MMMAnimation[0];
+		properties = new int[0];
+		easings = new int[0];
+		states = new int[0];
+		generations = new int[0];
+		started = new boolean[0];
+		from_a = new float[0];
+		from_b = new float[0];
+		to_a = new float[0];
+		to_b = new float[0];
+		from_color = new int[0];
+		to_color = new int[0];
+		durations = new long[0];
+		elapsed = new long[0];
+		delays = new long[0];
+		next = new int[0];
+		prev = new int[0];
+		listeners = new MMMTweenListener[0];
+		stamps = new int[0];
+		free_slots = new int[0];
+		active = new int[0];
+		active_pos = new int[0];
+		
+		grow(initial_capacity);
+	}
+	
+	/**
+	 * Start tweening a single valued property (X, Y, LAYER, SCALE or ROTATION) of
+	 * <code>target</code> from its current value to <code>value</code>.
+	 * @param target The MMMAnimation to tween.
+	 * @param property The MMMTween property identifier.
+	 * @param value The final value of the property.
+	 * @param duration The number of milliseconds the tween lasts.
+	 * @param easing The MMMTween easing identifier.
+	 * @return The handle of the new tween.
+	 * @throws IllegalArgumentException if the property is POSITION or TINT, or any argument is out of bounds.
+	 */
+	public int to(final MMMAnimation target, final int property, final float value, final long duration, final int easing) {
+		if (property == MMMTween.POSITION || property == MMMTween.TINT || property < MMMTween.X || property > MMMTween.TINT)
+			throw new IllegalArgumentException("property " + property + " is not a single valued property");
+		
+		final int i = create(target, property, duration, easing);
+		to_a[i] = value;
+		return handle(i);
+	}
+	
+	/**
+	 * Start tweening the location of <code>target</code> from its current location
+	 * to (<code>the_x</code>, <code>the_y</code>) within its current layer.
+	 * @param target The MMMAnimation to tween.
+	 * @param the_x The final x location.
+	 * @param the_y The final y location.
+	 * @param duration The number of milliseconds the tween lasts.
+	 * @param easing The MMMTween easing identifier.
+	 * @return The handle of the new tween.
+	 */
+	public int moveTo(final MMMAnimation target, final float the_x, final float the_y, final long duration, final int easing) {
+		final int i = create(target, MMMTween.POSITION, duration, easing);
+		to_a[i] = the_x;
+		to_b[i] = the_y;
+		return handle(i);
+	}
+	
+	/**
+	 * Start tweening the tint color of <code>target</code> from its current tint
+	 * color to <code>color</code>. Tinting is switched on for the target when the
+	 * tween starts.
+	 * @param target The MMMAnimation to tween.
+	 * @param color The final tint color.
+	 * @param duration The number of milliseconds the tween lasts.
+	 * @param easing The MMMTween easing identifier.
+	 * @return The handle of the new tween.
+	 */
+	public int tintTo(final MMMAnimation target, final int color, final long duration, final int easing) {
+		final int i = create(target, MMMTween.TINT, duration, easing);
+		to_color[i] = color;
+		return handle(i);
+	}
+	
+	/**
+	 * Delay the start of a tween which has not yet started. For a chained
+	 * tween the delay counts from the moment its predecessor completes.
+	 * @param handle The tween handle.
+	 * @param delay The number of milliseconds to wait before starting.
+	 */
+	public void setDelay(final int handle, final long delay) {
+		final int i = resolve(handle);
+		if (i < 0)
+			return;
+		if (started[i])
+			throw new IllegalStateException("cannot delay a tween which has already started");
+		if (delay < 0)
+			throw new IllegalArgumentException("delay cannot be negative");
+		
+		delays[i] = delay;
+		if (states[i] == STATE_ACTIVE)
+			elapsed[i] = -delay;
+	}
+	
+	/**
+	 * Set the listener notified when the tween completes.
+	 * @param handle The tween handle.
+	 * @param listener The listener, or null for none.
+	 */
+	public void setListener(final int handle, final MMMTweenListener listener) {
+		final int i = resolve(handle);
+		if (i >= 0)
+			listeners[i] = listener;
+	}
+	
+	/**
+	 * Chain the tween <code>second</code> to run once <code>first</code>, and
+	 * everything already chained after <code>first</code>, has completed. The
+	 * start values of <code>second</code> are captured when it starts, so
+	 * consecutive tweens of the same property continue from one another.
+	 * @param first The handle of the tween to run first.
+	 * @param second The handle of a tween which has not yet started.
+	 * @return The handle <code>second</code>, to allow further chaining.
+	 */
+	public int chain(final int first, final int second) {
+		final int a = resolve(first);
+		final int b = resolve(second);
+		if (a < 0 || b < 0)
+			return NO_TWEEN;
+		if (a == b)
+			throw new IllegalArgumentException("a tween cannot be chained to itself");
+		if (started[b] || states[b] == STATE_WAITING)
+			throw new IllegalStateException("only a tween which has not started, nor been chained, can be chained");
+		
+		// Chaining a tween after one of its own successors would loop the chain.
+		for (int cur = next[b]; cur != -1; cur = next[cur]) {
+			if (cur == a)
+				throw new IllegalArgumentException("a tween cannot be chained after a tween chained to it");
+		}
+		
+		removeActive(b);
+		states[b] = STATE_WAITING;
+		
+		int last = a;
+		while (next[last] != -1)
+			last = next[last];
+		next[last] = b;
+		prev[b] = last;
+		
+		return second;
+	}
+	
+	/**
+	 * Cancel the tween, and every tween chained after it. The property keeps
+	 * whatever value it currently has and no listener is notified.
+	 * @param handle The tween handle.
+	 * @return True if a tween was cancelled, false if the handle was no longer valid.
+	 */
+	public boolean cancel(final int handle) {
+		final int i = resolve(handle);
+		if (i < 0)
+			return false;
+		
+		if (prev[i] != -1)
+			next[prev[i]] = -1;
+		
+		int cur = i;
+		while (cur != -1) {
+			final int nxt = next[cur];
+			if (states[cur] == STATE_ACTIVE)
+				removeActive(cur);
+			free(cur);
+			cur = nxt;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Cancel every tween applied to the given MMMAnimation, along with
+	 * anything chained after them.
+	 * @param target The MMMAnimation.
+	 */
+	public void cancelAll(final MMMAnimation target) {
+		for (int i = 0; i < capacity; i++) {
+			if (states[i] != STATE_FREE && targets[i] == target)
+				cancel(handle(i));
+		}
+	}
+	
+	/** Cancel every tween. **/
+	public void clear() {
+		for (int i = 0; i < capacity; i++) {
+			if (states[i] != STATE_FREE) {
+				if (states[i] == STATE_ACTIVE)
+					removeActive(i);
+				free(i);
+			}
+		}
+	}
+	
+	/**
+	 * Check whether the handle still refers to a running, delayed, or chained tween.
+	 * @param handle The tween handle.
+	 * @return True if the tween has not yet completed or been cancelled.
+	 */
+	public boolean isAlive(final int handle) {
+		return resolve(handle) >= 0;
+	}
+	
+	/** Retrieve the number of tweens currently receiving updates. **/
+	public int getActiveCount() {
+		return active_count;
+	}
+	
+	/** Retrieve the number of tween slots currently allocated. **/
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Advance every active tween by the given number of milliseconds and apply
+	 * the new property values to their targets. Listeners of completed tweens
+	 * are notified from within this call. Tweens created or started by a
+	 * listener receive their first update on the next call.
+	 * @param dt The time delta. (Number of milliseconds to update)
+	 */
+	public void update(final long dt) {
+		
+		update_stamp++;
+		
+		int pos = 0;
+		while (pos < active_count) {
+			final int i = active[pos];
+			
+			if (stamps[i] == update_stamp) {
+				pos++;
+				continue;
+			}
+			stamps[i] = update_stamp;
+			
+			// Completion swaps the last active slot into this position, so only advance otherwise.
+			if (!step(i, dt))
+				pos++;
+		}
+		
+	}
+	
+	/**
+	 * Advance one slot.
+	 * @return True if the slot completed and was removed from the active list.
+	 */
+	private boolean step(final int i, final long dt) {
+		
+		elapsed[i] += dt;
+		
+		// Still delayed.
+		if (elapsed[i] < 0)
+			return false;
+		
+		if (!started[i])
+			capture(i);
+		
+		final float t = durations[i] <= 0 ? 1.0f : Math.min(1.0f, (float)elapsed[i] / (float)durations[i]);
+		apply(i, MMMTween.ease(easings[i], t));
+		
+		if (elapsed[i] < durations[i])
+			return false;
+		
+		complete(i);
+		return true;
+		
+	}
+	
+	/** Capture the start values of a slot from its target. **/
+	private void capture(final int i) {
+		
+		final MMMAnimation target = targets[i];
+		
+		switch (properties[i]) {
+		case MMMTween.X:
+			from_a[i] = target.getX();
+			break;
+		case MMMTween.Y:
+			from_a[i] = target.getY();
+			break;
+		case MMMTween.POSITION:
+			from_a[i] = target.getX();
+			from_b[i] = target.getY();
+			break;
+		case MMMTween.LAYER:
+			from_a[i] = target.getLayer();
+			break;
+		case MMMTween.SCALE:
+			from_a[i] = target.getScale();
+			break;
+		case MMMTween.ROTATION:
+			from_a[i] = target.getRotation();
+			break;
+		case MMMTween.TINT:
+			from_color[i] = target.getTintColor();
+			target.useTint();
+			break;
+		}
+		
+		started[i] = true;
+		
+	}
+	
+	/** Apply the eased progress <code>p</code> of a slot to its target. **/
+	private void apply(final int i, final float p) {
+		
+		final MMMAnimation target = targets[i];
+		final float a = from_a[i] + (to_a[i] - from_a[i]) * p;
+		
+		switch (properties[i]) {
+		case MMMTween.X:
+			target.setLocation(a, target.getY());
+			break;
+		case MMMTween.Y:
+			target.setLocation(target.getX(), a);
+			break;
+		case MMMTween.POSITION:
+			target.setLocation(a, from_b[i] + (to_b[i] - from_b[i]) * p);
+			break;
+		case MMMTween.LAYER:
+			target.setLocation(target.getX(), target.getY(), a);
+			break;
+		case MMMTween.SCALE:
+			target.setScale(a);
+			break;
+		case MMMTween.ROTATION:
+			target.setRotation(Math.round(a));
+			break;
+		case MMMTween.TINT:
+			target.setTintColor(lerpColor(from_color[i], to_color[i], p));
+			break;
+		}
+		
+	}
+	
+	/** Finish a slot, start its successor, and notify its listener. **/
+	private void complete(final int i) {
+		
+		final int done = handle(i);
+		final MMMAnimation target = targets[i];
+		final MMMTweenListener listener = listeners[i];
+		final int successor = next[i];
+		
+		removeActive(i);
+		free(i);
+		
+		if (successor != -1) {
+			prev[successor] = -1;
+			addActive(successor);
+			// The successor starts counting on the next update.
+			stamps[successor] = update_stamp;
+		}
+		
+		if (listener != null)
+			listener.onTweenComplete(done, target);
+		
+	}
+	
+	/** Interpolate each of the four ARGB channels separately. **/
+	private static int lerpColor(final int from, final int to, final float p) {
+		int rtn_val = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			final int a = (from >>> shift) & 0xFF;
+			final int b = (to >>> shift) & 0xFF;
+			int c = Math.round(a + (b - a) * p);
+			if (c < 0)
+				c = 0;
+			else if (c > 255)
+				c = 255;
+			rtn_val |= c << shift;
+		}
+		return rtn_val;
+	}
+	
+	/** Obtain and initialize a slot, and make it active. **/
+	private int create(final MMMAnimation target, final int property, final long duration, final int easing) {
+		if (target == null)
+			throw new IllegalArgumentException("a tween must have a target");
+		if (duration < 0)
+			throw new IllegalArgumentException("duration cannot be negative");
+		if (easing < MMMTween.LINEAR || easing > MMMTween.BOUNCE_OUT)
+			throw new IllegalArgumentException("unknown easing " + easing);
+		
+		if (free_count == 0) {
+			if (capacity == MAX_CAPACITY)
+				throw new IllegalStateException("no more than " + MAX_CAPACITY + " tweens may be alive at once");
+			grow(Math.min(capacity * 2, MAX_CAPACITY));
+		}
+		
+		final int i = free_slots[--free_count];
+		
+		targets[i] = target;
+		properties[i] = property;
+		easings[i] = easing;
+		durations[i] = duration;
+		elapsed[i] = 0;
+		delays[i] = 0;
+		started[i] = false;
+		listeners[i] = null;
+		next[i] = -1;
+		prev[i] = -1;
+		stamps[i] = update_stamp;
+		
+		addActive(i);
+		
+		return i;
+	}
+	
+	/** Return a slot to the free stack and invalidate its handle. **/
+	private void free(final int i) {
+		states[i] = STATE_FREE;
+		targets[i] = null;
+		listeners[i] = null;
+		next[i] = -1;
+		prev[i] = -1;
+		generations[i] = (generations[i] + 1) & GENERATION_MASK;
+		free_slots[free_count++] = i;
+	}
+	
+	private void addActive(final int i) {
+		states[i] = STATE_ACTIVE;
+		elapsed[i] = -delays[i];
+		active[active_count] = i;
+		active_pos[i] = active_count;
+		active_count++;
+	}
+	
+	private void removeActive(final int i) {
+		final int pos = active_pos[i];
+		final int last = active[--active_count];
+		active[pos] = last;
+		active_pos[last] = pos;
+	}
+	
+	private int handle(final int i) {
+		return (generations[i] << INDEX_BITS) | i;
+	}
+	
+	/**
+	 * Find the slot index referred to by a handle.
+	 * @return The slot index, or -1 if the handle is stale or invalid.
+	 */
+	private int resolve(final int handle) {
+		if (handle < 0)
+			return -1;
+		final int i = handle & INDEX_MASK;
+		if (i >= capacity || states[i] == STATE_FREE || generations[i] != (handle >>> INDEX_BITS))
+			return -1;
+		return i;
+	}
+	
+	/** Grow every slot array to the new capacity and push the new slots as free. **/
+	private void grow(final int new_capacity) {
+		
+		final int old = capacity;
+		
+		MMMAnimation[] t = new MMMAnimation[new_capacity];
+		System.arraycopy(targets, 0, t, 0, old);
+		targets = t;
+		
+		MMMTweenListener[] l = new MMMTweenListener[new_capacity];
+		System.arraycopy(listeners, 0, l, 0, old);
+		listeners = l;
+		
+		boolean[] s = new boolean[new_capacity];
+		System.arraycopy(started, 0, s, 0, old);
+		started = s;
+		
+		properties = growInts(properties, new_capacity);
+		easings = growInts(easings, new_capacity);
+		states = growInts(states, new_capacity);
+		generations = growInts(generations, new_capacity);
+		from_color = growInts(from_color, new_capacity);
+		to_color = growInts(to_color, new_capacity);
+		next = growInts(next, new_capacity);
+		prev = growInts(prev, new_capacity);
+		stamps = growInts(stamps, new_capacity);
+		free_slots = growInts(free_slots, new_capacity);
+		active = growInts(active, new_capacity);
+		active_pos = growInts(active_pos, new_capacity);
+		
+		from_a = growFloats(from_a, new_capacity);
+		from_b = growFloats(from_b, new_capacity);
+		to_a = growFloats(to_a, new_capacity);
+		to_b = growFloats(to_b, new_capacity);
+		
+		durations = growLongs(durations, new_capacity);
+		elapsed = growLongs(elapsed, new_capacity);
+		delays = growLongs(delays, new_capacity);
+		
+		// Push in reverse so that the lowest slots are handed out first.
+		for (int i = new_capacity - 1; i >= old; i--)
+			free_slots[free_count++] = i;
+		
+		capacity = new_capacity;
+		
+	}
+	
+	private static int[] growInts(final int[] src, final int length) {
+		final int[] rtn_val = new int[length];
+		System.arraycopy(src, 0, rtn_val, 0, src.length);
+		return rtn_val;
+	}
+	
+	private static float[] growFloats(final float[] src, final int length) {
+		final float[] rtn_val = new float[length];
+		System.arraycopy(src, 0, rtn_val, 0, src.length);
+		return rtn_val;
+	}
+	
+	private static long[] growLongs(final long[] src, final int length) {
+		final long[] rtn_val = new long[length];
+		System.arraycopy(src, 0, rtn_val, 0, src.length);
+		return rtn_val;
+	}
+	
+}
@@ -0,0 +1,257 @@
+package com.mmm.gameengine;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.view.Choreographer;
+
+/**
+ * The ChoreographerFramePacer class starts frames on display vsync, as
+ * reported by Choreographer frame callbacks, so frames are shown for an even
+ * number of refreshes rather than juddering. When frames keep missing a
+ * refresh it runs one frame every second (then third...) refresh instead,
+ * and returns to every refresh once frames fit again.
+ * <BR>
+ * Refreshes come from a VsyncSource. By default this is Choreographer,
+ * which needs a Looper the game thread does not have, so its callbacks run
+ * on a small thread of their own. Refreshes are only requested while the
+ * game thread is waiting for frames, so an idle game does not wake on every
+ * refresh.
+ * <BR>
+ * The FrameClock stamps frames started without a refresh (when woken, or
+ * when no refresh arrives within VSYNC_TIMEOUT, as with the display off),
+ * and does the waiting for refreshes. Given a fake VsyncSource and a fake
+ * FrameClock, the pacing and divisor logic run without a display, and
+ * without real threads or waits.
+ * <BR>
+ * Requires API 16. GameThread.createDefaultPacer() falls back to a
+ * SleepFramePacer on older versions.
+ *
+ * @author Michael Morris
+ * @version 1.2.0
+ *
+ */
+public class ChoreographerFramePacer implements FramePacer {
+	
+	/** The refresh interval assumed until measured, 60Hz. **/
+	private static final long DEFAULT_VSYNC_INTERVAL = 1000000000L / 60;
+	
+	/** The longest wait for a refresh before a frame starts without one, in nanoseconds. **/
+	public static final long VSYNC_TIMEOUT = 100000000L;
+	
+	/** Callbacks stop being requested after this many refreshes without a frame. **/
+	private static final int IDLE_VSYNCS = 8;
+	
+	private final VsyncSource vsync;
+	
+	private final FrameRateGovernor governor;
+	
+	private final FrameClock clock;
+	
+	/** Guards everything below, shared with the vsync thread. **/
+	private final Object lock = new Object();
+	
+	/** The number of refreshes seen, and the time of the last. **/
+	private long vsync_count;
+	private long last_vsync_nanos;
+	
+	/** The measured refresh interval. **/
+	private long vsync_interval = DEFAULT_VSYNC_INTERVAL;
+	
+	/** The refresh at which the last frame started. **/
+	private long frame_vsync;
+	
+	/** Whether a refresh is currently requested. **/
+	private boolean callback_posted;
+	
+	private boolean woken, released;
+	
+	/**
+	 * Create a new ChoreographerFramePacer, which may run as slowly as one
+	 * frame every fourth refresh.
+	 */
+	public ChoreographerFramePacer() {
+		this(4);
+	}
+	
+	/**
+	 * Create a new ChoreographerFramePacer on the system clock.
+	 * @param max_divisor The most refreshes one frame may be given. 1 never lowers the rate.
+	 */
+	public ChoreographerFramePacer(final int max_divisor) {
+		this(max_divisor, FrameClock.SYSTEM);
+	}
+	
+	/**
+	 * Create a new ChoreographerFramePacer, taking refreshes from Choreographer.
+	 * @param max_divisor The most refreshes one frame may be given. 1 never lowers the rate.
+	 * @param the_clock The clock waiting for refreshes, timing out those waits, and stamping frames started without one.
+	 */
+	public ChoreographerFramePacer(final int max_divisor, final FrameClock the_clock) {
+		this(max_divisor, the_clock, new ChoreographerVsync());
+	}
+	
+	/**
+	 * Create a new ChoreographerFramePacer.
+	 * @param max_divisor The most refreshes one frame may be given. 1 never lowers the rate.
+	 * @param the_clock The clock waiting for refreshes, timing out those waits, and stamping frames started without one.
+	 * @param the_vsync The source of refreshes, released with the pacer.
+	 */
+	public ChoreographerFramePacer(final int max_divisor, final FrameClock the_clock, final VsyncSource the_vsync) {
+		if (the_clock == null)
+			throw new IllegalArgumentException("clock cannot be null");
+		if (the_vsync == null)
+			throw new IllegalArgumentException("vsync source cannot be null");
+		
+		clock = the_clock;
+		vsync = the_vsync;
+		governor = new FrameRateGovernor(max_divisor);
+	}
+	
+	public long awaitFrame() throws InterruptedException {
+		
+		synchronized (lock) {
+			if (released)
+				throw new IllegalStateException("pacer has been released");
+			
+			// The frame is due a whole number of refreshes after the last one.
+			final long due = frame_vsync + governor.getDivisor();
+			final long give_up = clock.nanoTime() + VSYNC_TIMEOUT;
+			
+			boolean on_vsync = true;
+			while (vsync_count < due && !woken) {
+				if (!callback_posted) {
+					callback_posted = true;
+					vsync.requestVsync(this);
+				}
+				if (clock.nanoTime() >= give_up) {
+					on_vsync = false;
+					break;
+				}
+				clock.waitUntil(lock, give_up);
+			}
+			
+			// Woken, or no refresh came: the last refresh is stale, so start the frame now.
+			if (woken)
+				on_vsync = false;
+			woken = false;
+			frame_vsync = vsync_count;
+			return on_vsync ? last_vsync_nanos : clock.nanoTime();
+		}
+		
+	}
+	
+	/**
+	 * Called by the VsyncSource at each requested refresh.
+	 * @param frame_time_nanos The time of the refresh, on the same time base as the FrameClock.
+	 */
+	public void doFrame(final long frame_time_nanos) {
+		
+		synchronized (lock) {
+			
+			// Measure the refresh interval from back to back callbacks.
+			if (callback_posted && last_vsync_nanos != 0) {
+				final long delta = frame_time_nanos - last_vsync_nanos;
+				if (delta > vsync_interval / 2 && delta < vsync_interval * 3 / 2)
+					vsync_interval = (vsync_interval * 7 + delta) / 8;
+			}
+			
+			vsync_count++;
+			last_vsync_nanos = frame_time_nanos;
+			lock.notifyAll();
+			
+			// Keep the refreshes coming while frames are being waited for.
+			if (!released && vsync_count - frame_vsync < IDLE_VSYNCS + governor.getDivisor())
+				vsync.requestVsync(this);
+			else
+				callback_posted = false;
+		}
+		
+	}
+	
+	public void frameDone(final long frame_nanos) {
+		synchronized (lock) {
+			governor.frameDone(frame_nanos, vsync_interval);
+		}
+	}
+	
+	public void wake() {
+		synchronized (lock) {
+			woken = true;
+			lock.notifyAll();
+		}
+	}
+	
+	public long getFrameInterval() {
+		synchronized (lock) {
+			return vsync_interval * governor.getDivisor();
+		}
+	}
+	
+	public void reset() {
+		synchronized (lock) {
+			// Start the next frame on the next refresh.
+			frame_vsync = vsync_count - governor.getDivisor() + 1;
+		}
+	}
+	
+	public void release() {
+		synchronized (lock) {
+			released = true;
+			woken = true;
+			lock.notifyAll();
+		}
+		vsync.release();
+	}
+	
+	/** Retrieve the number of times the frame rate has been lowered. **/
+	public int getRateDropCount() {
+		synchronized (lock) {
+			return governor.getDropCount();
+		}
+	}
+	
+	/**
+	 * The default VsyncSource, taking refreshes from Choreographer frame
+	 * callbacks on a thread of its own.
+	 */
+	private static final class ChoreographerVsync implements VsyncSource, Choreographer.FrameCallback, Runnable {
+		
+		private final HandlerThread thread;
+		private final Handler handler;
+		
+		/** The pacer to tell of the next refresh. **/
+		private volatile ChoreographerFramePacer pacer;
+		
+		ChoreographerVsync() {
+			thread = new HandlerThread("ChoreographerFramePacer", Process.THREAD_PRIORITY_DISPLAY);
+			thread.start();
+			handler = new Handler(thread.getLooper());
+		}
+		
+		public void requestVsync(final ChoreographerFramePacer the_pacer) {
+			pacer = the_pacer;
+			
+			// Choreographer belongs to the thread's Looper, so requests from elsewhere are posted to it.
+			if (Looper.myLooper() == thread.getLooper())
+				Choreographer.getInstance().postFrameCallback(this);
+			else
+				handler.post(this);
+		}
+		
+		public void run() {
+			Choreographer.getInstance().postFrameCallback(this);
+		}
+		
+		public void doFrame(final long frame_time_nanos) {
+			pacer.doFrame(frame_time_nanos);
+		}
+		
+		public void release() {
+			thread.quit();
+		}
+		
+	}
+	
+}
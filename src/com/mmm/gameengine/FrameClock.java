@@ -0,0 +1,59 @@
+package com.mmm.gameengine;
+
+/**
+ * The FrameClock interface is the source of time for a FramePacer, and
+ * how it sleeps and waits. The pacers use SYSTEM; a fake clock, which simply
+ * advances when asked to sleep or wait, lets pacing be exercised without
+ * waiting in real time.
+ *
+ * @author Michael Morris
+ * @version 1.1.0
+ *
+ */
+public interface FrameClock {
+	
+	/** The clock of the running system, backed by System.nanoTime(), Thread.sleep(), and Object.wait(). **/
+	public static final FrameClock SYSTEM = new FrameClock() {
+		
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+		
+		public void sleepUntil(final long nanos) throws InterruptedException {
+			final long remaining = nanos - System.nanoTime();
+			if (remaining > 0)
+				Thread.sleep(remaining / 1000000L, (int)(remaining % 1000000L));
+		}
+		
+		public void waitUntil(final Object monitor, final long nanos) throws InterruptedException {
+			final long remaining = nanos - System.nanoTime();
+			if (remaining > 0)
+				monitor.wait(Math.max(remaining / 1000000L, 1));
+		}
+		
+	};
+	
+	/**
+	 * Retrieve the current time.
+	 * @return The time, in nanoseconds, from an arbitrary origin.
+	 */
+	public long nanoTime();
+	
+	/**
+	 * Sleep until the given time, returning at once if it has passed.
+	 * @param nanos The time to wake at, as returned by nanoTime().
+	 * @throws InterruptedException if interrupted while sleeping.
+	 */
+	public void sleepUntil(final long nanos) throws InterruptedException;
+	
+	/**
+	 * Wait on a monitor held by the caller until it is notified or the given
+	 * time, returning at once if it has passed. Like Object.wait(), it may
+	 * also return early for no reason, so callers wait in a loop.
+	 * @param monitor The monitor to wait on, which must be held.
+	 * @param nanos The time to give up at, as returned by nanoTime().
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public void waitUntil(final Object monitor, final long nanos) throws InterruptedException;
+	
+}
@@ -0,0 +1,56 @@
+package com.mmm.gameengine;
+
+/**
+ * The FramePacer interface decides when the GameThread starts each frame.
+ * SleepFramePacer sleeps out the rest of a fixed frame interval, and works
+ * everywhere; ChoreographerFramePacer starts frames on display vsync
+ * (API 16). Both lower the frame rate when frames keep taking longer than
+ * the target, and raise it again once they fit.
+ * <BR>
+ * To use a particular pacer:
+ *
+ * <code>gameView.getGameThread().setFramePacer(new SleepFramePacer(30));</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public interface FramePacer {
+	
+	/**
+	 * Block until the next frame should start.
+	 * @return The start time of the frame, in nanoseconds on the pacers clock.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public long awaitFrame() throws InterruptedException;
+	
+	/**
+	 * Report how long the frame just finished took, so the pacer can adapt
+	 * the frame rate.
+	 * @param frame_nanos The time spent drawing and updating, in nanoseconds.
+	 */
+	public void frameDone(final long frame_nanos);
+	
+	/**
+	 * Wake a thread blocked in awaitFrame(), for instance to stop it.
+	 */
+	public void wake();
+	
+	/**
+	 * Retrieve the current target time between frames.
+	 * @return The frame interval, in nanoseconds.
+	 */
+	public long getFrameInterval();
+	
+	/**
+	 * Forget the previous frame, so the next awaitFrame() does not try to
+	 * make up for time spent idle or paused.
+	 */
+	public void reset();
+	
+	/**
+	 * Free anything held by the pacer. It must not be used afterwards.
+	 */
+	public void release();
+	
+}
@@ -0,0 +1,74 @@
+package com.mmm.gameengine;
+
+/**
+ * The FrameRateGovernor class holds the adaptive rate logic shared by the
+ * frame pacers. Frames are run once every <code>divisor</code> base
+ * intervals (display refreshes, or fixed ticks). Over each window of frames,
+ * if a quarter or more missed the current interval the divisor goes up, and
+ * if every frame would have fit the next faster interval it comes down.
+ */
+final class FrameRateGovernor {
+	
+	/** The number of frames judged together. **/
+	static final int WINDOW = 30;
+	
+	/** Frames faster than this fraction of the next faster interval count as fitting it. **/
+	private static final float HEADROOM = 0.8f;
+	
+	private final int max_divisor;
+	private int divisor = 1;
+	
+	private int frames, misses, fits_faster;
+	
+	/** The number of times the rate has been lowered, and raised. **/
+	private int drop_count, raise_count;
+	
+	FrameRateGovernor(final int the_max_divisor) {
+		if (the_max_divisor < 1)
+			throw new IllegalArgumentException("max divisor must be at least 1");
+		max_divisor = the_max_divisor;
+	}
+	
+	int getDivisor() {
+		return divisor;
+	}
+	
+	int getDropCount() {
+		return drop_count;
+	}
+	
+	int getRaiseCount() {
+		return raise_count;
+	}
+	
+	/**
+	 * Judge a finished frame.
+	 * @param frame_nanos The time the frame took.
+	 * @param base_interval The base interval, in nanoseconds.
+	 */
+	void frameDone(final long frame_nanos, final long base_interval) {
+		
+		frames++;
+		if (frame_nanos > base_interval * divisor)
+			misses++;
+		if (divisor > 1 && frame_nanos < base_interval * (divisor - 1) * HEADROOM)
+			fits_faster++;
+		
+		if (frames < WINDOW)
+			return;
+		
+		if (misses * 4 >= frames && divisor < max_divisor) {
+			divisor++;
+			drop_count++;
+		} else if (divisor > 1 && fits_faster == frames) {
+			divisor--;
+			raise_count++;
+		}
+		
+		frames = 0;
+		misses = 0;
+		fits_faster = 0;
+		
+	}
+	
+}
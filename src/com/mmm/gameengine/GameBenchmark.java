@@ -0,0 +1,250 @@
+package com.mmm.gameengine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * The GameBenchmark class measures how the engine scales, by running
+ * synthetic scenes of growing entity counts through the GameEngine and
+ * recording the frame rate and 99th percentile frame time of each. Every
+ * frame is run as the GameThread runs it, drawing then updating, but back
+ * to back on the calling thread and drawing through a GameRenderer (usually
+ * a GameSoftwareRenderer), so no display or GameView is needed.
+ * <BR>
+ * The results are written as CSV, one row per scenario and entity count,
+ * to be kept per release and compared as scaling curves.
+ * <BR>
+ * The GameEngine is shared, so the scenes are added to it as states for
+ * the length of their run and removed again afterwards; the state current
+ * before is switched back to.
+ * <BR>
+ * To use:
+ *
+ * <code>GameBenchmark bench = new GameBenchmark(new GameSoftwareRenderer(800, 480), 60, 600, 16);</code>
+ *
+ * <code>bench.run(scenario, new int[] { 100, 1000, 10000, 100000 });</code>
+ *
+ * <code>bench.writeCsv(writer);</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public class GameBenchmark {
+	
+	/**
+	 * The Scenario interface builds the synthetic scenes run by a
+	 * GameBenchmark.
+	 */
+	public interface Scenario {
+		
+		/** Retrieve the name of the scenario, as written in the CSV. **/
+		public String getName();
+		
+		/**
+		 * Create a scene of the given number of entities. Loading belongs in
+		 * its init(), which is not timed, and releasing in its cleanup().
+		 * @param state_id The state ID to give the scene, unused by any other state.
+		 * @param entity_count The number of entities.
+		 * @return The scene.
+		 */
+		public RendererGameState createState(final int state_id, final int entity_count);
+		
+	}
+	
+	/** The state ID given to every scene. **/
+	public static final int STATE_ID = 0x7FFFBE00;
+	
+	private final GameRenderer renderer;
+	private final int warmup_frames;
+	private final int frames;
+	private final long frame_dt;
+	
+	/** The nanoseconds taken by every measured frame of a run, reused. **/
+	private final long[] frame_nanos;
+	
+	/** One row per run. **/
+	private String[] names = new String[16];
+	private int[] entity_counts = new int[16];
+	private double[] fps = new double[16];
+	private long[] mean_nanos = new long[16];
+	private long[] p99_nanos = new long[16];
+	private long[] max_nanos = new long[16];
+	private int run_count;
+	
+	/**
+	 * Create a new GameBenchmark.
+	 * @param the_renderer The renderer every scene draws through.
+	 * @param the_warmup_frames The frames run, and not measured, before each measurement.
+	 * @param the_frames The frames measured per run.
+	 * @param the_frame_dt The milliseconds passed to every update.
+	 */
+	public GameBenchmark(final GameRenderer the_renderer, final int the_warmup_frames, final int the_frames, final long the_frame_dt) {
+		if (the_renderer == null)
+			throw new IllegalArgumentException("renderer cannot be null");
+		if (the_warmup_frames < 0 || the_frames < 1)
+			throw new IllegalArgumentException("must measure at least 1 frame");
+		
+		renderer = the_renderer;
+		warmup_frames = the_warmup_frames;
+		frames = the_frames;
+		frame_dt = the_frame_dt;
+		frame_nanos = new long[frames];
+	}
+	
+	/**
+	 * Run a scenario at every entity count given, in order, adding a row for
+	 * each.
+	 * @param scenario The scenario.
+	 * @param counts The entity counts.
+	 */
+	public void run(final Scenario scenario, final int[] counts) {
+		for (int i = 0; i < counts.length; i++) {
+			run(scenario, counts[i]);
+		}
+	}
+	
+	/**
+	 * Run a scenario at one entity count, adding a row.
+	 * @param scenario The scenario.
+	 * @param count The entity count.
+	 * @throws IllegalStateException if the scene could not be added or initialized.
+	 */
+	public void run(final Scenario scenario, final int count) {
+		
+		final GameEngine ge = GameEngine.getInstance();
+		final GameState previous = ge.getCurrentState();
+		
+		final RendererGameState scene = scenario.createState(STATE_ID, count);
+		if (!ge.addState(scene))
+			throw new IllegalStateException("state " + STATE_ID + " is already in use");
+		
+		long total = 0;
+		try {
+			if (!scene.init())
+				throw new IllegalStateException(scenario.getName() + " failed to initialize " + count + " entities");
+			ge.switchToState(STATE_ID);
+			
+			for (int i = 0; i < warmup_frames; i++) {
+				runFrame(ge);
+			}
+			
+			for (int i = 0; i < frames; i++) {
+				final long start = System.nanoTime();
+				runFrame(ge);
+				frame_nanos[i] = System.nanoTime() - start;
+				total += frame_nanos[i];
+			}
+		} finally {
+			if (previous != null)
+				ge.switchToState(previous.getStateId());
+			ge.removeState(STATE_ID);
+			scene.cleanup();
+		}
+		
+		Arrays.sort(frame_nanos);
+		
+		if (run_count == names.length)
+			grow();
+		names[run_count] = scenario.getName();
+		entity_counts[run_count] = count;
+		fps[run_count] = total > 0 ? frames * 1000000000.0 / total : 0;
+		mean_nanos[run_count] = total / frames;
+		p99_nanos[run_count] = frame_nanos[Math.max(0, (int)Math.ceil(0.99 * frames) - 1)];
+		max_nanos[run_count] = frame_nanos[frames - 1];
+		run_count++;
+		
+	}
+	
+	/** Draw and update one frame, as the GameThread does. **/
+	private void runFrame(final GameEngine ge) {
+		GameTrace.begin("frame");
+		try {
+			ge.beginFrame();
+			
+			// The scene may have switched away from itself, so draw whatever is current.
+			final GameState current = ge.getCurrentState();
+			GameTrace.begin("draw");
+			try {
+				if (current instanceof RendererGameState)
+					((RendererGameState)current).draw(renderer);
+			} finally {
+				GameTrace.end();
+			}
+			
+			GameTrace.begin("update");
+			try {
+				ge.update(frame_dt);
+			} finally {
+				GameTrace.end();
+			}
+		} finally {
+			GameTrace.end();
+		}
+	}
+	
+	/** Retrieve the number of runs recorded. **/
+	public int getRunCount() {
+		return run_count;
+	}
+	
+	/** Retrieve the frames per second of a run. **/
+	public double getFps(final int run) {
+		return fps[run];
+	}
+	
+	/** Retrieve the 99th percentile frame time of a run, in nanoseconds. **/
+	public long getP99Nanos(final int run) {
+		return p99_nanos[run];
+	}
+	
+	/**
+	 * Write every run as CSV, with a header row of
+	 * <code>scenario,entities,fps,mean_ms,p99_ms,max_ms</code>.
+	 * @param writer The writer. It is flushed, not closed.
+	 * @throws IOException if writing failed.
+	 */
+	public void writeCsv(final Writer writer) throws IOException {
+		writer.write("scenario,entities,fps,mean_ms,p99_ms,max_ms\n");
+		for (int i = 0; i < run_count; i++) {
+			writer.write(names[i] + "," + entity_counts[i] + "," + format(fps[i]) + "," + format(mean_nanos[i] / 1000000.0) + ","
+					+ format(p99_nanos[i] / 1000000.0) + "," + format(max_nanos[i] / 1000000.0) + "\n");
+		}
+		writer.flush();
+	}
+	
+	/** A number to two decimal places, without depending on the locale. **/
+	private static String format(final double value) {
+		final long hundredths = Math.round(value * 100);
+		final long fraction = hundredths % 100;
+		return (hundredths / 100) + (fraction < 10 ? ".0" : ".") + fraction;
+	}
+	
+	private void grow() {
+		final int size = names.length * 2;
+		
+		final String[] new_names = new String[size];
+		System.arraycopy(names, 0, new_names, 0, run_count);
+		names = new_names;
+		
+		final int[] new_counts = new int[size];
+		System.arraycopy(entity_counts, 0, new_counts, 0, run_count);
+		entity_counts = new_counts;
+		
+		final double[] new_fps = new double[size];
+		System.arraycopy(fps, 0, new_fps, 0, run_count);
+		fps = new_fps;
+		
+		mean_nanos = grow(mean_nanos, size);
+		p99_nanos = grow(p99_nanos, size);
+		max_nanos = grow(max_nanos, size);
+	}
+	
+	private static long[] grow(final long[] src, final int size) {
+		final long[] rtn_val = new long[size];
+		System.arraycopy(src, 0, rtn_val, 0, src.length);
+		return rtn_val;
+	}
+	
+}
@@ -0,0 +1,102 @@
+package com.mmm.gameengine;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.LightingColorFilter;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * The GameCanvasRenderer class is a GameRenderer drawing on an
+ * android.graphics.Canvas, set before every frame. The destination
+ * rectangle and tint Paint are reused, so drawing does not allocate unless
+ * the tint color changes.
+ * <BR>
+ * To use:
+ *
+ * <code>renderer.setCanvas(canvas);</code>
+ *
+ * <code>state.draw(renderer);</code>
+ *
+ * @author Michael Morris
+ * @version 1.1.0
+ *
+ */
+public class GameCanvasRenderer implements GameRenderer {
+	
+	private Canvas canvas;
+	
+	private final RectF dst = new RectF();
+	
+	/** The Paint used to draw tinted, and the tint color it was last set up for. **/
+	private final Paint tint_paint = new Paint();
+	private int tint_paint_color;
+	private boolean tint_paint_ready = false;
+	
+	public GameCanvasRenderer() {
+		tint_paint.setAntiAlias(true);
+	}
+	
+	/**
+	 * Set the Canvas to draw on.
+	 * @param c The canvas.
+	 */
+	public void setCanvas(final Canvas c) {
+		canvas = c;
+	}
+	
+	/** Retrieve the Canvas being drawn on. **/
+	public Canvas getCanvas() {
+		return canvas;
+	}
+	
+	public int getWidth() {
+		return canvas.getWidth();
+	}
+	
+	public int getHeight() {
+		return canvas.getHeight();
+	}
+	
+	public void clear(final int color) {
+		canvas.drawColor(color);
+	}
+	
+	public void drawBitmap(final Bitmap bitmap, final Rect src, final float left, final float top, final float width, final float height,
+			final float rotation, final boolean tinted, final int tint_color) {
+		
+		Paint p = null;
+		if (tinted) {
+			if (!tint_paint_ready || tint_paint_color != tint_color) {
+				tint_paint.setColor(tint_color);
+				tint_paint.setColorFilter(new LightingColorFilter(tint_color, 1));
+				tint_paint_color = tint_color;
+				tint_paint_ready = true;
+			}
+			p = tint_paint;
+		}
+		
+		dst.left = left;
+		dst.top = top;
+		dst.right = left + width;
+		dst.bottom = top + height;
+		
+		if (rotation == 0) {
+			canvas.drawBitmap(bitmap, src, dst, p);
+			return;
+		}
+		
+		final float cx = left + width * 0.5f;
+		final float cy = top + height * 0.5f;
+		canvas.rotate(rotation, cx, cy);
+		canvas.drawBitmap(bitmap, src, dst, p);
+		canvas.rotate(-rotation, cx, cy);
+		
+	}
+	
+	/** Nothing is held back or kept, so there is nothing to forget. **/
+	public void release(final Bitmap bitmap) {
+	}
+	
+}
@@ -1,8 +1,11 @@
 package com.mmm.gameengine;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 
+import android.view.MotionEvent;
+
 /**
  * The GameEngine class is a simple implementation of a state manager. It facilitates
  * easy global access (with acceptable levels of security) to GameState's which are
@@ -42,10 +45,43 @@ import java.util.TreeMap;
  * <code>setContentView(gv);</code>
  * 
  * All done!
+ * <BR>
+ * Every added state is given its own GameTimerWheel, advanced by update()
+ * only while that state is current. Delayed actions, cooldowns, etc. should
+ * be scheduled on it rather than counted by hand.
+ * 
+ * <code>ge.getTimerWheel(ID_HERE).schedule(2000, listener, 0)</code>
+ * 
+ * switchToState() must only be called from the game thread (from within a
+ * states update(), a timer, or an event handler). From any other thread,
+ * such as a UI callback, use
+ * 
+ * <code>ge.requestSwitchToState(ID_HERE)</code>
+ * 
+ * which is carried to the game thread by the engines GameEventBus.
+ * <BR>
+ * Every added state also has its own GameResourceScope. Resources registered
+ * with it load lazily when first used, and are released when the state is
+ * left, unless the scope is kept warm.
+ * 
+ * <code>ge.getResourceScope(ID_HERE).add(resource)</code>
+ * <BR>
+ * Games whose screens are often static (menus, turn based play) can turn
+ * continuous rendering off. The GameThread then stops running frames while
+ * nothing needs redrawing, and resumes when requestRender() is called, a
+ * touch arrives, an event is queued, or a timer is pending.
+ * 
+ * <code>ge.setContinuousRendering(false)</code>
+ * <BR>
+ * Objects spawned and despawned often (enemies, projectiles) should come from
+ * a GameObjectPool, registered with the engine by type so any state can find
+ * it.
+ * 
+ * <code>ge.registerPool(Bullet.class, new GameObjectPool&lt;Bullet&gt;(factory, 64))</code>
  * 
  * Last Edited by: Michael Morris (7.8.2012)
  * @author Michael Morris
- * @version 1.0.1
+ * @version 1.0.7
  *
  */
 public final class GameEngine {
@@ -56,6 +92,18 @@ public final class GameEngine {
 	 */
 	private static GameEngine _instance = null;
 	
+	/**
+	 * The event type reserved by the GameEngine for requestSwitchToState().
+	 * Types registered by games should start from 1.
+	 */
+	public static final int EVENT_SWITCH_STATE = 0;
+	
+	/** The number of event types available on the engines event bus. **/
+	public static final int EVENT_TYPE_COUNT = 32;
+	
+	/** The number of events which may wait on the engines event bus at once. **/
+	public static final int EVENT_QUEUE_CAPACITY = 256;
+	
 	/**
 	 * Retrieve the previously instantiated game instance. If
 	 * none has been created go ahead and create a new instance.
@@ -78,11 +126,70 @@ public final class GameEngine {
 	 */
 	private GameState current_state = null;
 	
+	/**
+	 * The game time timer wheel of each game state.
+	 */
+	private Map<Integer, GameTimerWheel> timer_wheels;
+	
+	/**
+	 * The timer wheel of the current game state.
+	 */
+	private GameTimerWheel current_timers = null;
+	
+	/**
+	 * The resource scope of each game state.
+	 */
+	private Map<Integer, GameResourceScope> resource_scopes;
+	
+	/**
+	 * The object pool of each registered type.
+	 */
+	private final Map<Class<?>, GameObjectPool<?>> pools = new HashMap<Class<?>, GameObjectPool<?>>();
+	
+	/**
+	 * The event bus carrying events from any thread to the game thread.
+	 */
+	private final GameEventBus event_bus;
+	
+	/**
+	 * The recorder of update time deltas and touch events, or null.
+	 */
+	private volatile GameRecorder recorder = null;
+	
+	/**
+	 * Whether frames run all the time, rather than only when something needs redrawing.
+	 */
+	private volatile boolean continuous_rendering = true;
+	
+	/**
+	 * Set when something has changed which needs to be drawn.
+	 */
+	private volatile boolean render_requested = true;
+	
+	/**
+	 * Notified whenever render_requested is set, waking an idle GameThread.
+	 */
+	private final Object work_lock = new Object();
+	
 	/**
 	 * A private constructor to prevent instantiation without using getInstance().
 	 */
 	private GameEngine() { 
 		game_states = new TreeMap<Integer, GameState>();
+		timer_wheels = new TreeMap<Integer, GameTimerWheel>();
+		resource_scopes = new TreeMap<Integer, GameResourceScope>();
+		
+		event_bus = new GameEventBus(EVENT_TYPE_COUNT, EVENT_QUEUE_CAPACITY);
+		event_bus.registerType(EVENT_SWITCH_STATE, new GameEventFactory() {
+			public GameEvent create(final int type) {
+				return new SwitchStateEvent();
+			}
+		}, 8);
+		event_bus.subscribe(EVENT_SWITCH_STATE, new GameEventHandler() {
+			public void onEvent(final GameEvent event) {
+				switchToState(((SwitchStateEvent)event).state_id);
+			}
+		});
 	}
 	
 	/**
@@ -107,17 +214,46 @@ public final class GameEngine {
 		boolean ok = false;
 		if (!game_states.containsKey(state.getStateId())) {
 			game_states.put(state.getStateId(), state);
+			timer_wheels.put(state.getStateId(), new GameTimerWheel());
+			resource_scopes.put(state.getStateId(), new GameResourceScope(state.getStateId()));
 			ok = true;
 			
 			// If this is the first state being added, then automatically switch to it.
-			if (game_states.size() == 1)
+			if (game_states.size() == 1) {
 				current_state = state;
+				current_timers = timer_wheels.get(state.getStateId());
+			}
 			
 		}
 		
 		return ok;
 	}
 	
+	/**
+	 * Remove the state with the given ID from the list of accessible game
+	 * states, releasing its resource scope and dropping its timers. If it is
+	 * the current state it is left first, and there is no current state
+	 * until another is switched to. Its cleanup() is not called.
+	 * @param ID The unique integer ID of the state.
+	 * @return True if removed, false if there is no such state.
+	 */
+	public final boolean removeState(final int ID) {
+		final GameState state = game_states.get(ID);
+		if (state == null)
+			return false;
+		
+		if (state == current_state) {
+			state.leaving();
+			current_state = null;
+			current_timers = null;
+		}
+		
+		game_states.remove(ID);
+		timer_wheels.remove(ID);
+		resource_scopes.remove(ID).release();
+		return true;
+	}
+	
 	/**
 	 * Switch to the state specified by the ID. The state must have been
 	 * added to the list of available states.
@@ -129,22 +265,70 @@ public final class GameEngine {
 		boolean ok = false;
 		if (game_states.containsKey(ID)) {
 			
-			// Leave the current state. If one exists.
-			if (current_state != null)
-				current_state.leaving();
+			GameTrace.begin("switchToState");
+			try {
 			
-			// Switch the actual state.
-			current_state = game_states.get(ID);
+				// Leave the current state. If one exists.
+				if (current_state != null) {
+					current_state.leaving();
+				
+					// Release what the state left behind, unless it is kept warm or is being switched to again.
+					final GameResourceScope scope = resource_scopes.get(current_state.getStateId());
+					if (current_state.getStateId() != ID && !scope.isKeepWarm())
+						scope.release();
+				}
 			
-			// Call the switchedTo() method on new current state.
-			current_state.switchedTo();
+				// Switch the actual state. The timers of the state left behind stop advancing.
+				current_state = game_states.get(ID);
+				current_timers = timer_wheels.get(ID);
 			
-			ok = true;
+				// Call the switchedTo() method on new current state.
+				current_state.switchedTo();
+				requestRender();
+			
+				ok = true;
+			
+			} finally {
+				GameTrace.end();
+			}
 			
 		}
 		return ok;
 	}
 	
+	/**
+	 * Make the state specified by the ID current without calling leaving() or
+	 * switchedTo(), or releasing any resources, for GameSnapshot.restore(),
+	 * whose states read their values back from the snapshot instead.
+	 * @param ID The unique ID of the state to make current.
+	 * @return True if the state exists, false otherwise.
+	 */
+	final boolean restoreCurrentState(final int ID) {
+		final GameState state = game_states.get(ID);
+		if (state == null)
+			return false;
+		current_state = state;
+		current_timers = timer_wheels.get(ID);
+		requestRender();
+		return true;
+	}
+	
+	/**
+	 * Request a switch to the state specified by the ID, from any thread. The
+	 * switch happens on the game thread, before the next update.
+	 * @param ID The unique ID of the state to switch to.
+	 * @return True if the request was queued, false if it was dropped.
+	 */
+	public final boolean requestSwitchToState(final int ID) {
+		final SwitchStateEvent event = (SwitchStateEvent)event_bus.obtain(EVENT_SWITCH_STATE);
+		if (event == null)
+			return false;
+		event.state_id = ID;
+		final boolean ok = event_bus.post(event);
+		requestRender();
+		return ok;
+	}
+	
 	/**
 	 * Get a reference to the current game state.
 	 * @return The current game state.
@@ -153,6 +337,213 @@ public final class GameEngine {
 		return current_state;
 	}
 	
+	/**
+	 * Retrieve the timer wheel of the game state with the given ID, or null if
+	 * not found. The wheel only advances while its state is current.
+	 * @param ID The unique integer ID of the state.
+	 * @return The states timer wheel or null.
+	 */
+	public final GameTimerWheel getTimerWheel(final int ID) {
+		return timer_wheels.get(ID);
+	}
+	
+	/**
+	 * Retrieve the resource scope of the game state with the given ID, or null
+	 * if not found.
+	 * @param ID The unique integer ID of the state.
+	 * @return The states resource scope or null.
+	 */
+	public final GameResourceScope getResourceScope(final int ID) {
+		return resource_scopes.get(ID);
+	}
+	
+	/**
+	 * Retrieve the number of bytes held by the loaded resources of every state.
+	 * @return The number of bytes.
+	 */
+	public final long getResourceByteCount() {
+		long rtn_val = 0;
+		for (GameResourceScope scope : resource_scopes.values()) {
+			rtn_val += scope.getByteCount();
+		}
+		return rtn_val;
+	}
+	
+	/**
+	 * Register the object pool of a type, replacing any registered before.
+	 * @param type The type of the pooled objects.
+	 * @param pool The pool.
+	 */
+	public final <T> void registerPool(final Class<T> type, final GameObjectPool<T> pool) {
+		if (pool == null)
+			throw new IllegalArgumentException("pool cannot be null");
+		pools.put(type, pool);
+	}
+	
+	/**
+	 * Retrieve the object pool registered for a type, or null if none is.
+	 * @param type The type of the pooled objects.
+	 * @return The pool or null.
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> GameObjectPool<T> getPool(final Class<T> type) {
+		return (GameObjectPool<T>)pools.get(type);
+	}
+	
+	/**
+	 * Retrieve the event bus used to carry events to the game thread.
+	 * @return The engines GameEventBus.
+	 */
+	public final GameEventBus getEventBus() {
+		return event_bus;
+	}
+	
+	/**
+	 * Attach a recorder, which will record every following update and touch
+	 * event, or detach the current one.
+	 * @param the_recorder The recorder, or null for none.
+	 * @return The previously attached recorder, or null.
+	 */
+	public final GameRecorder setRecorder(final GameRecorder the_recorder) {
+		final GameRecorder old = recorder;
+		recorder = the_recorder;
+		return old;
+	}
+	
+	/**
+	 * Get the currently attached recorder.
+	 * @return The recorder, or null.
+	 */
+	public final GameRecorder getRecorder() {
+		return recorder;
+	}
+	
+	/**
+	 * Record the touch event, if recording, and hand it to the current
+	 * state. Called by the GameView.
+	 * @param event The touch event.
+	 */
+	public final void handleTouchEvent(final MotionEvent event) {
+		
+		final GameRecorder r = recorder;
+		if (r != null)
+			r.recordTouch(event);
+		
+		final GameState current = current_state;
+		if (current != null)
+			current.handleTouchEvent(event);
+		
+		requestRender();
+		
+	}
+	
+	/**
+	 * Dispatch waiting events, advance the current states timer wheel, then
+	 * call the update() method of the current state. Called by the GameThread
+	 * once per loop.
+	 * @param dt The milliseconds since last update.
+	 */
+	public final void update(final long dt) {
+		
+		final GameRecorder r = recorder;
+		if (r != null)
+			r.recordFrame(dt);
+		
+		// Events first, as they may switch the current state. Anything they change must be drawn.
+		if (event_bus.drain() > 0)
+			render_requested = true;
+		
+		if (current_state == null)
+			return;
+		
+		// Timers fire first, so the state sees their effects in this update.
+		// A timer may switch states, so the current state is read again after.
+		if (current_timers != null)
+			current_timers.advance(dt);
+		
+		current_state.update(dt);
+		
+	}
+	
+	/**
+	 * Turn continuous rendering on or off. While off, frames only run while
+	 * something needs redrawing; see requestRender().
+	 * @param continuous True to run frames all the time (the default).
+	 */
+	public final void setContinuousRendering(final boolean continuous) {
+		continuous_rendering = continuous;
+		requestRender();
+	}
+	
+	/**
+	 * Check whether frames run all the time.
+	 * @return True if rendering continuously.
+	 */
+	public final boolean isContinuousRendering() {
+		return continuous_rendering;
+	}
+	
+	/**
+	 * Ask for at least one more frame to be run, from any thread. Only needed
+	 * while continuous rendering is off.
+	 */
+	public final void requestRender() {
+		render_requested = true;
+		synchronized (work_lock) {
+			work_lock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Check whether a frame needs running: rendering is continuous, a render
+	 * was requested, events are waiting, or a timer of the current state is
+	 * due. A timer further off does not need a frame yet; see getTimerDelay().
+	 * @return True if a frame should run.
+	 */
+	public final boolean needsFrame() {
+		return continuous_rendering || render_requested || event_bus.getQueueDepth() > 0 || getTimerDelay() == 0;
+	}
+	
+	/**
+	 * Retrieve the milliseconds of game time until the next timer of the
+	 * current state fires, so an idle loop can wait until then.
+	 * @return The milliseconds until the next timer, or -1 if the current state has none pending.
+	 */
+	public final long getTimerDelay() {
+		final GameTimerWheel timers = current_timers;
+		return timers == null ? -1 : timers.getTimeUntilNext();
+	}
+	
+	/**
+	 * Wait until a frame needs running, or the timeout passes. Events posted
+	 * straight to the event bus are noticed by the timeout at the latest.
+	 * @param timeout The most milliseconds to wait.
+	 * @return True if a frame needs running.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	final boolean awaitFrameNeeded(final long timeout) throws InterruptedException {
+		synchronized (work_lock) {
+			if (!needsFrame())
+				work_lock.wait(timeout);
+		}
+		return needsFrame();
+	}
+	
+	/**
+	 * Clear the render request, at the start of a frame which draws it.
+	 */
+	final void beginFrame() {
+		render_requested = false;
+	}
+	
+	/**
+	 * Retrieve every currently available state, in ID order.
+	 * @return The states.
+	 */
+	final Iterable<GameState> getStates() {
+		return game_states.values();
+	}
+	
 	/**
 	 * Call the init() method on all currently available states.
 	 * @return True if all states successfully initialized. False otherwise.
@@ -161,8 +552,13 @@ public final class GameEngine {
 		
 		boolean ok = true;
 		
-		for (GameState state : game_states.values()) {
-			ok = state.init() && ok;
+		GameTrace.begin("initAllStates");
+		try {
+			for (GameState state : game_states.values()) {
+				ok = state.init() && ok;
+			}
+		} finally {
+			GameTrace.end();
 		}
 		
 		return ok;
@@ -176,11 +572,34 @@ public final class GameEngine {
 	public final boolean cleanupAllStates() {
 		boolean ok = false;
 		
-		for (GameState state : game_states.values()) {
-			ok = state.cleanup() && ok;
+		GameTrace.begin("cleanupAllStates");
+		try {
+			for (GameState state : game_states.values()) {
+				ok = state.cleanup() && ok;
+			}
+			
+			for (GameResourceScope scope : resource_scopes.values()) {
+				scope.release();
+			}
+		} finally {
+			GameTrace.end();
 		}
 		
 		return ok;
 	}
 	
+	/**
+	 * The event carrying a requestSwitchToState() call to the game thread.
+	 */
+	private static final class SwitchStateEvent extends GameEvent {
+		
+		/** The unique ID of the state to switch to. **/
+		int state_id;
+		
+		SwitchStateEvent() {
+			super(EVENT_SWITCH_STATE);
+		}
+		
+	}
+	
 }
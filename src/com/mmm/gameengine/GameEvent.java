@@ -0,0 +1,43 @@
+package com.mmm.gameengine;
+
+/**
+ * The GameEvent class is the base of every event carried by a GameEventBus.
+ * Subclasses add whatever fields they need; every instance is created up
+ * front by a GameEventFactory and reused, so fields must be cleared in
+ * reset() rather than relying on a fresh object.
+ * <BR>
+ * Events are dispatched by their integer type, never by their class, so no
+ * reflection or instanceof chains are involved.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public abstract class GameEvent {
+	
+	/** The integer type of this event, used to find its pool and handlers. **/
+	private final int type;
+	
+	/**
+	 * Create a new GameEvent of the given type.
+	 * @param the_type The integer event type, registered with the GameEventBus.
+	 */
+	protected GameEvent(final int the_type) {
+		type = the_type;
+	}
+	
+	/**
+	 * Retrieve the integer type of this event.
+	 * @return The event type.
+	 */
+	public final int getType() {
+		return type;
+	}
+	
+	/**
+	 * Called when the event is returned to its pool, after it has been
+	 * dispatched or dropped. Clear any references held by the event here.
+	 */
+	protected void reset() { }
+	
+}
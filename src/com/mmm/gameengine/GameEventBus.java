@@ -0,0 +1,318 @@
+package com.mmm.gameengine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The GameEventBus class carries typed events from any thread (the Android
+ * UI thread, sensor callbacks, the game thread itself) to handlers which are
+ * always run on the game thread. It is the safe way for GameStates to talk
+ * to each other, and for the UI to talk to the game.
+ * <BR>
+ * Every event type is a small integer, registered once with a factory which
+ * fills a fixed size pool of reusable events. Posting takes an event from
+ * the pool, fills it in, and offers it to a bounded queue; no locks are taken
+ * and nothing is allocated. If the pool is empty or the queue is full the
+ * event is dropped and counted, rather than blocking the poster, so high rate
+ * signals such as sensor readings can be posted freely.
+ * <BR>
+ * The GameEngine owns one bus and drains it at the start of every update.
+ * To use:
+ *
+ * <code>GameEventBus bus = GameEngine.getInstance().getEventBus();</code>
+ *
+ * <code>bus.registerType(TILT, tilt_factory, 64);</code>
+ *
+ * <code>bus.subscribe(TILT, handler);</code>
+ *
+ * then, from any thread,
+ *
+ * <code>TiltEvent e = (TiltEvent)bus.obtain(TILT);</code>
+ *
+ * <code>if (e != null) { e.x = x; bus.post(e); }</code>
+ *
+ * Types and handlers should be registered on the game thread, or before
+ * the GameView is created.
+ *
+ * @author Michael Morris
+ * @version 1.1.0
+ *
+ */
+public class GameEventBus {
+	
+	/** An empty handler list, shared by every type without handlers. **/
+	private static final GameEventHandler[] NO_HANDLERS = new GameEventHandler[0];
+	
+	/** The pool of each registered type, or null. **/
+	private final GameEventQueue[] pools;
+	
+	/** The handlers of each type. Replaced, never modified, when subscriptions change. **/
+	private volatile GameEventHandler[][] handlers;
+	
+	/** The events waiting to be dispatched. **/
+	private final GameEventQueue queue;
+	
+	private final AtomicLong posted_count = new AtomicLong(0);
+	private final AtomicLong dispatched_count = new AtomicLong(0);
+	private final AtomicLong dropped_count = new AtomicLong(0);
+	private final AtomicLongArray dropped_by_type;
+	private final AtomicInteger max_depth = new AtomicInteger(0);
+	
+	/**
+	 * Create a new GameEventBus.
+	 * @param type_count The number of event types, which are numbered 0 to <code>type_count</code> - 1.
+	 * @param queue_capacity The smallest number of events which may wait to be dispatched at once.
+	 */
+	public GameEventBus(final int type_count, final int queue_capacity) {
+		if (type_count < 1)
+			throw new IllegalArgumentException("there must be at least one event type");
+		
+		pools = new GameEventQueue[type_count];
+		handlers = new GameEventHandler[type_count][];
+		for (int i = 0; i < type_count; i++)
+			handlers[i] = NO_HANDLERS;
+		
+		queue = new GameEventQueue(queue_capacity);
+		dropped_by_type = new AtomicLongArray(type_count);
+	}
+	
+	/**
+	 * Register an event type and fill its pool with <code>pool_size</code>
+	 * events created by the factory. This is the only time events are created.
+	 * @param type The integer event type.
+	 * @param factory The factory creating events of this type.
+	 * @param pool_size The number of events of this type which may be in flight at once.
+	 * @throws IllegalArgumentException if the type is out of bounds, already registered, or the factory misbehaves.
+	 */
+	public synchronized void registerType(final int type, final GameEventFactory factory, final int pool_size) {
+		checkType(type);
+		if (pools[type] != null)
+			throw new IllegalArgumentException("event type " + type + " already registered");
+		if (pool_size < 1)
+			throw new IllegalArgumentException("pool size must be at least 1");
+		
+		final GameEventQueue pool = new GameEventQueue(pool_size);
+		for (int i = 0; i < pool_size; i++) {
+			final GameEvent event = factory.create(type);
+			if (event == null || event.getType() != type)
+				throw new IllegalArgumentException("factory must create events of type " + type);
+			pool.offer(event);
+		}
+		
+		pools[type] = pool;
+	}
+	
+	/**
+	 * Check whether an event type has been registered.
+	 * @param type The integer event type.
+	 * @return True if registered.
+	 */
+	public boolean isRegistered(final int type) {
+		return type >= 0 && type < pools.length && pools[type] != null;
+	}
+	
+	/**
+	 * Subscribe a handler to every event of the given type.
+	 * @param type The integer event type.
+	 * @param handler The handler.
+	 */
+	public synchronized void subscribe(final int type, final GameEventHandler handler) {
+		checkType(type);
+		if (handler == null)
+			throw new IllegalArgumentException("handler cannot be null");
+		
+		final GameEventHandler[] old = handlers[type];
+		final GameEventHandler[] list = new GameEventHandler[old.length + 1];
+		System.arraycopy(old, 0, list, 0, old.length);
+		list[old.length] = handler;
+		
+		replaceHandlers(type, list);
+	}
+	
+	/**
+	 * Unsubscribe a handler from the given type.
+	 * @param type The integer event type.
+	 * @param handler The handler.
+	 * @return True if the handler had been subscribed.
+	 */
+	public synchronized boolean unsubscribe(final int type, final GameEventHandler handler) {
+		checkType(type);
+		
+		final GameEventHandler[] old = handlers[type];
+		for (int i = 0; i < old.length; i++) {
+			if (old[i] == handler) {
+				GameEventHandler[] list = NO_HANDLERS;
+				if (old.length > 1) {
+					list = new GameEventHandler[old.length - 1];
+					System.arraycopy(old, 0, list, 0, i);
+					System.arraycopy(old, i + 1, list, i, old.length - i - 1);
+				}
+				replaceHandlers(type, list);
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Take an event of the given type from its pool. Safe to call from any
+	 * thread. The event must then be either posted or recycled.
+	 * @param type The integer event type.
+	 * @return The event, or null if the pool is empty (the event is counted as dropped).
+	 */
+	public GameEvent obtain(final int type) {
+		final GameEventQueue pool = pools[type];
+		if (pool == null)
+			throw new IllegalArgumentException("event type " + type + " not registered");
+		
+		final GameEvent event = pool.poll();
+		if (event == null) {
+			dropped_count.incrementAndGet();
+			dropped_by_type.incrementAndGet(type);
+		}
+		return event;
+	}
+	
+	/**
+	 * Queue an obtained event for dispatch on the game thread. Safe to call
+	 * from any thread. If the queue is full the event is dropped, counted,
+	 * and returned to its pool.
+	 * @param event The event, as returned by obtain().
+	 * @return True if queued, false if dropped.
+	 */
+	public boolean post(final GameEvent event) {
+		if (!queue.offer(event)) {
+			dropped_count.incrementAndGet();
+			dropped_by_type.incrementAndGet(event.getType());
+			recycle(event);
+			return false;
+		}
+		
+		posted_count.incrementAndGet();
+		
+		// Record the high water mark of the queue.
+		final int depth = queue.size();
+		int max = max_depth.get();
+		while (depth > max && !max_depth.compareAndSet(max, depth))
+			max = max_depth.get();
+		
+		return true;
+	}
+	
+	/**
+	 * Return an obtained event, which will not be posted, to its pool.
+	 * @param event The event.
+	 */
+	public void recycle(final GameEvent event) {
+		event.reset();
+		pools[event.getType()].offer(event);
+	}
+	
+	/**
+	 * Dispatch every event which was queued when this call began to the
+	 * handlers of its type, in the order posted, and return each to its pool.
+	 * Events posted by the handlers themselves wait for the next drain. Must
+	 * only be called from the game thread; GameEngine.update() does this.
+	 * @return The number of events dispatched.
+	 */
+	public int drain() {
+		
+		int count = queue.size();
+		int dispatched = 0;
+		
+		while (count-- > 0) {
+			final GameEvent event = queue.poll();
+			if (event == null)
+				break;
+			
+			final GameEventHandler[] list = handlers[event.getType()];
+			try {
+				for (int i = 0; i < list.length; i++)
+					list[i].onEvent(event);
+			} finally {
+				recycle(event);
+			}
+			
+			dispatched++;
+		}
+		
+		if (dispatched > 0)
+			dispatched_count.addAndGet(dispatched);
+		
+		return dispatched;
+		
+	}
+	
+	/** Retrieve the number of events currently waiting to be dispatched. **/
+	public int getQueueDepth() {
+		return queue.size();
+	}
+	
+	/** Retrieve the largest number of events which have waited to be dispatched at once. **/
+	public int getMaxQueueDepth() {
+		return max_depth.get();
+	}
+	
+	/** Retrieve the number of events which may wait to be dispatched at once. **/
+	public int getQueueCapacity() {
+		return queue.capacity();
+	}
+	
+	/** Retrieve the number of event types, numbered 0 to this - 1. **/
+	public int getTypeCount() {
+		return pools.length;
+	}
+	
+	/** Retrieve the number of events of the given type currently free in its pool. **/
+	public int getPoolAvailable(final int type) {
+		checkType(type);
+		final GameEventQueue pool = pools[type];
+		return pool == null ? 0 : pool.size();
+	}
+	
+	/** Retrieve the total number of events successfully posted. **/
+	public long getPostedCount() {
+		return posted_count.get();
+	}
+	
+	/** Retrieve the total number of events dispatched. **/
+	public long getDispatchedCount() {
+		return dispatched_count.get();
+	}
+	
+	/** Retrieve the total number of events dropped, because a pool was empty or the queue was full. **/
+	public long getDroppedCount() {
+		return dropped_count.get();
+	}
+	
+	/** Retrieve the number of events of the given type dropped. **/
+	public long getDroppedCount(final int type) {
+		checkType(type);
+		return dropped_by_type.get(type);
+	}
+	
+	/** Reset the high water mark and every counter to 0. **/
+	public void resetMetrics() {
+		posted_count.set(0);
+		dispatched_count.set(0);
+		dropped_count.set(0);
+		for (int i = 0; i < pools.length; i++)
+			dropped_by_type.set(i, 0);
+		max_depth.set(0);
+	}
+	
+	private void replaceHandlers(final int type, final GameEventHandler[] list) {
+		final GameEventHandler[][] table = new GameEventHandler[handlers.length][];
+		System.arraycopy(handlers, 0, table, 0, handlers.length);
+		table[type] = list;
+		handlers = table;
+	}
+	
+	private void checkType(final int type) {
+		if (type < 0 || type >= pools.length)
+			throw new IllegalArgumentException("event type must be between 0 and " + (pools.length - 1));
+	}
+	
+}
@@ -0,0 +1,21 @@
+package com.mmm.gameengine;
+
+/**
+ * The GameEventFactory interface creates the events which fill the pool of
+ * one event type. It is only called when the type is registered with a
+ * GameEventBus, never while the game is running.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public interface GameEventFactory {
+	
+	/**
+	 * Create a new event of the given type.
+	 * @param type The integer event type being registered.
+	 * @return A new GameEvent whose getType() returns <code>type</code>.
+	 */
+	public GameEvent create(final int type);
+	
+}
@@ -0,0 +1,22 @@
+package com.mmm.gameengine;
+
+/**
+ * The GameEventHandler interface receives the events of the types it has
+ * subscribed to on a GameEventBus. Handlers are always called on the game
+ * thread, while the bus is being drained.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public interface GameEventHandler {
+	
+	/**
+	 * Called on the game thread for every event of a subscribed type. The
+	 * event is returned to its pool once all handlers have been called, so
+	 * no reference to it should be kept.
+	 * @param event The event being dispatched.
+	 */
+	public void onEvent(final GameEvent event);
+	
+}
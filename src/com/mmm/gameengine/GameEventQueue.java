@@ -0,0 +1,122 @@
+package com.mmm.gameengine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The GameEventQueue class is a bounded, lock free, first in first out
+ * queue of GameEvents which any number of threads may offer to and poll
+ * from at once. Each cell of the ring carries a sequence number which
+ * tells producers and consumers whether it is theirs to use, so neither
+ * side ever blocks the other. Used by GameEventBus for its event queue and
+ * for the pool of each event type.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+final class GameEventQueue {
+	
+	private final int mask;
+	
+	private final AtomicReferenceArray<GameEvent> cells;
+	
+	private final AtomicLongArray sequences;
+	
+	/** The position of the next offer. **/
+	private final AtomicLong tail = new AtomicLong(0);
+	
+	/** The position of the next poll. **/
+	private final AtomicLong head = new AtomicLong(0);
+	
+	/**
+	 * Create a new GameEventQueue able to hold at least <code>min_capacity</code>
+	 * events. The capacity is rounded up to a power of two.
+	 * @param min_capacity The smallest number of events the queue must hold.
+	 */
+	GameEventQueue(final int min_capacity) {
+		if (min_capacity < 1 || min_capacity > (1 << 30))
+			throw new IllegalArgumentException("capacity must be between 1 and " + (1 << 30));
+		
+		int size = 1;
+		while (size < min_capacity)
+			size <<= 1;
+		
+		mask = size - 1;
+		cells = new AtomicReferenceArray<GameEvent>(size);
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++)
+			sequences.set(i, i);
+	}
+	
+	/**
+	 * Add the event to the end of the queue, unless the queue is full.
+	 * @param event The event.
+	 * @return True if added, false if the queue was full.
+	 */
+	boolean offer(final GameEvent event) {
+		long pos = tail.get();
+		int index;
+		for (;;) {
+			index = (int)(pos & mask);
+			final long diff = sequences.get(index) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1))
+					break;
+				pos = tail.get();
+			} else if (diff < 0) {
+				// The cell is only truly full if a whole lap is waiting to be polled,
+				// otherwise a consumer has claimed it and is about to release it.
+				if (pos - head.get() > mask)
+					return false;
+				pos = tail.get();
+			} else {
+				pos = tail.get();
+			}
+		}
+		cells.set(index, event);
+		sequences.set(index, pos + 1);
+		return true;
+	}
+	
+	/**
+	 * Remove and return the event at the front of the queue.
+	 * @return The event, or null if the queue was empty.
+	 */
+	GameEvent poll() {
+		long pos = head.get();
+		int index;
+		for (;;) {
+			index = (int)(pos & mask);
+			final long diff = sequences.get(index) - (pos + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(pos, pos + 1))
+					break;
+				pos = head.get();
+			} else if (diff < 0) {
+				return null;
+			} else {
+				pos = head.get();
+			}
+		}
+		final GameEvent event = cells.get(index);
+		cells.set(index, null);
+		sequences.set(index, pos + mask + 1);
+		return event;
+	}
+	
+	/** Retrieve the approximate number of events in the queue. **/
+	int size() {
+		final long size = tail.get() - head.get();
+		if (size < 0)
+			return 0;
+		return (int)Math.min(size, mask + 1);
+	}
+	
+	/** Retrieve the number of events the queue can hold. **/
+	int capacity() {
+		return mask + 1;
+	}
+	
+}
@@ -0,0 +1,28 @@
+package com.mmm.gameengine;
+
+/**
+ * The GameObjectFactory interface creates the objects held by a
+ * GameObjectPool, and puts them back into a reusable state when they are
+ * released to it.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public interface GameObjectFactory<T> {
+	
+	/**
+	 * Create a new object, fully loaded (decoded, with its phases created,
+	 * and so on), so that obtaining it later costs nothing.
+	 * @return The new object.
+	 */
+	public T create();
+	
+	/**
+	 * Reset an object released to the pool, so the next obtain() hands out
+	 * one indistinguishable from a newly created object.
+	 * @param object The released object.
+	 */
+	public void reset(final T object);
+	
+}
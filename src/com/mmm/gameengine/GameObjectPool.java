@@ -0,0 +1,181 @@
+package com.mmm.gameengine;
+
+/**
+ * The GameObjectPool class keeps released objects of one type for reuse, so
+ * spawning enemies, projectiles, and the like takes a ready made object
+ * rather than allocating and loading a new one. Objects are created by a
+ * GameObjectFactory, ahead of time with prewarm(), or on demand when the
+ * pool runs dry (counted as a miss).
+ * <BR>
+ * The high water mark of objects in use at once, and the number of misses,
+ * tell how large to prewarm so a spawn burst neither allocates nor loads.
+ * <BR>
+ * A pool is meant to be used from the game thread only, and is not thread
+ * safe.
+ * <BR>
+ * To use:
+ *
+ * <code>GameObjectPool&lt;Bullet&gt; bullets = new GameObjectPool&lt;Bullet&gt;(factory, 64);</code>
+ *
+ * <code>bullets.prewarm(32);</code>
+ *
+ * <code>Bullet b = bullets.obtain();</code>
+ *
+ * <code>bullets.release(b);</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public class GameObjectPool<T> {
+	
+	private final GameObjectFactory<T> factory;
+	
+	/** The free objects, as a stack. **/
+	private final Object[] free;
+	private int free_count;
+	
+	/** The number of objects obtained and not yet released. **/
+	private int in_use;
+	
+	/** The most objects in use at once since the last resetMetrics(). **/
+	private int high_water_mark;
+	
+	/** The number of obtain() calls which had to create an object, since the last resetMetrics(). **/
+	private int miss_count;
+	
+	/** The number of released objects dropped, the pool being full, since the last resetMetrics(). **/
+	private int drop_count;
+	
+	/** The number of objects created over the life of the pool. **/
+	private int created_count;
+	
+	/**
+	 * Create a new, empty, GameObjectPool.
+	 * @param the_factory Creates and resets the pooled objects.
+	 * @param max_free The most released objects kept for reuse.
+	 */
+	public GameObjectPool(final GameObjectFactory<T> the_factory, final int max_free) {
+		if (the_factory == null)
+			throw new IllegalArgumentException("factory cannot be null");
+		if (max_free < 1)
+			throw new IllegalArgumentException("pool must keep at least 1 object");
+		
+		factory = the_factory;
+		free = new Object[max_free];
+	}
+	
+	/**
+	 * Create objects until the given number are free, or the pool is full.
+	 * Call while loading, so the game does not have to later.
+	 * @param count The number of free objects wanted.
+	 * @return The number of objects created.
+	 */
+	public int prewarm(final int count) {
+		int rtn_val = 0;
+		final int target = Math.min(count, free.length);
+		while (free_count < target) {
+			free[free_count++] = factory.create();
+			created_count++;
+			rtn_val++;
+		}
+		return rtn_val;
+	}
+	
+	/**
+	 * Take a free object, or create one if there are none.
+	 * @return The object.
+	 */
+	@SuppressWarnings("unchecked")
+	public T obtain() {
+		
+		T rtn_val;
+		if (free_count > 0) {
+			rtn_val = (T)free[--free_count];
+			free[free_count] = null;
+		} else {
+			rtn_val = factory.create();
+			created_count++;
+			miss_count++;
+		}
+		
+		in_use++;
+		if (in_use > high_water_mark)
+			high_water_mark = in_use;
+		
+		return rtn_val;
+		
+	}
+	
+	/**
+	 * Reset an object and return it to the pool. If the pool is full the
+	 * object is dropped, for the garbage collector.
+	 * @param object An object obtained from this pool.
+	 */
+	public void release(final T object) {
+		if (object == null)
+			throw new IllegalArgumentException("cannot release null");
+		
+		if (in_use > 0)
+			in_use--;
+		
+		if (free_count == free.length) {
+			drop_count++;
+			return;
+		}
+		
+		factory.reset(object);
+		free[free_count++] = object;
+	}
+	
+	/** Drop every free object, for instance when its state is left. **/
+	public void clear() {
+		for (int i = 0; i < free_count; i++)
+			free[i] = null;
+		free_count = 0;
+	}
+	
+	/** Retrieve the number of free objects. **/
+	public int getFreeCount() {
+		return free_count;
+	}
+	
+	/** Retrieve the number of objects obtained and not yet released. **/
+	public int getInUseCount() {
+		return in_use;
+	}
+	
+	/** Retrieve the most objects in use at once, since the last resetMetrics(). **/
+	public int getHighWaterMark() {
+		return high_water_mark;
+	}
+	
+	/** Retrieve the number of obtain() calls which had to create an object, since the last resetMetrics(). **/
+	public int getMissCount() {
+		return miss_count;
+	}
+	
+	/** Retrieve the number of released objects dropped because the pool was full, since the last resetMetrics(). **/
+	public int getDropCount() {
+		return drop_count;
+	}
+	
+	/** Retrieve the number of objects created over the life of the pool. **/
+	public int getCreatedCount() {
+		return created_count;
+	}
+	
+	/** Reset the high water mark (to the number in use), miss count, and drop count. **/
+	public void resetMetrics() {
+		high_water_mark = in_use;
+		miss_count = 0;
+		drop_count = 0;
+	}
+	
+	@Override
+	public String toString() {
+		return "GameObjectPool[free=" + free_count + "/" + free.length + ", in use=" + in_use + ", high water=" + high_water_mark
+				+ ", misses=" + miss_count + ", drops=" + drop_count + "]";
+	}
+	
+}
@@ -0,0 +1,223 @@
+package com.mmm.gameengine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import android.os.Build;
+import android.util.Log;
+import android.view.MotionEvent;
+
+/**
+ * The GameRecorder class streams the sequence of update time deltas and touch
+ * events seen by the GameEngine to a compact binary recording, which a
+ * GameReplayer can later feed back through the engine. Two builds replaying
+ * the same recording perform exactly the same work, so their frame timings
+ * can be compared.
+ * <BR>
+ * The recording starts with the int MAGIC and the short VERSION, followed by
+ * records, each starting with a tag byte:
+ * <pre>
+ * TAG_TOUCH  byte masked action, byte action pointer index, byte pointer count,
+ *            then for every pointer: byte pointer id, float x, float y
+ * TAG_FRAME  dt, in milliseconds, as an unsigned base 128 varint
+ * TAG_END    (nothing)
+ * </pre>
+ * Touch records always come before the frame whose update they preceded.
+ * Every pointer of a multi-touch event is kept, so gestures replay exactly.
+ * Version 1 recordings, which held only the first pointer, can still be
+ * replayed.
+ * <BR>
+ * To use:
+ *
+ * <code>GameEngine.getInstance().setRecorder(new GameRecorder(new FileOutputStream(file)));</code>
+ *
+ * and, once done, <code>GameEngine.getInstance().setRecorder(null).close();</code>
+ *
+ * @author Michael Morris
+ * @version 1.1.0
+ *
+ */
+public class GameRecorder {
+	
+	/** The first int of every recording, 'MMMR'. **/
+	public static final int MAGIC = 0x4D4D4D52;
+	
+	/** The version of the recording format. **/
+	public static final short VERSION = 2;
+	
+	/** The most pointers recorded for one touch event. **/
+	static final int MAX_POINTERS = 255;
+	
+	static final int TAG_END = 0;
+	static final int TAG_FRAME = 1;
+	static final int TAG_TOUCH = 2;
+	
+	/** The stream being written to, or null once closed or failed. **/
+	private DataOutputStream out;
+	
+	/** Touch events received since the last frame, waiting to be written on the game thread, and how many pointers each has. **/
+	private int[] pending_actions = new int[16];
+	private int[] pending_pointers = new int[16];
+	private int pending_count;
+	
+	/** The id and location of every pointer of the pending touch events, in order. **/
+	private int[] pointer_ids = new int[16];
+	private float[] pointer_x = new float[16];
+	private float[] pointer_y = new float[16];
+	private int pointer_total;
+	
+	/** The number of frames and touch events recorded. **/
+	private int frame_count;
+	private int touch_count;
+	
+	/**
+	 * Create a new GameRecorder writing to the given stream. The header is
+	 * written immediately.
+	 * @param stream The stream to write to. It is closed by close().
+	 * @throws IOException if the header could not be written.
+	 */
+	public GameRecorder(final OutputStream stream) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(stream, 8192));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+	}
+	
+	/**
+	 * Record a touch event. May be called from any thread; the event is
+	 * written before the next frame.
+	 * @param event The touch event.
+	 */
+	public synchronized void recordTouch(final MotionEvent event) {
+		if (out == null)
+			return;
+		
+		// Multi-touch arrived with API 5; before that every event has one pointer.
+		final int pointers = Build.VERSION.SDK_INT >= 5 ? Math.min(event.getPointerCount(), MAX_POINTERS) : 1;
+		
+		if (pending_count == pending_actions.length) {
+			final int size = pending_count * 2;
+			final int[] a = new int[size];
+			System.arraycopy(pending_actions, 0, a, 0, pending_count);
+			pending_actions = a;
+			final int[] p = new int[size];
+			System.arraycopy(pending_pointers, 0, p, 0, pending_count);
+			pending_pointers = p;
+		}
+		if (pointer_total + pointers > pointer_ids.length) {
+			final int size = Math.max(pointer_ids.length * 2, pointer_total + pointers);
+			final int[] ids = new int[size];
+			System.arraycopy(pointer_ids, 0, ids, 0, pointer_total);
+			pointer_ids = ids;
+			final float[] x = new float[size];
+			System.arraycopy(pointer_x, 0, x, 0, pointer_total);
+			pointer_x = x;
+			final float[] y = new float[size];
+			System.arraycopy(pointer_y, 0, y, 0, pointer_total);
+			pointer_y = y;
+		}
+		
+		pending_actions[pending_count] = event.getAction();
+		pending_pointers[pending_count] = pointers;
+		pending_count++;
+		
+		if (Build.VERSION.SDK_INT >= 5) {
+			for (int i = 0; i < pointers; i++) {
+				pointer_ids[pointer_total] = event.getPointerId(i);
+				pointer_x[pointer_total] = event.getX(i);
+				pointer_y[pointer_total] = event.getY(i);
+				pointer_total++;
+			}
+		} else {
+			pointer_ids[pointer_total] = 0;
+			pointer_x[pointer_total] = event.getX();
+			pointer_y[pointer_total] = event.getY();
+			pointer_total++;
+		}
+	}
+	
+	/**
+	 * Record a frame, preceded by every touch event received since the last.
+	 * Called by GameEngine.update() on the game thread.
+	 * @param dt The milliseconds since last update.
+	 */
+	public synchronized void recordFrame(final long dt) {
+		if (out == null)
+			return;
+		
+		try {
+			int p = 0;
+			for (int i = 0; i < pending_count; i++) {
+				final int action = pending_actions[i];
+				out.writeByte(TAG_TOUCH);
+				out.writeByte(action & MotionEvent.ACTION_MASK);
+				out.writeByte((action & MotionEvent.ACTION_POINTER_INDEX_MASK) >> MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+				out.writeByte(pending_pointers[i]);
+				for (int j = 0; j < pending_pointers[i]; j++, p++) {
+					out.writeByte(pointer_ids[p]);
+					out.writeFloat(pointer_x[p]);
+					out.writeFloat(pointer_y[p]);
+				}
+			}
+			touch_count += pending_count;
+			pending_count = 0;
+			pointer_total = 0;
+			
+			out.writeByte(TAG_FRAME);
+			long v = Math.max(dt, 0);
+			while (v >= 0x80) {
+				out.writeByte((int)(v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			out.writeByte((int)v);
+			frame_count++;
+		} catch (IOException e) {
+			Log.e("StickmanPaintball", "GameRecorder.recordFrame() -- recording stopped", e);
+			abandon();
+		}
+	}
+	
+	/** Retrieve the number of frames recorded. **/
+	public synchronized int getFrameCount() {
+		return frame_count;
+	}
+	
+	/** Retrieve the number of touch events recorded. **/
+	public synchronized int getTouchCount() {
+		return touch_count;
+	}
+	
+	/** Check whether the recorder is still writing. **/
+	public synchronized boolean isRecording() {
+		return out != null;
+	}
+	
+	/**
+	 * Finish the recording and close the stream. Touch events received since
+	 * the last frame are discarded.
+	 * @throws IOException if the recording could not be finished.
+	 */
+	public synchronized void close() throws IOException {
+		if (out == null)
+			return;
+		
+		try {
+			out.writeByte(TAG_END);
+			out.close();
+		} finally {
+			out = null;
+		}
+	}
+	
+	/** Stop recording after a write failure. **/
+	private void abandon() {
+		try {
+			out.close();
+		} catch (IOException e) {
+		} finally {
+			out = null;
+		}
+	}
+	
+}
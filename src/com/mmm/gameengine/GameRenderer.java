@@ -0,0 +1,58 @@
+package com.mmm.gameengine;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+/**
+ * The GameRenderer interface is what sprites are drawn through when not
+ * drawing on a Canvas directly. GameCanvasRenderer draws on a Canvas, as
+ * the GameView does; GameSoftwareRenderer rasterizes into an int[]
+ * framebuffer, so drawing can be measured and compared without a device
+ * display.
+ * <BR>
+ * States implementing RendererGameState, and MMMAnimation.draw(GameRenderer),
+ * draw through it.
+ *
+ * @author Michael Morris
+ * @version 1.1.0
+ *
+ */
+public interface GameRenderer {
+	
+	/** Retrieve the width of the drawing surface, in pixels. **/
+	public int getWidth();
+	
+	/** Retrieve the height of the drawing surface, in pixels. **/
+	public int getHeight();
+	
+	/**
+	 * Fill the whole surface with a color.
+	 * @param color The ARGB color.
+	 */
+	public void clear(final int color);
+	
+	/**
+	 * Draw an area of a Bitmap scaled into a destination rectangle, rotated
+	 * about the rectangles center, and optionally tinted the way MMMAnimation
+	 * tints (every channel multiplied by the tint colors channel).
+	 * @param bitmap The source Bitmap.
+	 * @param src The area of the Bitmap to draw.
+	 * @param left The left of the destination, before rotation.
+	 * @param top The top of the destination, before rotation.
+	 * @param width The width of the destination.
+	 * @param height The height of the destination.
+	 * @param rotation The rotation, in degrees clockwise.
+	 * @param tinted Whether to tint.
+	 * @param tint_color The ARGB tint color, used only when tinted.
+	 */
+	public void drawBitmap(final Bitmap bitmap, final Rect src, final float left, final float top, final float width, final float height,
+			final float rotation, final boolean tinted, final int tint_color);
+	
+	/**
+	 * Forget a Bitmap which is about to be recycled. Anything drawn from it
+	 * and held back is drawn now, and anything kept for it is dropped.
+	 * @param bitmap The Bitmap.
+	 */
+	public void release(final Bitmap bitmap);
+	
+}
@@ -0,0 +1,296 @@
+package com.mmm.gameengine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Arrays;
+
+import android.graphics.Canvas;
+import android.os.Build;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+/**
+ * The GameReplayer class feeds a recording made by GameRecorder back through
+ * the GameEngine, exactly as it was recorded, and measures how long every
+ * update and draw took. It does not need a GameView or GameThread: frames are
+ * run back to back on the calling thread, drawing into any Canvas given (for
+ * instance one wrapping an off screen Bitmap), or not drawing at all when
+ * running headless.
+ * <BR>
+ * Multi-touch events are rebuilt with every pointer from API 14; before that
+ * only their first pointer is replayed.
+ * <BR>
+ * The per frame timings can be written as CSV, or summarised by percentile,
+ * so that two builds replaying the same recording can be compared and a
+ * frame time regression flagged.
+ * <BR>
+ * To use:
+ *
+ * <code>GameReplayer replayer = new GameReplayer(new FileInputStream(file));</code>
+ *
+ * <code>replayer.replay(GameEngine.getInstance(), canvas);</code>
+ *
+ * <code>replayer.writeCsv(writer);</code>
+ *
+ * @author Michael Morris
+ * @version 1.1.0
+ *
+ */
+public class GameReplayer {
+	
+	private final DataInputStream in;
+	
+	/** The version of the recording being read. **/
+	private final short version;
+	
+	/** The pointers of the touch event being read, reused for every event. **/
+	private int[] pointer_ids = new int[4];
+	private float[] pointer_x = new float[4];
+	private float[] pointer_y = new float[4];
+	private MotionEvent.PointerProperties[] properties;
+	private MotionEvent.PointerCoords[] coords;
+	
+	/** The time delta, update time, and draw time of every frame replayed. **/
+	private long[] frame_dts = new long[1024];
+	private long[] update_nanos = new long[1024];
+	private long[] draw_nanos = new long[1024];
+	private int frame_count;
+	
+	/** The number of touch events replayed. **/
+	private int touch_count;
+	
+	/**
+	 * Create a new GameReplayer reading from the given stream.
+	 * @param stream The stream holding a recording. It is closed by replay().
+	 * @throws IOException if the stream does not start with a supported recording header.
+	 */
+	public GameReplayer(final InputStream stream) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(stream, 8192));
+		if (in.readInt() != GameRecorder.MAGIC)
+			throw new IOException("not a GameRecorder recording");
+		version = in.readShort();
+		if (version < 1 || version > GameRecorder.VERSION)
+			throw new IOException("unsupported recording version " + version);
+	}
+	
+	/**
+	 * Replay the whole recording through the engine: every touch event is
+	 * handed to the current state, every frame is passed to GameEngine.update()
+	 * and then drawn. Any recorder attached to the engine is detached for the
+	 * duration. The stream is closed once done.
+	 * @param ge The engine, with its states added, initialized, and switched to the recorded starting state.
+	 * @param canvas The canvas to draw every frame on, or null to skip drawing.
+	 * @return The number of frames replayed.
+	 * @throws IOException if the recording could not be read.
+	 */
+	public int replay(final GameEngine ge, final Canvas canvas) throws IOException {
+		
+		final GameRecorder recorder = ge.setRecorder(null);
+		
+		long game_time = 0;
+		long down_time = 0;
+		
+		try {
+			while (true) {
+				final int tag;
+				try {
+					tag = in.readUnsignedByte();
+				} catch (EOFException e) {
+					// A recording which was never closed simply ends.
+					break;
+				}
+				
+				if (tag == GameRecorder.TAG_END)
+					break;
+				
+				if (tag == GameRecorder.TAG_TOUCH) {
+					final int action;
+					final int pointers;
+					if (version == 1) {
+						// Version 1 kept one pointer, and only the low byte of the action.
+						action = in.readUnsignedByte();
+						pointers = 1;
+						readPointer(0, 0);
+					} else {
+						final int masked = in.readUnsignedByte();
+						final int index = in.readUnsignedByte();
+						action = masked | (index << MotionEvent.ACTION_POINTER_INDEX_SHIFT);
+						pointers = in.readUnsignedByte();
+						if (pointers == 0)
+							throw new IOException("corrupt recording, touch event without pointers");
+						for (int i = 0; i < pointers; i++)
+							readPointer(i, in.readUnsignedByte());
+					}
+					
+					if ((action & MotionEvent.ACTION_MASK) == MotionEvent.ACTION_DOWN)
+						down_time = game_time;
+					
+					final MotionEvent event = obtainTouch(down_time, game_time, action, pointers);
+					ge.handleTouchEvent(event);
+					event.recycle();
+					touch_count++;
+					
+				} else if (tag == GameRecorder.TAG_FRAME) {
+					long dt = 0;
+					int shift = 0;
+					int b;
+					do {
+						b = in.readUnsignedByte();
+						dt |= (long)(b & 0x7F) << shift;
+						shift += 7;
+					} while ((b & 0x80) != 0);
+					
+					game_time += dt;
+					runFrame(ge, canvas, dt);
+					
+				} else {
+					throw new IOException("corrupt recording, unknown tag " + tag);
+				}
+			}
+		} finally {
+			in.close();
+			ge.setRecorder(recorder);
+		}
+		
+		return frame_count;
+		
+	}
+	
+	/** Read the location of one pointer of the touch event being read. **/
+	private void readPointer(final int i, final int id) throws IOException {
+		if (i == pointer_ids.length) {
+			final int size = i * 2;
+			final int[] ids = new int[size];
+			System.arraycopy(pointer_ids, 0, ids, 0, i);
+			pointer_ids = ids;
+			final float[] x = new float[size];
+			System.arraycopy(pointer_x, 0, x, 0, i);
+			pointer_x = x;
+			final float[] y = new float[size];
+			System.arraycopy(pointer_y, 0, y, 0, i);
+			pointer_y = y;
+		}
+		pointer_ids[i] = id;
+		pointer_x[i] = in.readFloat();
+		pointer_y[i] = in.readFloat();
+	}
+	
+	/** Build a MotionEvent from the pointers read, with all of them from API 14 or just the first before. **/
+	private MotionEvent obtainTouch(final long down_time, final long event_time, final int action, final int pointers) {
+		
+		if (Build.VERSION.SDK_INT < 14)
+			return MotionEvent.obtain(down_time, event_time, action, pointer_x[0], pointer_y[0], 0);
+		
+		if (properties == null || properties.length < pointers) {
+			final int size = Math.max(pointers, 4);
+			properties = new MotionEvent.PointerProperties[size];
+			coords = new MotionEvent.PointerCoords[size];
+			for (int i = 0; i < size; i++) {
+				properties[i] = new MotionEvent.PointerProperties();
+				coords[i] = new MotionEvent.PointerCoords();
+			}
+		}
+		
+		for (int i = 0; i < pointers; i++) {
+			properties[i].clear();
+			properties[i].id = pointer_ids[i];
+			properties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+			coords[i].clear();
+			coords[i].x = pointer_x[i];
+			coords[i].y = pointer_y[i];
+			coords[i].pressure = 1.0f;
+			coords[i].size = 1.0f;
+		}
+		
+		return MotionEvent.obtain(down_time, event_time, action, pointers, properties, coords, 0, 0, 1.0f, 1.0f, 0, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+		
+	}
+	
+	/** Run and time one update and draw. **/
+	private void runFrame(final GameEngine ge, final Canvas canvas, final long dt) {
+		
+		if (frame_count == frame_dts.length) {
+			frame_dts = grow(frame_dts);
+			update_nanos = grow(update_nanos);
+			draw_nanos = grow(draw_nanos);
+		}
+		
+		final long start = System.nanoTime();
+		ge.update(dt);
+		final long updated = System.nanoTime();
+		
+		final GameState state = ge.getCurrentState();
+		if (canvas != null && state != null)
+			state.draw(canvas);
+		final long drawn = System.nanoTime();
+		
+		frame_dts[frame_count] = dt;
+		update_nanos[frame_count] = updated - start;
+		draw_nanos[frame_count] = drawn - updated;
+		frame_count++;
+		
+	}
+	
+	/** Retrieve the number of frames replayed. **/
+	public int getFrameCount() {
+		return frame_count;
+	}
+	
+	/** Retrieve the number of touch events replayed. **/
+	public int getTouchCount() {
+		return touch_count;
+	}
+	
+	/** Retrieve the nanoseconds spent updating the given frame. **/
+	public long getUpdateNanos(final int frame) {
+		return update_nanos[frame];
+	}
+	
+	/** Retrieve the nanoseconds spent drawing the given frame. **/
+	public long getDrawNanos(final int frame) {
+		return draw_nanos[frame];
+	}
+	
+	/**
+	 * Calculate a percentile of the total (update plus draw) frame time.
+	 * @param percentile The percentile, 0 to 100 (ex - 99 for the p99 frame time).
+	 * @return The frame time in nanoseconds, or 0 if no frames were replayed.
+	 */
+	public long getFrameTimePercentile(final double percentile) {
+		if (frame_count == 0)
+			return 0;
+		
+		final long[] totals = new long[frame_count];
+		for (int i = 0; i < frame_count; i++)
+			totals[i] = update_nanos[i] + draw_nanos[i];
+		Arrays.sort(totals);
+		
+		final int index = (int)Math.ceil(percentile / 100.0 * frame_count) - 1;
+		return totals[Math.max(0, Math.min(frame_count - 1, index))];
+	}
+	
+	/**
+	 * Write the timings of every frame as CSV, with a header row of
+	 * <code>frame,dt_ms,update_us,draw_us</code>.
+	 * @param writer The writer. It is flushed, not closed.
+	 * @throws IOException if writing failed.
+	 */
+	public void writeCsv(final Writer writer) throws IOException {
+		writer.write("frame,dt_ms,update_us,draw_us\n");
+		for (int i = 0; i < frame_count; i++) {
+			writer.write(i + "," + frame_dts[i] + "," + (update_nanos[i] / 1000) + "," + (draw_nanos[i] / 1000) + "\n");
+		}
+		writer.flush();
+	}
+	
+	private static long[] grow(final long[] src) {
+		final long[] rtn_val = new long[src.length * 2];
+		System.arraycopy(src, 0, rtn_val, 0, src.length);
+		return rtn_val;
+	}
+	
+}
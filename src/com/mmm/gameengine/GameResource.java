@@ -0,0 +1,38 @@
+package com.mmm.gameengine;
+
+/**
+ * The GameResource interface describes anything which can be registered
+ * with a GameResourceScope: a resource which loads itself lazily when first
+ * used, can be released and later loaded again, and reports how much memory
+ * it holds.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public interface GameResource {
+	
+	/**
+	 * Load the resource now, if not already loaded.
+	 * @return True if the resource is loaded.
+	 */
+	public boolean load();
+	
+	/**
+	 * Free the resource. It loads again the next time it is used.
+	 */
+	public void release();
+	
+	/**
+	 * Check whether the resource is currently loaded.
+	 * @return True if loaded.
+	 */
+	public boolean isLoaded();
+	
+	/**
+	 * Retrieve the number of bytes held while loaded.
+	 * @return The number of bytes, or 0 if not loaded.
+	 */
+	public long getByteCount();
+	
+}
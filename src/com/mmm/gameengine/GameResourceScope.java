@@ -0,0 +1,157 @@
+package com.mmm.gameengine;
+
+import java.util.ArrayList;
+
+/**
+ * The GameResourceScope class ties the lifetime of GameResources to a
+ * GameState. The GameEngine gives every added state its own scope; the state
+ * (and anything it owns, such as its animations) registers resources into it,
+ * they load lazily the first time they are used, and the engine releases them
+ * all when the state is left.
+ * <BR>
+ * A scope may be kept warm, so leaving its state does not release it, for
+ * states which are likely to be switched to next (a pause menu, the next
+ * level, etc.). warm() loads every resource of a scope ahead of time, for
+ * instance behind a loading screen.
+ * <BR>
+ * To use:
+ *
+ * <code>GameResourceScope scope = GameEngine.getInstance().getResourceScope(ID_HERE);</code>
+ *
+ * <code>scope.add(resource);</code>
+ *
+ * <code>GameEngine.getInstance().getResourceScope(PAUSE_ID).setKeepWarm(true);</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public class GameResourceScope {
+	
+	/** The unique integer ID of the state owning this scope. **/
+	private final int state_id;
+	
+	/** The registered resources. **/
+	private final ArrayList<GameResource> resources;
+	
+	/** Whether leaving the state keeps the resources loaded. **/
+	private boolean keep_warm;
+	
+	/** The number of times resources of this scope were released. **/
+	private int release_count;
+	
+	/**
+	 * Create a new, empty, GameResourceScope.
+	 * @param the_state_id The unique integer ID of the state owning the scope.
+	 */
+	public GameResourceScope(final int the_state_id) {
+		state_id = the_state_id;
+		resources = new ArrayList<GameResource>();
+	}
+	
+	/** Retrieve the unique integer ID of the state owning this scope. **/
+	public int getStateId() {
+		return state_id;
+	}
+	
+	/**
+	 * Register a resource with this scope. Registering the same resource twice
+	 * has no effect.
+	 * @param resource The resource.
+	 * @return The resource, for chaining.
+	 */
+	public <T extends GameResource> T add(final T resource) {
+		if (resource == null)
+			throw new IllegalArgumentException("resource cannot be null");
+		if (!resources.contains(resource))
+			resources.add(resource);
+		return resource;
+	}
+	
+	/**
+	 * Unregister a resource, releasing it.
+	 * @param resource The resource.
+	 */
+	public void remove(final GameResource resource) {
+		if (resources.remove(resource))
+			resource.release();
+	}
+	
+	/** Retrieve the number of registered resources. **/
+	public int getResourceCount() {
+		return resources.size();
+	}
+	
+	/** Retrieve a registered resource, in the order registered. **/
+	public GameResource getResource(final int index) {
+		return resources.get(index);
+	}
+	
+	/**
+	 * Keep, or stop keeping, this scope loaded while its state is not current.
+	 * @param warm True to keep the resources loaded after the state is left.
+	 */
+	public void setKeepWarm(final boolean warm) {
+		keep_warm = warm;
+	}
+	
+	/** Check whether this scope stays loaded while its state is not current. **/
+	public boolean isKeepWarm() {
+		return keep_warm;
+	}
+	
+	/**
+	 * Load every registered resource now, rather than on first use.
+	 * @return True if every resource loaded.
+	 */
+	public boolean warm() {
+		boolean ok = true;
+		for (int i = 0; i < resources.size(); i++) {
+			ok = resources.get(i).load() && ok;
+		}
+		return ok;
+	}
+	
+	/**
+	 * Release every registered resource. They load again on next use.
+	 */
+	public void release() {
+		for (int i = 0; i < resources.size(); i++) {
+			final GameResource r = resources.get(i);
+			if (r.isLoaded()) {
+				r.release();
+				release_count++;
+			}
+		}
+	}
+	
+	/** Retrieve the number of registered resources currently loaded. **/
+	public int getLoadedCount() {
+		int rtn_val = 0;
+		for (int i = 0; i < resources.size(); i++) {
+			if (resources.get(i).isLoaded())
+				rtn_val++;
+		}
+		return rtn_val;
+	}
+	
+	/** Retrieve the number of bytes held by the loaded resources of this scope. **/
+	public long getByteCount() {
+		long rtn_val = 0;
+		for (int i = 0; i < resources.size(); i++) {
+			rtn_val += resources.get(i).getByteCount();
+		}
+		return rtn_val;
+	}
+	
+	/** Retrieve the number of times a resource of this scope was released. **/
+	public int getReleaseCount() {
+		return release_count;
+	}
+	
+	@Override
+	public String toString() {
+		return "GameResourceScope[state " + state_id + ": " + getLoadedCount() + "/" + resources.size() + " loaded, " + (getByteCount() / 1024) + "KB" + (keep_warm ? ", warm]" : "]");
+	}
+	
+}
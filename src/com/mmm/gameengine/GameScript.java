@@ -0,0 +1,34 @@
+package com.mmm.gameengine;
+
+/**
+ * The GameScript interface is a resumable behaviour run by a
+ * GameScriptScheduler ("walk to X, wait 2s, play the attack phase, repeat").
+ * A script is written as a step function: given the step to resume at, it
+ * does the work of that step, optionally asks the scheduler to wait for
+ * something, and returns the step to resume at next. A script which does
+ * not wait is resumed again on the next update.
+ * <BR>
+ * Scripts keep no state of their own between steps other than what they are
+ * given, so one script object can run for any number of entities, told
+ * apart by the integer data they were started with.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public interface GameScript {
+	
+	/** The step returned to end the script. **/
+	public static final int DONE = -1;
+	
+	/**
+	 * Resume the script.
+	 * @param scheduler The scheduler running the script, to wait with.
+	 * @param handle The handle of this run of the script, passed to the scheduler when waiting.
+	 * @param step The step to resume at, 0 when first run.
+	 * @param data The integer data given when the script was started.
+	 * @return The step to resume at next, or DONE to end the script.
+	 */
+	public int resume(final GameScriptScheduler scheduler, final int handle, final int step, final int data);
+	
+}
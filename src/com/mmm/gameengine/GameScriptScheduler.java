@@ -0,0 +1,464 @@
+package com.mmm.gameengine;
+
+/**
+ * The GameScriptScheduler class runs GameScripts cooperatively, driven by
+ * the millisecond delta passed to update(). A script runs one step, then
+ * either waits (for game time to pass, for a wake() such as a phase
+ * completing, or for an event of some type on the GameEventBus) or yields
+ * until the next update. Only scripts whose wait is over are resumed; a
+ * waiting script costs nothing per update, so tens of thousands can be
+ * alive at once.
+ * <BR>
+ * Waits for time are filed in the schedulers own GameTimerWheel, advanced
+ * by update(). Waits for events subscribe the scheduler to that event type
+ * the first time it is waited for; every script waiting on the type is
+ * resumed by the next such event. Waits for a wake are ended by wake(),
+ * which is safe to call for a script not waiting, so it can be wired to a
+ * phase listener firing every cycle (see MMMScriptWaker).
+ * <BR>
+ * Scripts live in parallel arrays and are referred to by integer handles,
+ * so starting, waiting, and ending scripts does not allocate once the
+ * arrays have grown to the peak number of scripts alive. A handle stays
+ * valid until its script ends or is stopped. The scheduler is meant to be
+ * used from the game thread only.
+ * <BR>
+ * To use:
+ *
+ * <code>GameScriptScheduler scripts = new GameScriptScheduler(1024, GameEngine.getInstance().getEventBus());</code>
+ *
+ * <code>scripts.start(patrol, enemy_index);</code>
+ *
+ * then call <code>scripts.update(dt)</code> from the states update(). Within
+ * a script step:
+ *
+ * <code>scheduler.waitTime(handle, 2000); return STEP_ATTACK;</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public class GameScriptScheduler implements GameTimerListener, GameEventHandler {
+	
+	/** The value returned when no script could be referred to. **/
+	public static final int NO_SCRIPT = -1;
+	
+	/** The largest number of scripts which can be alive at once. **/
+	public static final int MAX_CAPACITY = 1 << 16;
+	
+	private static final int INDEX_BITS = 16;
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+	private static final int GENERATION_MASK = 0x7FFF;
+	
+	/** The slot is unused. **/
+	private static final int STATE_FREE = 0;
+	
+	/** The script is queued to be resumed. **/
+	private static final int STATE_READY = 1;
+	
+	/** The script is being resumed, and has not waited yet. **/
+	private static final int STATE_RUNNING = 2;
+	
+	/** The script waits for its timer. **/
+	private static final int STATE_WAIT_TIME = 3;
+	
+	/** The script waits for wake(). **/
+	private static final int STATE_WAIT_WAKE = 4;
+	
+	/** The script waits for an event. **/
+	private static final int STATE_WAIT_EVENT = 5;
+	
+	/** Waits for time are filed here. **/
+	private final GameTimerWheel timers;
+	
+	/** The bus waited on for events, or null. **/
+	private final GameEventBus bus;
+	
+	/** The first script waiting for each event type, or -1, and whether the type is subscribed to. **/
+	private final int[] event_heads;
+	private final boolean[] subscribed;
+	
+	private int capacity;
+	
+	/** The script, step to resume at, data, and STATE_* of each slot. **/
+	private GameScript[] scripts;
+	private int[] steps;
+	private int[] data;
+	private int[] states;
+	private int[] generations;
+	
+	/** The timer handle, or event type, waited for by each slot. **/
+	private int[] waits;
+	
+	/** The doubly linked list of scripts waiting on the same event type, or -1. **/
+	private int[] next, prev;
+	
+	/** The stack of free slot indices. **/
+	private int[] free_slots;
+	private int free_count;
+	
+	/** The slots to resume on the next update, and the slots being resumed now. A slot is queued at most once. **/
+	private boolean[] queued;
+	private int[] ready;
+	private int ready_count;
+	private int[] running;
+	
+	/** The number of scripts alive, and the number of steps run since the last resetMetrics(). **/
+	private int alive;
+	private long step_count;
+	
+	/**
+	 * Create a new GameScriptScheduler, which cannot wait for events.
+	 * @param initial_capacity The number of scripts to preallocate room for.
+	 */
+	public GameScriptScheduler(final int initial_capacity) {
+		this(initial_capacity, null);
+	}
+	
+	/**
+	 * Create a new GameScriptScheduler.
+	 * @param initial_capacity The number of scripts to preallocate room for.
+	 * @param the_bus The event bus scripts may wait on, or null.
+	 */
+	public GameScriptScheduler(final int initial_capacity, final GameEventBus the_bus) {
+		if (initial_capacity < 1 || initial_capacity > MAX_CAPACITY)
+			throw new IllegalArgumentException("initial capacity must be between 1 and " + MAX_CAPACITY);
+		
+		timers = new GameTimerWheel(initial_capacity);
+		bus = the_bus;
+		event_heads = new int[the_bus == null ? 0 : the_bus.getTypeCount()];
+		subscribed = new boolean[event_heads.length];
+		for (int i = 0; i < event_heads.length; i++)
+			event_heads[i] = -1;
+		
+		capacity = 0;
+		scripts = new GameScript[0];
+		steps = new int[0];
+		data = new int[0];
+		states = new int[0];
+		generations = new int[0];
+		waits = new int[0];
+		next = new int[0];
+		prev = new int[0];
+		free_slots = new int[0];
+		queued = new boolean[0];
+		ready = new int[0];
+		running = new int[0];
+		
+		grow(initial_capacity);
+	}
+	
+	/**
+	 * Start a script, to first be resumed at step 0 on the next update.
+	 * @param script The script.
+	 * @param the_data Any integer, passed to every step (ex - the index of the entity it drives).
+	 * @return The handle of the new run of the script.
+	 */
+	public int start(final GameScript script, final int the_data) {
+		if (script == null)
+			throw new IllegalArgumentException("script cannot be null");
+		
+		if (free_count == 0) {
+			if (capacity == MAX_CAPACITY)
+				throw new IllegalStateException("no more than " + MAX_CAPACITY + " scripts may be alive at once");
+			grow(Math.min(capacity * 2, MAX_CAPACITY));
+		}
+		
+		final int i = free_slots[--free_count];
+		scripts[i] = script;
+		steps[i] = 0;
+		data[i] = the_data;
+		alive++;
+		makeReady(i);
+		
+		return (generations[i] << INDEX_BITS) | i;
+	}
+	
+	/**
+	 * Stop a script, cancelling whatever it waits for.
+	 * @param handle The script handle.
+	 * @return True if stopped, false if the handle was no longer valid.
+	 */
+	public boolean stop(final int handle) {
+		final int i = resolve(handle);
+		if (i < 0)
+			return false;
+		
+		cancelWait(i);
+		free(i);
+		return true;
+	}
+	
+	/** Stop every script, and unsubscribe from the event bus. **/
+	public void clear() {
+		for (int i = 0; i < capacity; i++) {
+			if (states[i] != STATE_FREE) {
+				cancelWait(i);
+				free(i);
+			}
+			queued[i] = false;
+		}
+		ready_count = 0;
+		
+		for (int type = 0; type < subscribed.length; type++) {
+			if (subscribed[type]) {
+				bus.unsubscribe(type, this);
+				subscribed[type] = false;
+			}
+		}
+	}
+	
+	/**
+	 * Wait, from within a step, for the given milliseconds of game time to
+	 * pass, counted by update().
+	 * @param handle The handle of the script being resumed.
+	 * @param millis The milliseconds to wait.
+	 */
+	public void waitTime(final int handle, final long millis) {
+		final int i = resolveRunning(handle);
+		waits[i] = timers.schedule(millis, this, i);
+		states[i] = STATE_WAIT_TIME;
+	}
+	
+	/**
+	 * Wait, from within a step, for wake() to be called for the script.
+	 * @param handle The handle of the script being resumed.
+	 */
+	public void waitWake(final int handle) {
+		final int i = resolveRunning(handle);
+		states[i] = STATE_WAIT_WAKE;
+	}
+	
+	/**
+	 * Wait, from within a step, for the next event of the given type to be
+	 * dispatched by the event bus.
+	 * @param handle The handle of the script being resumed.
+	 * @param type The registered event type.
+	 */
+	public void waitEvent(final int handle, final int type) {
+		if (bus == null)
+			throw new IllegalStateException("scheduler was created without an event bus");
+		if (type < 0 || type >= event_heads.length)
+			throw new IllegalArgumentException("event type out of range: " + type);
+		
+		final int i = resolveRunning(handle);
+		if (!subscribed[type]) {
+			bus.subscribe(type, this);
+			subscribed[type] = true;
+		}
+		
+		waits[i] = type;
+		prev[i] = -1;
+		next[i] = event_heads[type];
+		if (event_heads[type] != -1)
+			prev[event_heads[type]] = i;
+		event_heads[type] = i;
+		states[i] = STATE_WAIT_EVENT;
+	}
+	
+	/**
+	 * End the wait of a script waiting for wake(), so it is resumed on the
+	 * next update. Does nothing if the script is not waiting for a wake, or
+	 * the handle is no longer valid.
+	 * @param handle The script handle.
+	 * @return True if the script was woken.
+	 */
+	public boolean wake(final int handle) {
+		final int i = resolve(handle);
+		if (i < 0 || states[i] != STATE_WAIT_WAKE)
+			return false;
+		makeReady(i);
+		return true;
+	}
+	
+	/**
+	 * Advance the schedulers game time, and resume every script whose wait
+	 * is over, or which yielded, each once. Scripts made ready while this
+	 * runs are resumed on the next update.
+	 * @param dt The time delta. (Number of milliseconds to advance)
+	 */
+	public void update(final long dt) {
+		
+		timers.advance(dt);
+		
+		// Swap the queues, so scripts made ready from here on wait for the next update.
+		final int[] run = ready;
+		final int count = ready_count;
+		ready = running;
+		running = run;
+		ready_count = 0;
+		
+		for (int r = 0; r < count; r++) {
+			final int i = run[r];
+			queued[i] = false;
+			
+			// Stopped since being queued.
+			if (states[i] != STATE_READY)
+				continue;
+			
+			final int handle = (generations[i] << INDEX_BITS) | i;
+			states[i] = STATE_RUNNING;
+			final int step = scripts[i].resume(this, handle, steps[i], data[i]);
+			step_count++;
+			
+			// The script stopped itself.
+			if (resolve(handle) < 0)
+				continue;
+			
+			if (step == GameScript.DONE) {
+				cancelWait(i);
+				free(i);
+				continue;
+			}
+			
+			steps[i] = step;
+			if (states[i] == STATE_RUNNING)
+				makeReady(i);
+		}
+		
+	}
+	
+	public void onTimer(final int handle, final int the_data) {
+		if (states[the_data] == STATE_WAIT_TIME && waits[the_data] == handle)
+			makeReady(the_data);
+	}
+	
+	public void onEvent(final GameEvent event) {
+		final int type = event.getType();
+		int i = event_heads[type];
+		event_heads[type] = -1;
+		while (i != -1) {
+			final int nxt = next[i];
+			next[i] = -1;
+			prev[i] = -1;
+			makeReady(i);
+			i = nxt;
+		}
+	}
+	
+	/** Retrieve the number of scripts alive. **/
+	public int getScriptCount() {
+		return alive;
+	}
+	
+	/** Retrieve the number of scripts to be resumed on the next update. **/
+	public int getReadyCount() {
+		return ready_count;
+	}
+	
+	/** Retrieve the number of script steps run since the last resetMetrics(). **/
+	public long getStepCount() {
+		return step_count;
+	}
+	
+	/** Reset the step count. **/
+	public void resetMetrics() {
+		step_count = 0;
+	}
+	
+	/** Retrieve the game time of the scheduler, in milliseconds. **/
+	public long getTime() {
+		return timers.getTime();
+	}
+	
+	/**
+	 * Check whether the handle still refers to a script alive.
+	 * @param handle The script handle.
+	 * @return True if the script is alive.
+	 */
+	public boolean isAlive(final int handle) {
+		return resolve(handle) >= 0;
+	}
+	
+	/** Mark a slot ready, and queue it unless still queued from before it was stopped and reused. **/
+	private void makeReady(final int i) {
+		states[i] = STATE_READY;
+		if (!queued[i]) {
+			queued[i] = true;
+			ready[ready_count++] = i;
+		}
+	}
+	
+	/** Cancel the timer, or leave the event list, of a waiting script. **/
+	private void cancelWait(final int i) {
+		if (states[i] == STATE_WAIT_TIME) {
+			timers.cancel(waits[i]);
+		} else if (states[i] == STATE_WAIT_EVENT) {
+			if (prev[i] != -1)
+				next[prev[i]] = next[i];
+			else
+				event_heads[waits[i]] = next[i];
+			if (next[i] != -1)
+				prev[next[i]] = prev[i];
+			next[i] = -1;
+			prev[i] = -1;
+		}
+	}
+	
+	private void free(final int i) {
+		states[i] = STATE_FREE;
+		scripts[i] = null;
+		generations[i] = (generations[i] + 1) & GENERATION_MASK;
+		free_slots[free_count++] = i;
+		alive--;
+	}
+	
+	/**
+	 * Find the slot referred to by a handle.
+	 * @return The slot index, or -1 if the handle is stale or invalid.
+	 */
+	private int resolve(final int handle) {
+		if (handle < 0)
+			return -1;
+		final int i = handle & INDEX_MASK;
+		if (i >= capacity || states[i] == STATE_FREE || generations[i] != (handle >>> INDEX_BITS))
+			return -1;
+		return i;
+	}
+	
+	/** Find the slot of the script being resumed, which alone may wait. **/
+	private int resolveRunning(final int handle) {
+		final int i = resolve(handle);
+		if (i < 0 || states[i] != STATE_RUNNING)
+			throw new IllegalStateException("only the script being resumed can wait, once per step");
+		return i;
+	}
+	
+	private void grow(final int new_capacity) {
+		
+		final int old = capacity;
+		
+		final GameScript[] s = new GameScript[new_capacity];
+		System.arraycopy(scripts, 0, s, 0, old);
+		scripts = s;
+		
+		steps = growInts(steps, new_capacity);
+		data = growInts(data, new_capacity);
+		states = growInts(states, new_capacity);
+		generations = growInts(generations, new_capacity);
+		waits = growInts(waits, new_capacity);
+		next = growInts(next, new_capacity);
+		prev = growInts(prev, new_capacity);
+		free_slots = growInts(free_slots, new_capacity);
+		final boolean[] q = new boolean[new_capacity];
+		System.arraycopy(queued, 0, q, 0, old);
+		queued = q;
+		ready = growInts(ready, new_capacity);
+		running = growInts(running, new_capacity);
+		
+		for (int i = new_capacity - 1; i >= old; i--) {
+			next[i] = -1;
+			prev[i] = -1;
+			free_slots[free_count++] = i;
+		}
+		
+		capacity = new_capacity;
+		
+	}
+	
+	private static int[] growInts(final int[] src, final int length) {
+		final int[] rtn_val = new int[length];
+		System.arraycopy(src, 0, rtn_val, 0, src.length);
+		return rtn_val;
+	}
+	
+}
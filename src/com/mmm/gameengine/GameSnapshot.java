@@ -0,0 +1,390 @@
+package com.mmm.gameengine;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The GameSnapshot class captures every SnapshotGameState added to the
+ * GameEngine into one versioned binary buffer, and restores them from it.
+ * Restoring a snapshot after onPause(), or after the process was killed,
+ * is far quicker than rebuilding each state through switchedTo(), since
+ * states read their values straight back out of the buffer.
+ * <BR>
+ * The snapshot is laid out as:
+ * <pre>
+ * int MAGIC, int FORMAT_VERSION, int current state ID, int state count,
+ * then for every state: int state ID, int state version, int length, data
+ * </pre>
+ * The buffer is a direct NIO buffer, reused (and only grown) by every
+ * capture, which can be written to, or read from, a FileChannel as is.
+ * <BR>
+ * Successive snapshots can also be stored as deltas: encodeDelta() writes
+ * only the byte ranges which changed since an older snapshot, and
+ * applyDelta() turns a copy of the older snapshot into the newer one.
+ * <BR>
+ * To use:
+ *
+ * <code>snapshot.capture(GameEngine.getInstance());</code>
+ *
+ * <code>snapshot.writeTo(new FileOutputStream(file).getChannel());</code>
+ *
+ * and, after the states have been added and initialized again,
+ *
+ * <code>snapshot.readFrom(new FileInputStream(file).getChannel());</code>
+ *
+ * <code>snapshot.restore(GameEngine.getInstance());</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.1
+ *
+ */
+public class GameSnapshot {
+	
+	/** The first int of every snapshot, 'MMMS'. **/
+	public static final int MAGIC = 0x4D4D4D53;
+	
+	/** The first int of every delta, 'MMMD'. **/
+	public static final int DELTA_MAGIC = 0x4D4D4D44;
+	
+	/** The version of the snapshot layout. **/
+	public static final int FORMAT_VERSION = 1;
+	
+	/** The ID written when there is no current state. **/
+	private static final int NO_STATE = Integer.MIN_VALUE;
+	
+	/** Equal runs shorter than this are folded into the surrounding changed runs of a delta. **/
+	private static final int MIN_EQUAL_RUN = 8;
+	
+	/** The snapshot data, from 0 to <code>length</code>. **/
+	private ByteBuffer buffer;
+	
+	/** The number of valid bytes in the buffer. **/
+	private int length;
+	
+	/**
+	 * Create a new, empty, GameSnapshot with room for 16KB.
+	 */
+	public GameSnapshot() {
+		this(16 * 1024);
+	}
+	
+	/**
+	 * Create a new, empty, GameSnapshot with room for <code>capacity</code>
+	 * bytes before any growth is required.
+	 * @param capacity The number of bytes to preallocate.
+	 */
+	public GameSnapshot(final int capacity) {
+		if (capacity < 16)
+			throw new IllegalArgumentException("capacity must be at least 16 bytes");
+		buffer = ByteBuffer.allocateDirect(capacity);
+		length = 0;
+	}
+	
+	/**
+	 * Capture every SnapshotGameState of the engine, along with which state is
+	 * current, replacing the previous contents of this snapshot.
+	 * @param ge The engine.
+	 * @return The length of the snapshot, in bytes.
+	 */
+	public int capture(final GameEngine ge) {
+		
+		final GameState current = ge.getCurrentState();
+		
+		buffer.clear();
+		buffer.putInt(MAGIC);
+		buffer.putInt(FORMAT_VERSION);
+		buffer.putInt(current == null ? NO_STATE : current.getStateId());
+		final int count_position = buffer.position();
+		buffer.putInt(0);
+		
+		int count = 0;
+		for (GameState state : ge.getStates()) {
+			if (!(state instanceof SnapshotGameState))
+				continue;
+			
+			final SnapshotGameState s = (SnapshotGameState)state;
+			final int start = buffer.position();
+			
+			// Write the state, growing the buffer and writing it again until it fits.
+			while (true) {
+				try {
+					buffer.putInt(s.getStateId());
+					buffer.putInt(s.getSnapshotVersion());
+					buffer.putInt(0);
+					s.writeSnapshot(buffer);
+					break;
+				} catch (BufferOverflowException e) {
+					grow(buffer.capacity() * 2);
+					buffer.position(start);
+				}
+			}
+			
+			buffer.putInt(start + 8, buffer.position() - start - 12);
+			count++;
+		}
+		
+		buffer.putInt(count_position, count);
+		length = buffer.position();
+		
+		return length;
+		
+	}
+	
+	/**
+	 * Restore the engine from this snapshot: make the state which was current
+	 * when captured current again, without calling leaving() or switchedTo(),
+	 * then hand every captured state its data. The
+	 * states must already have been added and initialized; captured states
+	 * which no longer exist are skipped.
+	 * @param ge The engine.
+	 * @return True if restored, false if this snapshot is empty or not a valid snapshot.
+	 */
+	public boolean restore(final GameEngine ge) {
+		
+		if (length < 16)
+			return false;
+		
+		final ByteBuffer in = buffer.duplicate();
+		in.position(0);
+		in.limit(length);
+		
+		if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION)
+			return false;
+		
+		final int current_id = in.getInt();
+		final int count = in.getInt();
+		
+		if (current_id != NO_STATE)
+			ge.restoreCurrentState(current_id);
+		
+		for (int i = 0; i < count; i++) {
+			final int id = in.getInt();
+			final int version = in.getInt();
+			final int data_length = in.getInt();
+			final int end = in.position() + data_length;
+			
+			final GameState state = ge.retrieveState(id);
+			if (state instanceof SnapshotGameState) {
+				final ByteBuffer data = in.duplicate();
+				data.limit(end);
+				((SnapshotGameState)state).readSnapshot(data.slice(), version);
+			}
+			
+			in.position(end);
+		}
+		
+		return true;
+		
+	}
+	
+	/** Retrieve the length of the snapshot, in bytes. **/
+	public int getLength() {
+		return length;
+	}
+	
+	/** Empty this snapshot. **/
+	public void clear() {
+		length = 0;
+	}
+	
+	/**
+	 * Copy the snapshot into a new byte[], for instance to store in the Bundle
+	 * given to onSaveInstanceState().
+	 * @return The snapshot bytes.
+	 */
+	public byte[] toByteArray() {
+		final byte[] rtn_val = new byte[length];
+		final ByteBuffer in = buffer.duplicate();
+		in.position(0);
+		in.limit(length);
+		in.get(rtn_val);
+		return rtn_val;
+	}
+	
+	/**
+	 * Replace the contents of this snapshot with the given bytes.
+	 * @param bytes The bytes, as returned by toByteArray().
+	 */
+	public void setBytes(final byte[] bytes) {
+		if (bytes.length > buffer.capacity())
+			grow(bytes.length);
+		buffer.clear();
+		buffer.put(bytes);
+		length = bytes.length;
+	}
+	
+	/**
+	 * Write the snapshot to a channel, such as a FileChannel.
+	 * @param channel The channel. It is not closed.
+	 * @throws IOException if writing failed.
+	 */
+	public void writeTo(final WritableByteChannel channel) throws IOException {
+		final ByteBuffer out = buffer.duplicate();
+		out.position(0);
+		out.limit(length);
+		while (out.hasRemaining())
+			channel.write(out);
+	}
+	
+	/**
+	 * Replace the contents of this snapshot with everything read from a channel.
+	 * @param channel The channel. It is read to its end, but not closed.
+	 * @throws IOException if reading failed.
+	 */
+	public void readFrom(final ReadableByteChannel channel) throws IOException {
+		buffer.clear();
+		while (true) {
+			if (!buffer.hasRemaining()) {
+				final int position = buffer.position();
+				length = position;
+				grow(buffer.capacity() * 2);
+				buffer.position(position);
+			}
+			if (channel.read(buffer) < 0)
+				break;
+		}
+		length = buffer.position();
+	}
+	
+	/**
+	 * Encode the changes between an older snapshot and this one as a delta:
+	 * <pre>
+	 * int DELTA_MAGIC, int base length, int new length,
+	 * then runs of: varint bytes unchanged, varint bytes changed (never 0), changed bytes
+	 * ending with: varint 0, varint 0
+	 * </pre>
+	 * @param base The older snapshot.
+	 * @param reuse A buffer to write the delta into if large enough, or null.
+	 * @return The delta, from position 0 to its limit. Either <code>reuse</code> or a new buffer.
+	 */
+	public ByteBuffer encodeDelta(final GameSnapshot base, final ByteBuffer reuse) {
+		
+		// Worst case: everything changed, written as one run.
+		final int worst = 12 + 10 + length + 2;
+		ByteBuffer out = reuse;
+		if (out == null || out.capacity() < worst)
+			out = ByteBuffer.allocateDirect(worst);
+		out.clear();
+		
+		out.putInt(DELTA_MAGIC);
+		out.putInt(base.length);
+		out.putInt(length);
+		
+		final ByteBuffer old_data = base.buffer;
+		final int common = Math.min(base.length, length);
+		
+		int i = 0;
+		while (i < length) {
+			
+			// Skip equal bytes, a long at a time where possible.
+			int start = i;
+			while (start + 8 <= common && buffer.getLong(start) == old_data.getLong(start))
+				start += 8;
+			while (start < common && buffer.get(start) == old_data.get(start))
+				start++;
+			if (start >= length)
+				break;
+			
+			// Extend the changed run until a long enough equal run, or the end, is found.
+			int end = start + 1;
+			while (end < length) {
+				if (end >= common || buffer.get(end) != old_data.get(end)) {
+					end++;
+					continue;
+				}
+				int equal = end;
+				while (equal < common && equal - end < MIN_EQUAL_RUN && buffer.get(equal) == old_data.get(equal))
+					equal++;
+				if (equal - end >= MIN_EQUAL_RUN || equal == length)
+					break;
+				end = equal;
+			}
+			
+			putVarint(out, start - i);
+			putVarint(out, end - start);
+			for (int b = start; b < end; b++)
+				out.put(buffer.get(b));
+			
+			i = end;
+		}
+		
+		putVarint(out, 0);
+		putVarint(out, 0);
+		
+		out.flip();
+		return out;
+		
+	}
+	
+	/**
+	 * Apply a delta made by encodeDelta() to this snapshot, which must hold
+	 * exactly the base snapshot the delta was made from.
+	 * @param delta The delta, from its position to its limit. Its position is moved to the end.
+	 * @throws IllegalArgumentException if the delta is invalid or was made from a different base length.
+	 */
+	public void applyDelta(final ByteBuffer delta) {
+		
+		if (delta.getInt() != DELTA_MAGIC)
+			throw new IllegalArgumentException("not a GameSnapshot delta");
+		final int base_length = delta.getInt();
+		final int new_length = delta.getInt();
+		if (base_length != length)
+			throw new IllegalArgumentException("delta was made from a " + base_length + " byte snapshot, not " + length);
+		
+		if (new_length > buffer.capacity())
+			grow(new_length);
+		
+		int i = 0;
+		while (true) {
+			final int skip = getVarint(delta);
+			final int count = getVarint(delta);
+			if (count == 0)
+				break;
+			
+			i += skip;
+			if (i + count > new_length)
+				throw new IllegalArgumentException("corrupt GameSnapshot delta");
+			for (int b = 0; b < count; b++)
+				buffer.put(i + b, delta.get());
+			i += count;
+		}
+		
+		length = new_length;
+		
+	}
+	
+	/** Grow the buffer, keeping the first <code>length</code> bytes. **/
+	private void grow(final int capacity) {
+		final ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(capacity, buffer.capacity()));
+		final ByteBuffer old = buffer.duplicate();
+		old.position(0);
+		old.limit(Math.max(length, buffer.position()));
+		grown.put(old);
+		grown.clear();
+		buffer = grown;
+	}
+	
+	private static void putVarint(final ByteBuffer out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte)value);
+	}
+	
+	private static int getVarint(final ByteBuffer in) {
+		int value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+	
+}
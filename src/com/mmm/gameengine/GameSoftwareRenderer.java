@@ -0,0 +1,236 @@
+package com.mmm.gameengine;
+
+import java.util.IdentityHashMap;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+/**
+ * The GameSoftwareRenderer class is a GameRenderer which rasterizes into an
+ * int[] ARGB framebuffer in plain Java, with no Canvas or display involved.
+ * It samples the nearest source pixel, supports scale, rotation, and tint,
+ * and blends source over destination by source alpha.
+ * <BR>
+ * Its output is not meant to match the device pixel for pixel, only to put
+ * the same work through one deterministic path, for render throughput
+ * benchmarks, golden image tests, and comparing drawing optimisations.
+ * <BR>
+ * Source pixels are read from each Bitmap once, with getPixels(), and kept.
+ * Where Bitmaps cannot be read (a stubbed android.jar), register the pixels
+ * of each Bitmap with setPixels() first.
+ * <BR>
+ * To use:
+ *
+ * <code>GameSoftwareRenderer renderer = new GameSoftwareRenderer(480, 320);</code>
+ *
+ * <code>state.draw(renderer);</code>
+ *
+ * <code>int diff = renderer.countDifferences(golden, 2);</code>
+ *
+ * @author Michael Morris
+ * @version 1.1.1
+ *
+ */
+public class GameSoftwareRenderer implements GameRenderer {
+	
+	private final int width, height;
+	
+	/** The framebuffer, row by row. **/
+	private final int[] pixels;
+	
+	/** The source pixels of every Bitmap drawn, and their widths. **/
+	private final IdentityHashMap<Bitmap, int[]> sources = new IdentityHashMap<Bitmap, int[]>();
+	private final IdentityHashMap<Bitmap, Integer> source_widths = new IdentityHashMap<Bitmap, Integer>();
+	
+	/** The number of sprites drawn, and pixels written, since the last resetCounters(). **/
+	private int sprite_count;
+	private long pixel_count;
+	
+	/**
+	 * Create a new GameSoftwareRenderer, cleared to transparent black.
+	 * @param the_width The framebuffer width, in pixels.
+	 * @param the_height The framebuffer height, in pixels.
+	 */
+	public GameSoftwareRenderer(final int the_width, final int the_height) {
+		if (the_width < 1 || the_height < 1)
+			throw new IllegalArgumentException("framebuffer must be at least 1x1");
+		
+		width = the_width;
+		height = the_height;
+		pixels = new int[width * height];
+	}
+	
+	/**
+	 * Register the ARGB pixels of a Bitmap, instead of reading them with
+	 * getPixels().
+	 * @param bitmap The Bitmap, used only as a key.
+	 * @param argb The pixels, row by row.
+	 * @param bitmap_width The width of a row.
+	 */
+	public void setPixels(final Bitmap bitmap, final int[] argb, final int bitmap_width) {
+		if (bitmap_width < 1 || argb.length % bitmap_width != 0)
+			throw new IllegalArgumentException("pixels must hold whole rows of " + bitmap_width);
+		sources.put(bitmap, argb);
+		source_widths.put(bitmap, bitmap_width);
+	}
+	
+	/** Forget every Bitmaps pixels, for instance once they have been recycled. **/
+	public void clearPixels() {
+		sources.clear();
+		source_widths.clear();
+	}
+	
+	public void release(final Bitmap bitmap) {
+		sources.remove(bitmap);
+		source_widths.remove(bitmap);
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/** Retrieve the framebuffer, row by row. It is not copied. **/
+	public int[] getFramebuffer() {
+		return pixels;
+	}
+	
+	public void clear(final int color) {
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = color;
+		}
+	}
+	
+	public void drawBitmap(final Bitmap bitmap, final Rect src, final float left, final float top, final float dst_width, final float dst_height,
+			final float rotation, final boolean tinted, final int tint_color) {
+		
+		if (dst_width <= 0 || dst_height <= 0 || src.right <= src.left || src.bottom <= src.top)
+			return;
+		
+		int[] source = sources.get(bitmap);
+		if (source == null) {
+			source = new int[bitmap.getWidth() * bitmap.getHeight()];
+			bitmap.getPixels(source, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+			setPixels(bitmap, source, bitmap.getWidth());
+		}
+		final int stride = source_widths.get(bitmap);
+		
+		sprite_count++;
+		
+		// Map every destination pixel back into the source; the inverse of scale, then rotate about the center.
+		final float cx = left + dst_width * 0.5f;
+		final float cy = top + dst_height * 0.5f;
+		final double radians = Math.toRadians(rotation);
+		final float cos = (float)Math.cos(radians);
+		final float sin = (float)Math.sin(radians);
+		final float step_x = (src.right - src.left) / dst_width;
+		final float step_y = (src.bottom - src.top) / dst_height;
+		
+		// The destination area covered once rotated.
+		final float half_w = (Math.abs(dst_width * cos) + Math.abs(dst_height * sin)) * 0.5f;
+		final float half_h = (Math.abs(dst_width * sin) + Math.abs(dst_height * cos)) * 0.5f;
+		final int x0 = Math.max(0, (int)Math.floor(cx - half_w));
+		final int y0 = Math.max(0, (int)Math.floor(cy - half_h));
+		final int x1 = Math.min(width, (int)Math.ceil(cx + half_w));
+		final int y1 = Math.min(height, (int)Math.ceil(cy + half_h));
+		
+		final int tint_r = (tint_color >> 16) & 0xFF;
+		final int tint_g = (tint_color >> 8) & 0xFF;
+		final int tint_b = tint_color & 0xFF;
+		
+		for (int py = y0; py < y1; py++) {
+			final float dy = py + 0.5f - cy;
+			int out = py * width + x0;
+			for (int px = x0; px < x1; px++, out++) {
+				final float dx = px + 0.5f - cx;
+				
+				// Rotate back, then find the offset within the unrotated destination.
+				final float lx = dx * cos + dy * sin + dst_width * 0.5f;
+				final float ly = -dx * sin + dy * cos + dst_height * 0.5f;
+				if (lx < 0 || ly < 0 || lx >= dst_width || ly >= dst_height)
+					continue;
+				
+				// Rounding can carry the last column or row onto the edge of the source area.
+				final int sx = Math.min(src.left + (int)(lx * step_x), src.right - 1);
+				final int sy = Math.min(src.top + (int)(ly * step_y), src.bottom - 1);
+				int color = source[sy * stride + sx];
+				
+				final int alpha = color >>> 24;
+				if (alpha == 0)
+					continue;
+				
+				int r = (color >> 16) & 0xFF;
+				int g = (color >> 8) & 0xFF;
+				int b = color & 0xFF;
+				if (tinted) {
+					r = r * tint_r / 255;
+					g = g * tint_g / 255;
+					b = b * tint_b / 255;
+				}
+				
+				if (alpha < 255) {
+					final int under = pixels[out];
+					final int inverse = 255 - alpha;
+					r = (r * alpha + ((under >> 16) & 0xFF) * inverse) / 255;
+					g = (g * alpha + ((under >> 8) & 0xFF) * inverse) / 255;
+					b = (b * alpha + (under & 0xFF) * inverse) / 255;
+					final int a = alpha + ((under >>> 24) * inverse) / 255;
+					color = (a << 24) | (r << 16) | (g << 8) | b;
+				} else {
+					color = 0xFF000000 | (r << 16) | (g << 8) | b;
+				}
+				
+				pixels[out] = color;
+				pixel_count++;
+			}
+		}
+		
+	}
+	
+	/**
+	 * Count the pixels differing from a golden image by more than a
+	 * tolerance in any channel.
+	 * @param golden The golden image, the same size as the framebuffer.
+	 * @param tolerance The largest difference allowed per channel, 0 to 255.
+	 * @return The number of differing pixels.
+	 */
+	public int countDifferences(final int[] golden, final int tolerance) {
+		if (golden.length != pixels.length)
+			throw new IllegalArgumentException("golden image must be " + width + "x" + height);
+		
+		int rtn_val = 0;
+		for (int i = 0; i < pixels.length; i++) {
+			final int a = pixels[i];
+			final int b = golden[i];
+			if (a == b)
+				continue;
+			for (int shift = 0; shift < 32; shift += 8) {
+				if (Math.abs(((a >>> shift) & 0xFF) - ((b >>> shift) & 0xFF)) > tolerance) {
+					rtn_val++;
+					break;
+				}
+			}
+		}
+		return rtn_val;
+	}
+	
+	/** Retrieve the number of sprites drawn since the last resetCounters(). **/
+	public int getSpriteCount() {
+		return sprite_count;
+	}
+	
+	/** Retrieve the number of pixels written since the last resetCounters(). **/
+	public long getPixelCount() {
+		return pixel_count;
+	}
+	
+	/** Reset the sprite and pixel counters. **/
+	public void resetCounters() {
+		sprite_count = 0;
+		pixel_count = 0;
+	}
+	
+}
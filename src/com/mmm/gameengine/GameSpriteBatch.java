@@ -0,0 +1,292 @@
+package com.mmm.gameengine;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.LightingColorFilter;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Shader;
+
+/**
+ * The GameSpriteBatch class is a GameRenderer drawing on a Canvas which,
+ * instead of a rotate, drawBitmap, and rotate for every sprite, gathers
+ * consecutive sprites sharing a Bitmap and tint into textured quads and
+ * draws them all with one Canvas.drawVertices() call. Rotation and scale
+ * are applied to the quad corners here, into float arrays allocated once.
+ * <BR>
+ * Sprites are still drawn in the order given: a batch is flushed whenever
+ * the Bitmap or tint changes, when it is full, and at end(). Sprites drawn
+ * from the same sheet one after another therefore cost one call, while
+ * alternating between sheets gains nothing.
+ * <BR>
+ * A BitmapShader is kept for each of the last SHADER_SLOTS Bitmaps drawn.
+ * A Bitmap must be passed to release() before it is recycled, or the batch
+ * may still draw from it.
+ * <BR>
+ * Canvas.drawVertices() is not supported on hardware accelerated Canvases
+ * before API 29. The Canvas of a SurfaceView, as used by GameView, is
+ * always drawn in software, so it is supported there.
+ * <BR>
+ * To use:
+ *
+ * <code>GameSpriteBatch batch = new GameSpriteBatch(512);</code>
+ *
+ * <code>batch.begin(canvas);</code>
+ *
+ * <code>state.draw(batch);</code>
+ *
+ * <code>batch.end();</code>
+ *
+ * @author Michael Morris
+ * @version 1.1.0
+ *
+ */
+public class GameSpriteBatch implements GameRenderer {
+	
+	/** The most sprites one batch can hold, so every index fits a short. **/
+	public static final int MAX_CAPACITY = 8192;
+	
+	/** The number of Bitmaps whose shaders are kept. **/
+	public static final int SHADER_SLOTS = 16;
+	
+	private final int capacity;
+	
+	/** The quad corners and texture coordinates, two floats per corner, four corners per sprite. **/
+	private final float[] verts;
+	private final float[] texs;
+	
+	/** Two triangles per sprite, never changed once filled in. **/
+	private final short[] indices;
+	
+	private final Paint paint = new Paint();
+	
+	/** A BitmapShader for each of the last Bitmaps drawn, so flushing does not allocate, and the slot to fill next. **/
+	private final Bitmap[] shader_bitmaps = new Bitmap[SHADER_SLOTS];
+	private final BitmapShader[] shaders = new BitmapShader[SHADER_SLOTS];
+	private int next_shader;
+	
+	/** The tint filter, and the tint color it was last made for. **/
+	private LightingColorFilter tint_filter = null;
+	private int tint_filter_color;
+	
+	private Canvas canvas;
+	
+	/** The Bitmap, tint, and number of sprites in the batch being gathered. **/
+	private Bitmap batch_bitmap = null;
+	private boolean batch_tinted;
+	private int batch_tint;
+	private int batch_count;
+	
+	/** The number of sprites drawn, and drawVertices() calls made, since the last resetCounters(). **/
+	private int sprite_count;
+	private int flush_count;
+	
+	/**
+	 * Create a new GameSpriteBatch.
+	 * @param the_capacity The most sprites drawn per call, 1 to MAX_CAPACITY.
+	 */
+	public GameSpriteBatch(final int the_capacity) {
+		if (the_capacity < 1 || the_capacity > MAX_CAPACITY)
+			throw new IllegalArgumentException("capacity must be 1 to " + MAX_CAPACITY);
+		
+		capacity = the_capacity;
+		verts = new float[capacity * 8];
+		texs = new float[capacity * 8];
+		indices = new short[capacity * 6];
+		
+		for (int i = 0; i < capacity; i++) {
+			final int corner = i * 4;
+			final int index = i * 6;
+			indices[index] = (short)corner;
+			indices[index + 1] = (short)(corner + 1);
+			indices[index + 2] = (short)(corner + 2);
+			indices[index + 3] = (short)corner;
+			indices[index + 4] = (short)(corner + 2);
+			indices[index + 5] = (short)(corner + 3);
+		}
+		
+		paint.setAntiAlias(true);
+	}
+	
+	/**
+	 * Start drawing on a Canvas.
+	 * @param c The canvas.
+	 */
+	public void begin(final Canvas c) {
+		canvas = c;
+		batch_bitmap = null;
+		batch_count = 0;
+	}
+	
+	/** Draw whatever has been gathered, and stop drawing on the Canvas. **/
+	public void end() {
+		flush();
+		canvas = null;
+	}
+	
+	/** Retrieve the Canvas being drawn on, flushing first so it may be drawn on directly. **/
+	public Canvas getCanvas() {
+		flush();
+		return canvas;
+	}
+	
+	/** Forget the shaders of every Bitmap drawn, for instance once they have been recycled. **/
+	public void clearShaders() {
+		for (int i = 0; i < SHADER_SLOTS; i++) {
+			shader_bitmaps[i] = null;
+			shaders[i] = null;
+		}
+	}
+	
+	public void release(final Bitmap bitmap) {
+		if (batch_count > 0 && bitmap == batch_bitmap)
+			flush();
+		if (bitmap == batch_bitmap)
+			batch_bitmap = null;
+		for (int i = 0; i < SHADER_SLOTS; i++) {
+			if (shader_bitmaps[i] == bitmap) {
+				shader_bitmaps[i] = null;
+				shaders[i] = null;
+			}
+		}
+	}
+	
+	public int getWidth() {
+		return canvas.getWidth();
+	}
+	
+	public int getHeight() {
+		return canvas.getHeight();
+	}
+	
+	public void clear(final int color) {
+		flush();
+		canvas.drawColor(color);
+	}
+	
+	public void drawBitmap(final Bitmap bitmap, final Rect src, final float left, final float top, final float width, final float height,
+			final float rotation, final boolean tinted, final int tint_color) {
+		
+		if (canvas == null)
+			throw new IllegalStateException("begin() must be called before drawing");
+		
+		if (batch_count > 0 && (bitmap != batch_bitmap || tinted != batch_tinted || (tinted && tint_color != batch_tint) || batch_count == capacity))
+			flush();
+		
+		batch_bitmap = bitmap;
+		batch_tinted = tinted;
+		batch_tint = tint_color;
+		
+		final int v = batch_count * 8;
+		
+		// Corners as offsets from the center, turned by the rotation, clockwise from the top left.
+		final float cx = left + width * 0.5f;
+		final float cy = top + height * 0.5f;
+		final float hw = width * 0.5f;
+		final float hh = height * 0.5f;
+		if (rotation == 0) {
+			verts[v] = cx - hw;
+			verts[v + 1] = cy - hh;
+			verts[v + 2] = cx + hw;
+			verts[v + 3] = cy - hh;
+			verts[v + 4] = cx + hw;
+			verts[v + 5] = cy + hh;
+			verts[v + 6] = cx - hw;
+			verts[v + 7] = cy + hh;
+		} else {
+			final double radians = Math.toRadians(rotation);
+			final float cos = (float)Math.cos(radians);
+			final float sin = (float)Math.sin(radians);
+			final float ax = hw * cos, ay = hw * sin;
+			final float bx = -hh * sin, by = hh * cos;
+			verts[v] = cx - ax - bx;
+			verts[v + 1] = cy - ay - by;
+			verts[v + 2] = cx + ax - bx;
+			verts[v + 3] = cy + ay - by;
+			verts[v + 4] = cx + ax + bx;
+			verts[v + 5] = cy + ay + by;
+			verts[v + 6] = cx - ax + bx;
+			verts[v + 7] = cy - ay + by;
+		}
+		
+		// The shader is in Bitmap pixels, so texture coordinates are too.
+		texs[v] = src.left;
+		texs[v + 1] = src.top;
+		texs[v + 2] = src.right;
+		texs[v + 3] = src.top;
+		texs[v + 4] = src.right;
+		texs[v + 5] = src.bottom;
+		texs[v + 6] = src.left;
+		texs[v + 7] = src.bottom;
+		
+		batch_count++;
+		sprite_count++;
+		
+	}
+	
+	/** Draw every sprite gathered so far with one drawVertices() call. **/
+	public void flush() {
+		
+		if (batch_count == 0)
+			return;
+		
+		paint.setShader(getShader(batch_bitmap));
+		
+		if (batch_tinted) {
+			if (tint_filter == null || tint_filter_color != batch_tint) {
+				tint_filter = new LightingColorFilter(batch_tint, 1);
+				tint_filter_color = batch_tint;
+			}
+			paint.setColorFilter(tint_filter);
+		} else {
+			paint.setColorFilter(null);
+		}
+		
+		canvas.drawVertices(Canvas.VertexMode.TRIANGLES, batch_count * 8, verts, 0, texs, 0, null, 0, indices, 0, batch_count * 6, paint);
+		
+		batch_count = 0;
+		flush_count++;
+		
+	}
+	
+	/** Find the shader of a Bitmap, making one in an empty or recycled slot, or else the oldest. **/
+	private BitmapShader getShader(final Bitmap bitmap) {
+		
+		int free = -1;
+		for (int i = 0; i < SHADER_SLOTS; i++) {
+			final Bitmap b = shader_bitmaps[i];
+			if (b == bitmap)
+				return shaders[i];
+			if (free < 0 && (b == null || b.isRecycled()))
+				free = i;
+		}
+		
+		if (free < 0) {
+			free = next_shader;
+			next_shader = (next_shader + 1) % SHADER_SLOTS;
+		}
+		
+		shader_bitmaps[free] = bitmap;
+		shaders[free] = new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+		return shaders[free];
+		
+	}
+	
+	/** Retrieve the number of sprites drawn since the last resetCounters(). **/
+	public int getSpriteCount() {
+		return sprite_count;
+	}
+	
+	/** Retrieve the number of drawVertices() calls made since the last resetCounters(). **/
+	public int getFlushCount() {
+		return flush_count;
+	}
+	
+	/** Reset the sprite and flush counters. **/
+	public void resetCounters() {
+		sprite_count = 0;
+		flush_count = 0;
+	}
+	
+}
@@ -1,6 +1,7 @@
 package com.mmm.gameengine;
 
 import android.graphics.Canvas;
+import android.os.Build;
 import android.util.Log;
 
 /**
@@ -9,83 +10,339 @@ import android.util.Log;
  * of the GameView (thereby calling whatever the current game states draw method
  * is required.) The update phase is handled directly with the GameEngine, which
  * calls the current states update method.
+ * <BR>
+ * When each frame starts is decided by a FramePacer: aligned to display vsync
+ * on API 16 and up, otherwise by sleeping out a fixed interval. While the
+ * GameEngine has continuous rendering off and nothing needs redrawing, the
+ * loop does not run frames at all.
+ * <BR>
+ * The loop runs on one thread, started once and kept for the life of the
+ * GameView. When the surface goes away the loop parks, and pause() only
+ * returns once it has stopped drawing; when the surface comes back, resume()
+ * wakes the same loop in place. At most one loop ever runs. shutdown() ends
+ * the thread for good.
  * 
  * Last Edited by: Michael Morris (7.6.2012)
  * @author Michael Morris
- * @version 1.0.0
+ * @version 1.2.3
  *
  */
 public class GameThread implements Runnable {
 
-	/** Desired frame rate. **/
+	/** Desired frame rate, when vsync pacing is not available. **/
 	static final long FPS = 28;
 	
+	/** The longest an idle loop waits before checking for work again. **/
+	static final long IDLE_POLL = 100;
+	
+	/** The longest pause() waits for the loop to park. **/
+	static final long PAUSE_TIMEOUT = 1000;
+	
 	private GameView view;
-	private boolean running = false;
 	
 	private GameEngine ge = null;
 	
+	/** Decides when each frame starts. **/
+	private volatile FramePacer pacer;
+	
+	/** Guards the fields below, and is notified whenever they change. **/
+	private final Object lock = new Object();
+	
+	/** The thread running the loop, or null before start. **/
+	private Thread thread = null;
+	
+	/** Whether there is a surface to draw on. The loop parks while false. **/
+	private volatile boolean surface_ready = false;
+	
+	/** Cleared by shutdown(), ending the loop. **/
+	private volatile boolean alive = true;
+	
+	/** Whether the loop is parked (or not running), so not touching the surface. **/
+	private boolean parked = true;
+	
 	public GameThread(GameView view) {
 		this.view = view;
 		ge = GameEngine.getInstance();
+		pacer = createDefaultPacer();
+	}
+	
+	/**
+	 * Create the best FramePacer for this device: vsync aligned from API 16,
+	 * otherwise sleeping at FPS.
+	 * @return The new pacer.
+	 */
+	public static FramePacer createDefaultPacer() {
+		if (Build.VERSION.SDK_INT >= 16)
+			return new ChoreographerFramePacer();
+		return new SleepFramePacer((int)FPS);
+	}
+	
+	/**
+	 * Replace the FramePacer. The previous pacer is released by the loop once
+	 * it has switched over.
+	 * @param the_pacer The new pacer.
+	 */
+	public void setFramePacer(final FramePacer the_pacer) {
+		if (the_pacer == null)
+			throw new IllegalArgumentException("pacer cannot be null");
+		final FramePacer old = pacer;
+		pacer = the_pacer;
+		old.wake();
+		
+		// With no loop to switch over, release the old pacer here.
+		synchronized (lock) {
+			if (thread == null || !thread.isAlive())
+				old.release();
+		}
+	}
+	
+	/** Retrieve the FramePacer. **/
+	public FramePacer getFramePacer() {
+		return pacer;
+	}
+	
+	/**
+	 * Start the loop thread if it has not been, and let it draw. Called by
+	 * the GameView when its surface is created.
+	 */
+	public void resume() {
+		synchronized (lock) {
+			if (!alive)
+				throw new IllegalStateException("game thread has been shut down");
+			
+			surface_ready = true;
+			if (thread == null) {
+				// The new loop may draw at once, so pause() must wait for it to park.
+				parked = false;
+				thread = new Thread(this, "GameThread");
+				thread.start();
+			}
+			lock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Stop drawing, and wait for the loop to park. Called by the GameView when
+	 * its surface is destroyed, as the surface must not be drawn on once that
+	 * returns.
+	 * @return True if the loop parked, false if it did not within PAUSE_TIMEOUT.
+	 */
+	public boolean pause() {
+		
+		surface_ready = false;
+		pacer.wake();
+		
+		// Wake an idle loop, so it notices sooner than IDLE_POLL. It redraws on resume anyway.
+		ge.requestRender();
+		
+		synchronized (lock) {
+			lock.notifyAll();
+			if (Thread.currentThread() == thread)
+				return true;
+			
+			final long deadline = System.currentTimeMillis() + PAUSE_TIMEOUT;
+			try {
+				while (!parked) {
+					final long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) {
+						Log.e("StickmanPaintball", "GameThread.pause() -- loop did not park in time");
+						return false;
+					}
+					lock.wait(remaining);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return parked;
+			}
+			return true;
+		}
+		
+	}
+	
+	/**
+	 * End the loop thread for good, waiting for it to finish.
+	 * @param timeout The most milliseconds to wait.
+	 * @return True if the thread finished (or was never started).
+	 */
+	public boolean shutdown(final long timeout) {
+		
+		final Thread t;
+		synchronized (lock) {
+			alive = false;
+			surface_ready = false;
+			t = thread;
+			lock.notifyAll();
+		}
+		
+		pacer.wake();
+		if (t == null) {
+			pacer.release();
+			return true;
+		}
+		
+		t.interrupt();
+		try {
+			t.join(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		if (t.isAlive()) {
+			Log.e("StickmanPaintball", "GameThread.shutdown() -- loop did not end in time");
+			return false;
+		}
+		
+		pacer.release();
+		return true;
+		
 	}
 	
+	/**
+	 * Resume or pause the loop.
+	 * @param run True to resume, false to pause.
+	 */
 	public void setRunning(boolean run) {
-		running = run;
+		if (run)
+			resume();
+		else
+			pause();
 	}
 	
+	/** Check whether the loop is drawing (started, and not paused or shut down). **/
 	public boolean isRunning() {
-		return running;
+		return alive && surface_ready;
 	}
 	
 	public void run() {
 		
+		synchronized (lock) {
+			if (thread != Thread.currentThread()) {
+				Log.e("StickmanPaintball", "GameThread.run() -- the loop is only run by its own thread, see resume()");
+				return;
+			}
+		}
+		
 		Log.i("StickmanPaintball", "GameThread.run() method called!");
 		
-		long ticksPS = 1000 / FPS;
-		long startTime = System.currentTimeMillis();
-		long sleepTime;
+		FramePacer frame_pacer = pacer;
+		long last_frame = -1;
+		long carry_nanos = 0;
 		
-		while (running) {
-			Canvas c = null;
-			
-			// Do work if there is a current state to work with.
-			GameState current_state = ge.getCurrentState();
-			if (current_state != null) {
-			
-				// Draw first
-				try {
-					c = view.getHolder().lockCanvas();
-					synchronized (view.getHolder()) {
-						view.onDraw(c);
+		try {
+			while (true) {
+				
+				// Park while there is no surface, telling pause() once parked.
+				if (!surface_ready) {
+					synchronized (lock) {
+						parked = true;
+						lock.notifyAll();
+						while (alive && !surface_ready)
+							lock.wait();
+						if (!alive)
+							break;
+						parked = false;
 					}
-				} finally {
-					if (c != null) {
-						view.getHolder().unlockCanvasAndPost(c);
+					frame_pacer.reset();
+					last_frame = -1;
+					ge.requestRender();
+				}
+				
+				// Pick up a new pacer, releasing the old one here where it is no longer waited on.
+				if (frame_pacer != pacer) {
+					frame_pacer.release();
+					frame_pacer = pacer;
+					frame_pacer.reset();
+					last_frame = -1;
+				}
+				
+				// Nothing to draw or update: wait rather than spin, and do not count the idle time.
+				if (!ge.needsFrame()) {
+					final long timer_delay = ge.getTimerDelay();
+					if (timer_delay < 0) {
+						ge.awaitFrameNeeded(IDLE_POLL);
+						frame_pacer.reset();
+						last_frame = -1;
+						continue;
+					}
+					
+					// A timer is pending: keep counting the idle time, and run a frame once it is due.
+					final long now = System.nanoTime();
+					if (last_frame < 0)
+						last_frame = now;
+					final long wait = timer_delay - (now - last_frame + carry_nanos) / 1000000L;
+					if (wait > 0) {
+						ge.awaitFrameNeeded(Math.min(wait, IDLE_POLL));
+						frame_pacer.reset();
+						continue;
 					}
 				}
-			}
-			
-			long elapsed = System.currentTimeMillis() - startTime;
-			startTime = System.currentTimeMillis();
-			
-			current_state = ge.getCurrentState();
-			
-			if (current_state != null) {
 				
-				// Update second
-				ge.getCurrentState().update(elapsed);
+				final long frame_start = frame_pacer.awaitFrame();
+				if (!surface_ready || frame_pacer != pacer)
+					continue;
+				
+				final long work_start = System.nanoTime();
+				GameTrace.begin("frame");
+				try {
+					ge.beginFrame();
+					
+					Canvas c = null;
+					
+					// Do work if there is a current state to work with.
+					GameState current_state = ge.getCurrentState();
+					if (current_state != null) {
+					
+						// Draw first
+						GameTrace.begin("draw");
+						try {
+							GameTrace.begin("lockCanvas");
+							try {
+								c = view.getHolder().lockCanvas();
+							} finally {
+								GameTrace.end();
+							}
+							if (c != null) {
+								synchronized (view.getHolder()) {
+									view.onDraw(c);
+								}
+							}
+						} finally {
+							if (c != null) {
+								view.getHolder().unlockCanvasAndPost(c);
+							}
+							GameTrace.end();
+						}
+					}
+					
+					// Whole milliseconds since the last frame, carrying the remainder so no time is lost.
+					long elapsed = 0;
+					if (last_frame >= 0) {
+						final long nanos = frame_start - last_frame + carry_nanos;
+						elapsed = nanos / 1000000L;
+						carry_nanos = nanos % 1000000L;
+					}
+					last_frame = frame_start;
+					
+					// Update second (including the current states timers)
+					GameTrace.begin("update");
+					try {
+						ge.update(elapsed);
+					} finally {
+						GameTrace.end();
+					}
+				} finally {
+					GameTrace.end();
+				}
 				
+				frame_pacer.frameDone(System.nanoTime() - work_start);
+			}
+		} catch (InterruptedException e) {
+			Log.i("StickmanPaintball", "GameThread.run() interrupted!");
+		} finally {
+			synchronized (lock) {
+				parked = true;
+				lock.notifyAll();
 			}
-			
-			// Calculate the time to sleep, hopefully meeting our desired frames per second.
-			sleepTime = ticksPS-(System.currentTimeMillis() - startTime);
-			try {
-				if (sleepTime > 0)
-					Thread.sleep(sleepTime);
-				else
-					Thread.sleep(10);
-			} catch (Exception e) { }
 		}
 		
 		Log.i("StickmanPaintball", "GameThread.run() method ending!");
@@ -0,0 +1,22 @@
+package com.mmm.gameengine;
+
+/**
+ * The GameTimerListener interface is notified by a GameTimerWheel when
+ * a scheduled timer expires. The integer data given when scheduling is
+ * passed back, so one listener can serve many timers without any holder
+ * objects being created.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public interface GameTimerListener {
+	
+	/**
+	 * Called, on the game thread, when the timer expires.
+	 * @param handle The handle of the expired timer. A repeating timer keeps its handle.
+	 * @param data The integer data given when the timer was scheduled.
+	 */
+	public void onTimer(final int handle, final int data);
+	
+}
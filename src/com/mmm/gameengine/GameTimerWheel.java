@@ -0,0 +1,440 @@
+package com.mmm.gameengine;
+
+/**
+ * The GameTimerWheel class is a hierarchical timing wheel scheduler, measured
+ * in game time. It replaces per-object millisecond counters for delayed
+ * actions, cooldowns, and respawns: a timer is scheduled once and costs
+ * nothing until it expires, rather than being checked every tick.
+ * <BR>
+ * The wheel has a resolution of one millisecond. The first level has 256
+ * slots, each following level has 64 slots covering 64 times the range of
+ * the one below, reaching about 18 hours in total; longer timers are simply
+ * re-filed until they are within range. Scheduling and cancelling are O(1).
+ * <BR>
+ * Timers are stored in parallel arrays and addressed by integer handles, so
+ * scheduling, firing, and rescheduling repeating timers does not allocate
+ * once the arrays have grown to the peak number of pending timers.
+ * <BR>
+ * The GameEngine keeps one GameTimerWheel per GameState and only advances
+ * the wheel of the current state, so timers are paused automatically while
+ * their state is not in control. Retrieve a states wheel with
+ *
+ * <code>GameEngine.getInstance().getTimerWheel(ID_HERE)</code>
+ *
+ * @author Michael Morris
+ * @version 1.1.0
+ *
+ */
+public class GameTimerWheel {
+	
+	/** The value returned when no timer could be referred to. **/
+	public static final int NO_TIMER = -1;
+	
+	/** The largest number of timers which can be pending at once. **/
+	public static final int MAX_CAPACITY = 1 << 16;
+	
+	private static final int INDEX_BITS = 16;
+	private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+	private static final int GENERATION_MASK = 0x7FFF;
+	
+	/** The number of bits, and slots, of the first level. **/
+	private static final int ROOT_BITS = 8;
+	private static final int ROOT_SIZE = 1 << ROOT_BITS;
+	private static final int ROOT_MASK = ROOT_SIZE - 1;
+	
+	/** The number of bits, and slots, of every following level. **/
+	private static final int LEVEL_BITS = 6;
+	private static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+	private static final int LEVEL_MASK = LEVEL_SIZE - 1;
+	
+	/** The number of levels, including the first. **/
+	private static final int LEVELS = 4;
+	
+	/** The largest delay which can be filed directly, in milliseconds. **/
+	private static final long MAX_DELTA = (1L << (ROOT_BITS + (LEVELS - 1) * LEVEL_BITS)) - 1;
+	
+	/** The head node of every slot, first level slots first, or -1 if empty. **/
+	private final int[] heads;
+	
+	/** The current game time of this wheel, in milliseconds. **/
+	private long now;
+	
+	/** Whether advance() is ignored. **/
+	private boolean paused;
+	
+	private int capacity;
+	
+	/** The game time at which each timer expires. **/
+	private long[] expires;
+	
+	/** The repeat interval of each timer, or 0 if it fires once. **/
+	private long[] intervals;
+	
+	/** The listener and data of each timer. **/
+	private GameTimerListener[] listeners;
+	private int[] data;
+	
+	/** The doubly linked slot list pointers of each timer, or -1. **/
+	private int[] next, prev;
+	
+	/** The slot each timer is filed in, or -1 if the timer is unused. **/
+	private int[] slots;
+	
+	private int[] generations;
+	
+	/** The stack of unused timer indices. **/
+	private int[] free_timers;
+	private int free_count;
+	
+	/** The number of timers currently pending. **/
+	private int pending;
+	
+	/** The earliest expiry of any pending timer, worked out again on demand once a timer has fired or been cancelled. **/
+	private long earliest;
+	private boolean earliest_valid;
+	
+	/**
+	 * Create a new GameTimerWheel with room for 64 pending timers.
+	 */
+	public GameTimerWheel() {
+		this(64);
+	}
+	
+	/**
+	 * Create a new GameTimerWheel with room for <code>initial_capacity</code>
+	 * pending timers before any growth is required.
+	 * @param initial_capacity The number of timers to preallocate.
+	 */
+	public GameTimerWheel(final int initial_capacity) {
+		if (initial_capacity < 1 || initial_capacity > MAX_CAPACITY)
+			throw new IllegalArgumentException("initial capacity must be between 1 and " + MAX_CAPACITY);
+		
+		heads = new int[ROOT_SIZE + (LEVELS - 1) * LEVEL_SIZE];
+		for (int i = 0; i < heads.length; i++)
+			heads[i] = -1;
+		
+		now = 0;
+		paused = false;
+		
+		capacity = 0;
+		expires = new long[0];
+		intervals = new long[0];
+		listeners = new GameTimerListener[0];
+		data = new int[0];
+		next = new int[0];
+		prev = new int[0];
+		slots = new int[0];
+		generations = new int[0];
+		free_timers = new int[0];
+		
+		grow(initial_capacity);
+	}
+	
+	/**
+	 * Schedule a timer which fires once, <code>delay</code> milliseconds of game
+	 * time from now.
+	 * @param delay The number of milliseconds until the timer fires.
+	 * @param listener The listener to notify.
+	 * @param the_data Any integer, passed back to the listener.
+	 * @return The handle of the new timer.
+	 */
+	public int schedule(final long delay, final GameTimerListener listener, final int the_data) {
+		return schedule(delay, 0, listener, the_data);
+	}
+	
+	/**
+	 * Schedule a timer which first fires <code>delay</code> milliseconds of game
+	 * time from now, then every <code>interval</code> milliseconds until cancelled.
+	 * @param delay The number of milliseconds until the timer first fires.
+	 * @param interval The number of milliseconds between repeats, or 0 to fire once.
+	 * @param listener The listener to notify.
+	 * @param the_data Any integer, passed back to the listener.
+	 * @return The handle of the new timer.
+	 */
+	public int schedule(final long delay, final long interval, final GameTimerListener listener, final int the_data) {
+		if (listener == null)
+			throw new IllegalArgumentException("a timer must have a listener");
+		if (delay < 0 || interval < 0)
+			throw new IllegalArgumentException("delay and interval cannot be negative");
+		
+		if (free_count == 0) {
+			if (capacity == MAX_CAPACITY)
+				throw new IllegalStateException("no more than " + MAX_CAPACITY + " timers may be pending at once");
+			grow(Math.min(capacity * 2, MAX_CAPACITY));
+		}
+		
+		final int i = free_timers[--free_count];
+		
+		// A timer never fires during the tick it was scheduled in.
+		expires[i] = now + Math.max(delay, 1);
+		intervals[i] = interval;
+		listeners[i] = listener;
+		data[i] = the_data;
+		
+		file(i);
+		pending++;
+		if (earliest_valid && expires[i] < earliest)
+			earliest = expires[i];
+		
+		return (generations[i] << INDEX_BITS) | i;
+	}
+	
+	/**
+	 * Cancel a pending timer. Cancelling a repeating timer from within its own
+	 * listener stops it from repeating.
+	 * @param handle The timer handle.
+	 * @return True if the timer was cancelled, false if the handle was no longer valid.
+	 */
+	public boolean cancel(final int handle) {
+		final int i = resolve(handle);
+		if (i < 0)
+			return false;
+		
+		unlink(i);
+		free(i);
+		
+		return true;
+	}
+	
+	/** Cancel every pending timer. **/
+	public void clear() {
+		for (int i = 0; i < capacity; i++) {
+			if (slots[i] != -1) {
+				unlink(i);
+				free(i);
+			}
+		}
+	}
+	
+	/**
+	 * Check whether the handle still refers to a pending timer.
+	 * @param handle The timer handle.
+	 * @return True if the timer is pending.
+	 */
+	public boolean isPending(final int handle) {
+		return resolve(handle) >= 0;
+	}
+	
+	/**
+	 * Retrieve the number of milliseconds of game time until the timer fires.
+	 * @param handle The timer handle.
+	 * @return The milliseconds remaining, or -1 if the handle is no longer valid.
+	 */
+	public long getTimeRemaining(final int handle) {
+		final int i = resolve(handle);
+		if (i < 0)
+			return -1;
+		return expires[i] - now;
+	}
+	
+	/**
+	 * Retrieve the milliseconds of game time until the next timer fires, so
+	 * an idle loop can sleep until then.
+	 * @return The milliseconds until the next timer, or -1 if none are pending or the wheel is paused.
+	 */
+	public long getTimeUntilNext() {
+		if (pending == 0 || paused)
+			return -1;
+		if (!earliest_valid) {
+			long min = Long.MAX_VALUE;
+			for (int i = 0; i < capacity; i++) {
+				if (slots[i] != -1 && expires[i] < min)
+					min = expires[i];
+			}
+			earliest = min;
+			earliest_valid = true;
+		}
+		return Math.max(earliest - now, 0);
+	}
+	
+	/** Retrieve the number of pending timers. **/
+	public int getPendingCount() {
+		return pending;
+	}
+	
+	/** Retrieve the game time of this wheel, in milliseconds. **/
+	public long getTime() {
+		return now;
+	}
+	
+	/** Stop advance() from moving game time forward. **/
+	public void pause() {
+		paused = true;
+	}
+	
+	/** Allow advance() to move game time forward again. **/
+	public void resume() {
+		paused = false;
+	}
+	
+	/** Check whether this wheel is paused. **/
+	public boolean isPaused() {
+		return paused;
+	}
+	
+	/**
+	 * Move game time forward by <code>dt</code> milliseconds, notifying the
+	 * listener of every timer which expires along the way, in expiry order.
+	 * @param dt The time delta. (Number of milliseconds to advance)
+	 */
+	public void advance(final long dt) {
+		
+		if (paused)
+			return;
+		
+		for (long step = 0; step < dt; step++) {
+			
+			now++;
+			
+			// Every time a level wraps, file the next slot of the level above into the levels below.
+			if ((now & ROOT_MASK) == 0) {
+				int shift = ROOT_BITS;
+				for (int level = 1; level < LEVELS; level++) {
+					final int index = (int)((now >>> shift) & LEVEL_MASK);
+					cascade(ROOT_SIZE + (level - 1) * LEVEL_SIZE + index);
+					if (index != 0)
+						break;
+					shift += LEVEL_BITS;
+				}
+			}
+			
+			if (pending == 0)
+				continue;
+			
+			final int slot = (int)(now & ROOT_MASK);
+			while (heads[slot] != -1) {
+				final int i = heads[slot];
+				final int handle = (generations[i] << INDEX_BITS) | i;
+				final GameTimerListener listener = listeners[i];
+				final int the_data = data[i];
+				
+				unlink(i);
+				
+				if (intervals[i] > 0) {
+					expires[i] = now + intervals[i];
+					file(i);
+				} else {
+					free(i);
+				}
+				
+				listener.onTimer(handle, the_data);
+			}
+			
+		}
+		
+	}
+	
+	/** Re-file every timer of the given slot against the current time. **/
+	private void cascade(final int slot) {
+		int i = heads[slot];
+		heads[slot] = -1;
+		while (i != -1) {
+			final int nxt = next[i];
+			slots[i] = -1;
+			file(i);
+			i = nxt;
+		}
+	}
+	
+	/** File a timer into the slot matching its expiry, relative to the current time. **/
+	private void file(final int i) {
+		
+		final long when = Math.min(expires[i], now + MAX_DELTA);
+		final long delta = when - now;
+		
+		int slot;
+		if (delta < ROOT_SIZE) {
+			slot = (int)(when & ROOT_MASK);
+		} else {
+			int level = 1;
+			int shift = ROOT_BITS;
+			while (delta >= (1L << (shift + LEVEL_BITS))) {
+				level++;
+				shift += LEVEL_BITS;
+			}
+			slot = ROOT_SIZE + (level - 1) * LEVEL_SIZE + (int)((when >>> shift) & LEVEL_MASK);
+		}
+		
+		slots[i] = slot;
+		prev[i] = -1;
+		next[i] = heads[slot];
+		if (heads[slot] != -1)
+			prev[heads[slot]] = i;
+		heads[slot] = i;
+		
+	}
+	
+	private void unlink(final int i) {
+		earliest_valid = false;
+		if (prev[i] != -1)
+			next[prev[i]] = next[i];
+		else
+			heads[slots[i]] = next[i];
+		if (next[i] != -1)
+			prev[next[i]] = prev[i];
+		next[i] = -1;
+		prev[i] = -1;
+	}
+	
+	private void free(final int i) {
+		slots[i] = -1;
+		listeners[i] = null;
+		generations[i] = (generations[i] + 1) & GENERATION_MASK;
+		free_timers[free_count++] = i;
+		pending--;
+	}
+	
+	/**
+	 * Find the timer index referred to by a handle.
+	 * @return The timer index, or -1 if the handle is stale or invalid.
+	 */
+	private int resolve(final int handle) {
+		if (handle < 0)
+			return -1;
+		final int i = handle & INDEX_MASK;
+		if (i >= capacity || slots[i] == -1 || generations[i] != (handle >>> INDEX_BITS))
+			return -1;
+		return i;
+	}
+	
+	private void grow(final int new_capacity) {
+		
+		final int old = capacity;
+		
+		long[] l = new long[new_capacity];
+		System.arraycopy(expires, 0, l, 0, old);
+		expires = l;
+		
+		l = new long[new_capacity];
+		System.arraycopy(intervals, 0, l, 0, old);
+		intervals = l;
+		
+		GameTimerListener[] g = new GameTimerListener[new_capacity];
+		System.arraycopy(listeners, 0, g, 0, old);
+		listeners = g;
+		
+		data = growInts(data, new_capacity);
+		next = growInts(next, new_capacity);
+		prev = growInts(prev, new_capacity);
+		slots = growInts(slots, new_capacity);
+		generations = growInts(generations, new_capacity);
+		free_timers = growInts(free_timers, new_capacity);
+		
+		for (int i = new_capacity - 1; i >= old; i--) {
+			slots[i] = -1;
+			next[i] = -1;
+			prev[i] = -1;
+			free_timers[free_count++] = i;
+		}
+		
+		capacity = new_capacity;
+		
+	}
+	
+	private static int[] growInts(final int[] src, final int length) {
+		final int[] rtn_val = new int[length];
+		System.arraycopy(src, 0, rtn_val, 0, src.length);
+		return rtn_val;
+	}
+	
+}
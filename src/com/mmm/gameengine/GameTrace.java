@@ -0,0 +1,264 @@
+package com.mmm.gameengine;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import android.os.Build;
+
+/**
+ * The GameTrace class marks named spans of work (a frame, an update, a
+ * sprite sheet decode) so they can be seen on a timeline. While tracing is
+ * started, every span is passed to android.os.Trace on API 18 and up, so
+ * it shows in systrace and Perfetto captures, and is also recorded into a
+ * fixed size ring buffer which can be written out as a Chrome JSON trace
+ * (open it at ui.perfetto.dev or chrome://tracing) from the field.
+ * <BR>
+ * Until tracing is first started, begin() and end() only read one flag;
+ * after that they keep each threads spans balanced even while stopped, so
+ * tracing can be stopped from any thread mid-span. The engine
+ * marks its frames, updates, draws, canvas locks, state switches, state
+ * initialization and cleanup, and sprite sheet decodes; states can mark
+ * their own work the same way. Spans nest, and must be ended on the thread
+ * which began them. A span is only traced if tracing was started when it
+ * began, and only recorded if tracing is still started when it ends.
+ * <BR>
+ * To use:
+ *
+ * <code>GameTrace.start(4096);</code>
+ *
+ * <code>GameTrace.begin("pathfinding"); ... GameTrace.end();</code>
+ *
+ * <code>GameTrace.writeJson(new FileWriter(file));</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.1
+ *
+ */
+public final class GameTrace {
+	
+	/** The deepest spans may nest on one thread. **/
+	public static final int MAX_DEPTH = 32;
+	
+	/** Whether android.os.Trace is available. The library compiles against API 18, but only calls it when running there. **/
+	private static final boolean SYSTRACE = Build.VERSION.SDK_INT >= 18;
+	
+	/** Whether spans are being traced. **/
+	private static volatile boolean enabled = false;
+	
+	/** Whether tracing has ever been started, after which spans are always tracked. **/
+	private static volatile boolean used = false;
+	
+	/** The ring buffer of finished spans: name, thread, start, and duration. Guarded by the class. **/
+	private static String[] names = new String[0];
+	private static int[] threads = new int[0];
+	private static long[] starts = new long[0];
+	private static long[] durations = new long[0];
+	private static int next;
+	private static int count;
+	
+	/** The name of every thread which has recorded a span, by thread number. Guarded by the class. **/
+	private static String[] thread_names = new String[8];
+	private static int thread_count;
+	
+	/** The time tracing started, which spans are written relative to. **/
+	private static long origin;
+	
+	/** The open spans of each thread. **/
+	private static final ThreadLocal<Stack> stacks = new ThreadLocal<Stack>() {
+		@Override
+		protected Stack initialValue() {
+			return new Stack();
+		}
+	};
+	
+	private GameTrace() {
+	}
+	
+	/**
+	 * Start tracing, recording the most recent spans into a ring buffer of
+	 * the given size. Any spans recorded before are discarded.
+	 * @param capacity The number of spans kept.
+	 */
+	public static synchronized void start(final int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be at least 1");
+		
+		if (names.length != capacity) {
+			names = new String[capacity];
+			threads = new int[capacity];
+			starts = new long[capacity];
+			durations = new long[capacity];
+		}
+		next = 0;
+		count = 0;
+		origin = System.nanoTime();
+		used = true;
+		enabled = true;
+	}
+	
+	/** Stop tracing, keeping the spans recorded. **/
+	public static void stop() {
+		enabled = false;
+	}
+	
+	/** Check whether tracing is started. **/
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Begin a span on the calling thread.
+	 * @param name The name of the span, at most 127 characters. Use constants, so no String is built when not tracing.
+	 */
+	public static void begin(final String name) {
+		if (!used)
+			return;
+		
+		// Spans are pushed even while stopped, so every end() pops the span it closes.
+		final Stack stack = stacks.get();
+		final boolean traced = enabled && stack.depth < MAX_DEPTH;
+		if (stack.depth < MAX_DEPTH) {
+			stack.names[stack.depth] = name;
+			stack.starts[stack.depth] = System.nanoTime();
+			stack.traced[stack.depth] = traced;
+		}
+		stack.depth++;
+		
+		if (SYSTRACE && traced)
+			android.os.Trace.beginSection(name);
+	}
+	
+	/** End the most recently begun span on the calling thread. **/
+	public static void end() {
+		if (!used)
+			return;
+		
+		final Stack stack = stacks.get();
+		if (stack.depth == 0)
+			return;
+		stack.depth--;
+		
+		if (stack.depth >= MAX_DEPTH || !stack.traced[stack.depth])
+			return;
+		stack.traced[stack.depth] = false;
+		
+		// The section was begun, so it is ended even if tracing has since stopped.
+		if (SYSTRACE)
+			android.os.Trace.endSection();
+		
+		if (enabled)
+			record(stack, stack.names[stack.depth], stack.starts[stack.depth], System.nanoTime());
+	}
+	
+	private static synchronized void record(final Stack stack, final String name, final long start, final long end) {
+		
+		if (stack.thread < 0) {
+			if (thread_count == thread_names.length) {
+				final String[] grown = new String[thread_count * 2];
+				System.arraycopy(thread_names, 0, grown, 0, thread_count);
+				thread_names = grown;
+			}
+			thread_names[thread_count] = Thread.currentThread().getName();
+			stack.thread = thread_count++;
+		}
+		
+		// Spans begun before start() are not recorded.
+		if (start < origin || names.length == 0)
+			return;
+		
+		names[next] = name;
+		threads[next] = stack.thread;
+		starts[next] = start - origin;
+		durations[next] = end - start;
+		next = (next + 1) % names.length;
+		if (count < names.length)
+			count++;
+		
+	}
+	
+	/** Retrieve the number of spans in the ring buffer. **/
+	public static synchronized int getSpanCount() {
+		return count;
+	}
+	
+	/** Discard the spans in the ring buffer. **/
+	public static synchronized void clear() {
+		for (int i = 0; i < names.length; i++)
+			names[i] = null;
+		next = 0;
+		count = 0;
+	}
+	
+	/**
+	 * Write the spans in the ring buffer, oldest first, as a Chrome JSON
+	 * trace, with times in microseconds from when tracing started.
+	 * @param writer The writer. It is flushed, not closed.
+	 * @throws IOException if writing failed.
+	 */
+	public static synchronized void writeJson(final Writer writer) throws IOException {
+		
+		writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+		
+		boolean first = true;
+		for (int t = 0; t < thread_count; t++) {
+			if (!first)
+				writer.write(",\n");
+			first = false;
+			writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + t + ",\"args\":{\"name\":");
+			writeString(writer, thread_names[t]);
+			writer.write("}}");
+		}
+		
+		final int oldest = (next - count + names.length) % Math.max(1, names.length);
+		for (int i = 0; i < count; i++) {
+			final int slot = (oldest + i) % names.length;
+			if (!first)
+				writer.write(",\n");
+			first = false;
+			writer.write("{\"name\":");
+			writeString(writer, names[slot]);
+			writer.write(",\"ph\":\"X\",\"pid\":1,\"tid\":" + threads[slot] + ",\"ts\":" + micros(starts[slot]) + ",\"dur\":" + micros(durations[slot]) + "}");
+		}
+		
+		writer.write("\n]}\n");
+		writer.flush();
+		
+	}
+	
+	/** Nanoseconds as microseconds, to three decimal places. **/
+	private static String micros(final long nanos) {
+		final long fraction = nanos % 1000;
+		return (nanos / 1000) + (fraction < 10 ? ".00" : fraction < 100 ? ".0" : ".") + fraction;
+	}
+	
+	private static void writeString(final Writer writer, final String s) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < s.length(); i++) {
+			final char ch = s.charAt(i);
+			if (ch == '"' || ch == '\\') {
+				writer.write('\\');
+				writer.write(ch);
+			} else if (ch < 0x20) {
+				final String hex = Integer.toHexString(ch);
+				writer.write("\\u00" + (hex.length() == 1 ? "0" : "") + hex);
+			} else {
+				writer.write(ch);
+			}
+		}
+		writer.write('"');
+	}
+	
+	/** The open spans of one thread. **/
+	private static final class Stack {
+		final String[] names = new String[MAX_DEPTH];
+		final long[] starts = new long[MAX_DEPTH];
+		
+		/** Whether each open span was begun while tracing, so has a section to end. **/
+		final boolean[] traced = new boolean[MAX_DEPTH];
+		int depth;
+		
+		/** The thread number given when first recording, or -1. **/
+		int thread = -1;
+	}
+	
+}
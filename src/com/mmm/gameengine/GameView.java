@@ -15,10 +15,14 @@ import android.view.SurfaceView;
  * engine process. All state adding (to GameEngine) should be done
  * prior to creating the GameView or unexpected results may occur.
  * See GameEngine overview for more details.
+ * <BR>
+ * The game loop thread is started with the first surface, parked while
+ * the surface is gone, and only ended by shutdown(), which should be
+ * called from the activities onDestroy().
  * 
  * Last Edited by: Michael Morris (7.6.2012)
  * @author Michael Morris
- * @version 1.0.0
+ * @version 1.3.0
  * 
  *
  */
@@ -28,6 +32,12 @@ public class GameView extends SurfaceView {
 	
 	private GameThread gameThread;
 	
+	/** Wraps the canvas drawn on, for states drawing through a GameRenderer. **/
+	private final GameCanvasRenderer canvas_renderer = new GameCanvasRenderer();
+	
+	/** Batches the sprites of such states instead, when set. **/
+	private volatile GameSpriteBatch sprite_batch = null;
+	
 	public GameView(Context context) {
 		super(context);
 		
@@ -42,28 +52,58 @@ public class GameView extends SurfaceView {
 			public void surfaceChanged(SurfaceHolder holder, int format,
 					int width, int height) {}
 
-			// Upon surface creation, make sure we use the same runnable game thread, but create a new thread.
+			// Upon surface creation, start the game loop the first time, or wake it where it parked.
 			public void surfaceCreated(SurfaceHolder holder) {
-				Thread t = new Thread(gameThread);
-				gameThread.setRunning(true);
-				t.start();
+				gameThread.resume();
 			}
 
-			// When the surface view has been destroyed, go ahead and kill the game thread.
+			// When the surface view has been destroyed, park the game loop. It must have stopped drawing before this returns.
 			public void surfaceDestroyed(SurfaceHolder holder) {
-				gameThread.setRunning(false);
+				gameThread.pause();
 			}
 			
 		});
 		
 	}
 
+	/**
+	 * Retrieve the game loop thread of this view.
+	 * @return The GameThread.
+	 */
+	public GameThread getGameThread() {
+		return gameThread;
+	}
+	
+	/**
+	 * End the game loop for good. Call from the activities onDestroy().
+	 * @param timeout The most milliseconds to wait for the loop to end.
+	 * @return True if the loop ended.
+	 */
+	public boolean shutdown(final long timeout) {
+		return gameThread.shutdown(timeout);
+	}
+	
+	/**
+	 * Set whether states drawing through a GameRenderer have their sprites
+	 * batched into drawVertices() calls by a GameSpriteBatch, rather than
+	 * drawn one by one.
+	 * @param batching True to batch.
+	 * @param capacity The most sprites per call, when batching.
+	 */
+	public void setSpriteBatching(final boolean batching, final int capacity) {
+		sprite_batch = batching ? new GameSpriteBatch(capacity) : null;
+	}
+	
+	/** Retrieve the sprite batch in use, or null if not batching. **/
+	public GameSpriteBatch getSpriteBatch() {
+		return sprite_batch;
+	}
+	
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
 		
-		GameState current = GameEngine.getInstance().getCurrentState();
-		if (current != null)
-			current.handleTouchEvent(event);
+		// The engine records the event, if recording, before handing it to the current state.
+		GameEngine.getInstance().handleTouchEvent(event);
 		
 		return true;
 		
@@ -72,7 +112,15 @@ public class GameView extends SurfaceView {
 	@Override
 	protected void onDraw(Canvas canvas) {
 		GameState current = GameEngine.getInstance().getCurrentState();
-		if (current != null) {
+		final GameSpriteBatch batch = sprite_batch;
+		if (current instanceof RendererGameState && batch != null) {
+			batch.begin(canvas);
+			((RendererGameState)current).draw(batch);
+			batch.end();
+		} else if (current instanceof RendererGameState) {
+			canvas_renderer.setCanvas(canvas);
+			((RendererGameState)current).draw(canvas_renderer);
+		} else if (current != null) {
 			current.draw(canvas);
 		}
 	}
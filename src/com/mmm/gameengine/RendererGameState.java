@@ -0,0 +1,24 @@
+package com.mmm.gameengine;
+
+/**
+ * 
+ * The RendererGameState interface extends the GameState contract for states
+ * which draw through a GameRenderer rather than a Canvas. The GameView hands
+ * such states a GameCanvasRenderer wrapping its Canvas, and the same state
+ * can be drawn into a GameSoftwareRenderer off device, for benchmarks and
+ * golden image tests.
+ * 
+ * @author Michael Morris
+ * @version 1.0.0 
+ *
+ */
+public interface RendererGameState extends GameState {
+	
+	/**
+	 * Called when the GameEngine signals for this game state to draw, in
+	 * place of draw(Canvas).
+	 * @param renderer The renderer to draw through.
+	 */
+	public void draw(final GameRenderer renderer);
+	
+}
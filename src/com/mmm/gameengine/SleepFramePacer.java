@@ -0,0 +1,102 @@
+package com.mmm.gameengine;
+
+/**
+ * The SleepFramePacer class paces frames by sleeping until the next multiple
+ * of a fixed frame interval. It is not aligned to the display, but works on
+ * every version, and is the fallback used before API 16. A frame which runs
+ * late starts the next interval from when it finished, rather than rushing
+ * to catch up.
+ * <BR>
+ * To use:
+ *
+ * <code>thread.setFramePacer(new SleepFramePacer(30));</code>
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public class SleepFramePacer implements FramePacer {
+	
+	private final FrameClock clock;
+	
+	/** The frame interval at full rate. **/
+	private final long base_interval;
+	
+	private final FrameRateGovernor governor;
+	
+	/** The start time of the next frame, or -1 if there was no previous frame. **/
+	private long next_frame = -1;
+	
+	/** Set by wake(), making the current wait return early. **/
+	private volatile boolean woken;
+	
+	/**
+	 * Create a new SleepFramePacer on the system clock, which may halve the
+	 * frame rate (and more) when frames keep running late.
+	 * @param fps The target frames per second.
+	 */
+	public SleepFramePacer(final int fps) {
+		this(fps, 4, FrameClock.SYSTEM);
+	}
+	
+	/**
+	 * Create a new SleepFramePacer.
+	 * @param fps The target frames per second.
+	 * @param max_divisor The frame rate may be lowered to fps / max_divisor. 1 never lowers it.
+	 * @param the_clock The clock to pace by.
+	 */
+	public SleepFramePacer(final int fps, final int max_divisor, final FrameClock the_clock) {
+		if (fps < 1)
+			throw new IllegalArgumentException("fps must be at least 1");
+		
+		clock = the_clock;
+		base_interval = 1000000000L / fps;
+		governor = new FrameRateGovernor(max_divisor);
+	}
+	
+	public long awaitFrame() throws InterruptedException {
+		
+		final long now = clock.nanoTime();
+		
+		if (next_frame < 0 || next_frame < now - getFrameInterval()) {
+			// First frame, or running late: start now.
+			next_frame = now;
+		} else {
+			// Sleep in short steps, so wake() is noticed.
+			while (!woken && clock.nanoTime() < next_frame)
+				clock.sleepUntil(Math.min(next_frame, clock.nanoTime() + 50000000L));
+		}
+		
+		woken = false;
+		
+		final long rtn_val = next_frame;
+		next_frame += getFrameInterval();
+		return rtn_val;
+		
+	}
+	
+	public void frameDone(final long frame_nanos) {
+		governor.frameDone(frame_nanos, base_interval);
+	}
+	
+	public void wake() {
+		woken = true;
+	}
+	
+	public long getFrameInterval() {
+		return base_interval * governor.getDivisor();
+	}
+	
+	public void reset() {
+		next_frame = -1;
+	}
+	
+	public void release() {
+	}
+	
+	/** Retrieve the number of times the frame rate has been lowered. **/
+	public int getRateDropCount() {
+		return governor.getDropCount();
+	}
+	
+}
@@ -0,0 +1,44 @@
+package com.mmm.gameengine;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 
+ * The SnapshotGameState interface extends the GameState contract for states
+ * which can save everything needed to resume into a GameSnapshot, and be
+ * restored from one, instead of being rebuilt through init() and switchedTo().
+ * Values are written to, and read from, a ByteBuffer directly; animations
+ * write themselves with MMMAnimation.writeSnapshot().
+ * 
+ * @author Michael Morris
+ * @version 1.0.0 
+ *
+ */
+public interface SnapshotGameState extends GameState {
+	
+	/**
+	 * Retrieve the version of the data written by writeSnapshot(). It is
+	 * passed back to readSnapshot(), so older snapshots can still be read
+	 * after the state changes what it writes.
+	 * @return The snapshot version of this state.
+	 */
+	public int getSnapshotVersion();
+	
+	/**
+	 * Called when a GameSnapshot is captured. Write everything needed to
+	 * resume this state into the buffer, starting at its current position.
+	 * If the buffer runs out of room the snapshot grows it and calls this
+	 * method again, so nothing else should be changed here.
+	 * @param out The buffer to write to.
+	 */
+	public void writeSnapshot(final ByteBuffer out);
+	
+	/**
+	 * Called when a GameSnapshot is restored, after init(). Read back what
+	 * writeSnapshot() wrote; the buffer is limited to exactly that data.
+	 * @param in The buffer to read from.
+	 * @param version The snapshot version the data was written with.
+	 */
+	public void readSnapshot(final ByteBuffer in, final int version);
+	
+}
@@ -0,0 +1,29 @@
+package com.mmm.gameengine;
+
+/**
+ * The VsyncSource interface delivers display refreshes to a
+ * ChoreographerFramePacer. The pacer asks for one refresh at a time, and
+ * the source answers by calling the pacers doFrame() once, at the next
+ * refresh. By default the refreshes come from Choreographer; a fake source,
+ * together with a fake FrameClock, lets the pacer run without a display or
+ * real threads.
+ *
+ * @author Michael Morris
+ * @version 1.0.0
+ *
+ */
+public interface VsyncSource {
+	
+	/**
+	 * Ask for one call to <code>pacer.doFrame()</code> at the next refresh.
+	 * May be called from any thread, including from within doFrame(), and
+	 * while the pacer holds its lock, so doFrame() must be called later, not
+	 * before returning.
+	 * @param pacer The pacer to tell of the refresh.
+	 */
+	public void requestVsync(final ChoreographerFramePacer pacer);
+	
+	/** Stop delivering refreshes, and free anything the source holds. **/
+	public void release();
+	
+}